@@ -38,7 +38,7 @@ import java.io.IOException;
 /**
  * REST API Servlet for ChatNoir 2.
  */
-@WebServlet(ApiServlet.ROUTE)
+@WebServlet(value = ApiServlet.ROUTE, asyncSupported = true)
 public class ApiServlet extends ChatNoirServlet
 {
     /**
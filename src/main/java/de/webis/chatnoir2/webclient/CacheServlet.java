@@ -36,6 +36,7 @@ import java.util.*;
 import de.webis.chatnoir2.webclient.hdfs.MapFileReader;
 import de.webis.chatnoir2.webclient.response.Renderer;
 import de.webis.chatnoir2.webclient.search.DocumentRetriever;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
 import de.webis.chatnoir2.webclient.util.PlainTextRenderer;
 
 /**
@@ -105,32 +106,37 @@ public class CacheServlet extends ChatNoirServlet
         final boolean plainTextMode = (null != request.getParameter("plain"));
 
         DocumentRetriever.Document doc = null;
-        if (null != uuidParam) {
-            // first try direct retrieval by UUID
-            try {
-                doc = retriever.getByUUID(indexParam, UUID.fromString(uuidParam));
-            } catch (IllegalArgumentException ignored) {}
+        try {
+            if (null != uuidParam) {
+                // first try direct retrieval by UUID
+                try {
+                    doc = retriever.getByUUID(indexParam, UUID.fromString(uuidParam));
+                } catch (IllegalArgumentException ignored) {}
+
+                // if document not found, try retrieval by Elasticsearch document ID
+                if (null == doc) {
+                    doc = retriever.getByIndexDocID(indexParam, uuidParam);
 
-            // if document not found, try retrieval by Elasticsearch document ID
-            if (null == doc) {
-                doc = retriever.getByIndexDocID(indexParam, uuidParam);
+                    if (null == doc) {
+                        forwardError(request, response, HttpServletResponse.SC_NOT_FOUND);
+                        return;
+                    }
+                }
+            } else {
+                // retrieval by URI
+                doc = retriever.getByURI(indexParam, uriParam);
 
+                // redirect into the open web if no cache entry found
                 if (null == doc) {
-                    forwardError(request, response, HttpServletResponse.SC_NOT_FOUND);
+                    final HashMap<String, String> templateVars = new HashMap<>();
+                    templateVars.put("uri", uriParam);
+                    Renderer.render(getServletContext(), request, response, TEMPLATE_REDIRECT, templateVars);
                     return;
                 }
             }
-        } else {
-            // retrieval by URI
-            doc = retriever.getByURI(indexParam, uriParam);
-
-            // redirect into the open web if no cache entry found
-            if (null == doc) {
-                final HashMap<String, String> templateVars = new HashMap<>();
-                templateVars.put("uri", uriParam);
-                Renderer.render(getServletContext(), request, response, TEMPLATE_REDIRECT, templateVars);
-                return;
-            }
+        } catch (CircuitBreaker.OpenException e) {
+            forwardError(request, response, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
         }
 
         // raw output without frame
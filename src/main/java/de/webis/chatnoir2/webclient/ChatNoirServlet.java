@@ -25,18 +25,28 @@
 
 package de.webis.chatnoir2.webclient;
 
+import de.webis.chatnoir2.webclient.api.exceptions.UserErrorException;
 import de.webis.chatnoir2.webclient.auth.ChatNoirSessionDAO;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
 import de.webis.chatnoir2.webclient.util.Configured;
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.subject.Subject;
 import org.apache.shiro.web.subject.WebSubject;
 import org.apache.shiro.web.util.WebUtils;
+import org.elasticsearch.ElasticsearchTimeoutException;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Base servlet class for ChatNoir servlets.
@@ -46,6 +56,22 @@ import java.io.IOException;
  */
 public abstract class ChatNoirServlet extends HttpServlet
 {
+    /**
+     * Handler for the result of an asynchronous operation.
+     *
+     * @param <T> result type
+     */
+    @FunctionalInterface
+    public interface AsyncHandler<T>
+    {
+        /**
+         * Handle operation result and write the response.
+         *
+         * @param result operation result
+         */
+        void handle(T result) throws ServletException, IOException;
+    }
+
     /**
      * Get request URI without the context path.
      *
@@ -114,6 +140,121 @@ public abstract class ChatNoirServlet extends HttpServlet
         getServletContext().getRequestDispatcher(ErrorServlet.ROUTE).forward(request, response);
     }
 
+    /**
+     * Put a request into asynchronous mode and finish it once the given future has completed.
+     * The handler is run on a container thread with the security subject of the current request bound to it.
+     * The request is completed after the handler has returned, exceptions thrown by the handler or
+     * the future are passed on to {@link #handleAsyncException(Throwable, AsyncContext)}.
+     * The container's default asynchronous request timeout applies.
+     *
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param future future to wait for
+     * @param handler handler for writing the response
+     * @param <T> future result type
+     */
+    protected <T> void completeAsync(HttpServletRequest request, HttpServletResponse response,
+                                     CompletableFuture<T> future, AsyncHandler<T> handler)
+    {
+        completeAsync(request, response, future, -1, handler);
+    }
+
+    /**
+     * Put a request into asynchronous mode and finish it once the given future has completed.
+     * The handler is run on a container thread with the security subject of the current request bound to it.
+     * The request is completed after the handler has returned, exceptions thrown by the handler or
+     * the future are passed on to {@link #handleAsyncException(Throwable, AsyncContext)}.
+     *
+     * If the future has not completed before the timeout, the request is answered with a
+     * "504 Gateway Timeout" error and the handler will not be run anymore, since the
+     * container may already have recycled the response. The future itself is not cancelled,
+     * because it may be shared with other requests.
+     *
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param future future to wait for
+     * @param timeout timeout in milliseconds (0 for no timeout, negative for the container default)
+     * @param handler handler for writing the response
+     * @param <T> future result type
+     */
+    protected <T> void completeAsync(HttpServletRequest request, HttpServletResponse response,
+                                     CompletableFuture<T> future, long timeout, AsyncHandler<T> handler)
+    {
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final Subject subject = SecurityUtils.getSubject();
+        final AtomicBoolean finished = new AtomicBoolean(false);
+
+        if (timeout >= 0) {
+            asyncContext.setTimeout(timeout);
+        }
+        asyncContext.addListener(new AsyncListener()
+        {
+            @Override
+            public void onTimeout(AsyncEvent event)
+            {
+                if (finished.compareAndSet(false, true)) {
+                    handleAsyncException(new ElasticsearchTimeoutException(
+                            "No response within {}ms", asyncContext.getTimeout()), asyncContext);
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event)
+            {
+                finished.set(true);
+            }
+
+            @Override
+            public void onError(AsyncEvent event)
+            {
+                finished.set(true);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {}
+        });
+
+        future.whenComplete((result, error) -> {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            asyncContext.start(subject.associateWith(() -> {
+                try {
+                    if (null != error) {
+                        throw error instanceof CompletionException && null != error.getCause() ? error.getCause() : error;
+                    }
+                    handler.handle(result);
+                    asyncContext.complete();
+                } catch (Throwable e) {
+                    handleAsyncException(e, asyncContext);
+                }
+            }));
+        });
+    }
+
+    /**
+     * Handle exceptions which occurred while processing an asynchronous request.
+     * The default implementation displays an error page.
+     *
+     * @param exception thrown exception
+     * @param asyncContext context of the asynchronous request
+     */
+    protected void handleAsyncException(Throwable exception, AsyncContext asyncContext)
+    {
+        HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+        if (exception instanceof UserErrorException) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        } else if (exception instanceof ElasticsearchTimeoutException) {
+            response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+        } else if (exception instanceof CircuitBreaker.OpenException) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } else {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            Configured.getSysLogger().error("Internal server exception:", exception);
+        }
+        asyncContext.dispatch(ErrorServlet.ROUTE);
+    }
+
     /**
      * Check if a request was forwarded from a certain URL.
      *
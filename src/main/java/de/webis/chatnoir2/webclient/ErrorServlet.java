@@ -72,6 +72,9 @@ public class ErrorServlet extends ChatNoirServlet
             case HttpServletResponse.SC_INTERNAL_SERVER_ERROR:
                 templateVars.put("internalServerError", true);
                 break;
+            case HttpServletResponse.SC_SERVICE_UNAVAILABLE:
+                templateVars.put("serviceUnavailable", true);
+                break;
             default:
                 templateVars.put("other", true);
                 break;
@@ -36,7 +36,7 @@ import de.webis.chatnoir2.webclient.response.Renderer;
 /**
  * Index Servlet for ChatNoir 2.
  */
-@WebServlet(IndexServlet.ROUTE)
+@WebServlet(value = IndexServlet.ROUTE, asyncSupported = true)
 public class IndexServlet extends ChatNoirServlet
 {
     /**
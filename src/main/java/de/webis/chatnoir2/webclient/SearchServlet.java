@@ -30,11 +30,13 @@ import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.*;
 
-import de.webis.chatnoir2.webclient.resources.ConfigLoader;
 import de.webis.chatnoir2.webclient.response.Renderer;
+import de.webis.chatnoir2.webclient.search.DegradationController;
+import de.webis.chatnoir2.webclient.search.IndexRegistry;
 import de.webis.chatnoir2.webclient.search.SearchResultBuilder;
 import de.webis.chatnoir2.webclient.search.SimpleSearch;
 import de.webis.chatnoir2.webclient.util.Configured;
@@ -42,7 +44,7 @@ import de.webis.chatnoir2.webclient.util.Configured;
 /**
  * ChatNoir 2 main search servlet.
  */
-@WebServlet(SearchServlet.ROUTE)
+@WebServlet(value = SearchServlet.ROUTE, asyncSupported = true)
 public class SearchServlet extends ChatNoirServlet
 {
     /**
@@ -103,31 +105,42 @@ public class SearchServlet extends ChatNoirServlet
 
         final long startTime = System.nanoTime();
         search.setExplain(null != request.getParameter("explain"));
-        search.doSearch(searchQueryString, (currentPage - 1) * mResultsPerPage, mResultsPerPage);
-        final long elapsedTime = System.nanoTime() - startTime;
-        templateVars.put("queryTime", String.format("%.1fms", elapsedTime * 0.000001));
+        final int page = currentPage;
+        completeAsync(request, response,
+                search.doSearchAsync(searchQueryString, (currentPage - 1) * mResultsPerPage, mResultsPerPage),
+                search.getResponseTimeout(),
+                searchResponse -> {
+                    final long elapsedTime = System.nanoTime() - startTime;
+                    templateVars.put("queryTime", String.format("%.1fms", elapsedTime * 0.000001));
+                    renderSERP(request, response, search, searchQueryString, page, templateVars);
+                });
+    }
 
+    /**
+     * Render search engine results page for a finished search.
+     *
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param search finished search
+     * @param searchQueryString user query string
+     * @param currentPage current SERP page
+     * @param templateVars template variables
+     */
+    private void renderSERP(final HttpServletRequest request, final HttpServletResponse response,
+                            final SimpleSearch search, final String searchQueryString, final int currentPage,
+                            final HashMap<String, Object> templateVars) throws IOException
+    {
         // list effective and allowed indices
         List<Map<String, Object>> allowedIndices = new ArrayList<>();
         String[] allowedArr = search.getAllowedIndices();
         List<String> effectiveArr = Arrays.asList(search.getEffectiveIndices());
 
         // get index display names
-        ConfigLoader.Config[] aliases = Configured.getConf().getArray("cluster.index_aliases");
+        IndexRegistry.Snapshot indices = search.getIndexSnapshot();
         for (String allowed: allowedArr) {
             Map<String, Object> m = new HashMap<>();
-
-            for (ConfigLoader.Config c: aliases) {
-                if (!allowed.equals(c.getString("alias")) && !allowed.equals(c.getString("index"))) {
-                    continue;
-                }
-                String displayName = c.getString("display_name");
-                if (null != displayName) {
-                    m.put("displayName", displayName);
-                } else {
-                    m.put("displayName", allowed);
-                }
-            }
+            String displayName = indices.getDisplayName(allowed);
+            m.put("displayName", null != displayName ? displayName : allowed);
             m.put("name", allowed);
             m.put("selected", effectiveArr.contains(allowed));
             allowedIndices.add(m);
@@ -157,6 +170,11 @@ public class SearchServlet extends ChatNoirServlet
         serpContext.setResults(search.getResults());
         serpContext.setPagination(numResults, mResultsPerPage, currentPage);
         serpContext.setTerminatedEarly(search.isTerminatedEarly());
+        serpContext.setDegradationLevel(search.getDegradationLevel());
+        serpContext.setStale(search.isStale());
+        serpContext.setTimedOut(search.isTimedOut());
+        serpContext.setFailedShards(search.getFailedShards());
+        serpContext.setSpellingSuggestion(search.getSpellingSuggestion(), search.getSpellingSuggestionHtml());
 
         Renderer.render(getServletContext(), request, response, TEMPLATE_INDEX, templateVars, serpContext);
     }
@@ -192,6 +210,36 @@ public class SearchServlet extends ChatNoirServlet
          */
         private boolean mTerminatedEarly;
 
+        /**
+         * Whether search timed out.
+         */
+        private boolean mTimedOut;
+
+        /**
+         * Number of shards which failed to respond.
+         */
+        private int mFailedShards;
+
+        /**
+         * Degradation level of ranking features.
+         */
+        private DegradationController.Level mDegradationLevel = DegradationController.Level.NONE;
+
+        /**
+         * Whether results were served from the cache because the search backend was unavailable.
+         */
+        private boolean mStale = false;
+
+        /**
+         * Suggested query if the user query looks misspelled.
+         */
+        private String mSpellingSuggestion = null;
+
+        /**
+         * HTML representation of the suggested query with corrected terms emphasized.
+         */
+        private String mSpellingSuggestionHtml = null;
+
         /**
          * Mustache accessor for search results.
          * @return list of search results
@@ -286,6 +334,161 @@ public class SearchServlet extends ChatNoirServlet
             mTerminatedEarly = terminatedEarly;
         }
 
+        /**
+         * Mustache accessor for whether search timed out.
+         */
+        public boolean timedOut()
+        {
+            return mTimedOut;
+        }
+
+        /**
+         * Set whether search timed out.
+         */
+        public void setTimedOut(boolean timedOut)
+        {
+            mTimedOut = timedOut;
+        }
+
+        /**
+         * Mustache accessor for the number of shards which failed to respond.
+         */
+        public int failedShards()
+        {
+            return mFailedShards;
+        }
+
+        /**
+         * Set number of shards which failed to respond.
+         */
+        public void setFailedShards(int failedShards)
+        {
+            mFailedShards = failedShards;
+        }
+
+        /**
+         * Mustache accessor returning true if any shards failed to respond.
+         *
+         * @return true if shards failed
+         */
+        public boolean hasFailedShards()
+        {
+            return mFailedShards > 0;
+        }
+
+        /**
+         * Mustache accessor returning true if search results are incomplete due to a timeout or shard failures.
+         *
+         * @return true if results are partial
+         */
+        public boolean isPartial()
+        {
+            return mTimedOut || mFailedShards > 0;
+        }
+
+        /**
+         * Mustache accessor for the degradation level of ranking features.
+         *
+         * @return name of the degradation level
+         */
+        public String degradationLevel()
+        {
+            return mDegradationLevel.getName();
+        }
+
+        /**
+         * Mustache accessor returning true if ranking features were degraded due to high load.
+         *
+         * @return true if search was degraded
+         */
+        public boolean isDegraded()
+        {
+            return mDegradationLevel != DegradationController.Level.NONE;
+        }
+
+        /**
+         * Set degradation level of ranking features.
+         */
+        public void setDegradationLevel(DegradationController.Level degradationLevel)
+        {
+            mDegradationLevel = degradationLevel;
+        }
+
+        /**
+         * Mustache accessor returning true if results were served from the cache because
+         * the search backend was unavailable.
+         *
+         * @return true if results may be outdated
+         */
+        public boolean isStale()
+        {
+            return mStale;
+        }
+
+        /**
+         * Set whether results were served from the cache because the search backend was unavailable.
+         */
+        public void setStale(boolean stale)
+        {
+            mStale = stale;
+        }
+
+        /**
+         * Mustache accessor returning true if there is a spelling suggestion for the user query.
+         *
+         * @return true if a spelling suggestion exists
+         */
+        public boolean hasSpellingSuggestion()
+        {
+            return null != mSpellingSuggestion;
+        }
+
+        /**
+         * Mustache accessor for the suggested query.
+         *
+         * @return suggested query
+         */
+        public String spellingSuggestion()
+        {
+            return mSpellingSuggestion;
+        }
+
+        /**
+         * Mustache accessor for the URL-encoded suggested query.
+         *
+         * @return URL-encoded suggested query
+         */
+        public String spellingSuggestionUrlEnc()
+        {
+            try {
+                return null != mSpellingSuggestion ? URLEncoder.encode(mSpellingSuggestion, "UTF-8") : null;
+            } catch (UnsupportedEncodingException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Mustache accessor for the HTML-escaped suggested query with corrected terms emphasized.
+         *
+         * @return suggested query HTML
+         */
+        public String spellingSuggestionHtml()
+        {
+            return mSpellingSuggestionHtml;
+        }
+
+        /**
+         * Set spelling suggestion for the user query.
+         *
+         * @param suggestion suggested query (null for no suggestion)
+         * @param suggestionHtml HTML representation of the suggested query
+         */
+        public void setSpellingSuggestion(String suggestion, String suggestionHtml)
+        {
+            mSpellingSuggestion = suggestion;
+            mSpellingSuggestionHtml = suggestionHtml;
+        }
+
         /**
          * Mustache accessor returning true if search results have explanations.
          *
@@ -306,7 +509,7 @@ public class SearchServlet extends ChatNoirServlet
             paginationInfo.put("currentPage", Long.toString(mCurrentPage));
             paginationInfo.put("resultsRangeStart", Long.toString(1 + (mCurrentPage - 1) * mResultsPerPage));
             paginationInfo.put("resultsRangeEnd", Long.toString(Math.min((mCurrentPage - 1) * mResultsPerPage + mResultsPerPage, mNumResults)));
-            paginationInfo.put("numResults", String.format("%,d%s", mNumResults, terminatedEarly() ? "+" : ""));
+            paginationInfo.put("numResults", String.format("%,d%s", mNumResults, terminatedEarly() || isPartial() ? "+" : ""));
 
             return paginationInfo;
         }
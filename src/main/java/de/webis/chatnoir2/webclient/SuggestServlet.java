@@ -0,0 +1,77 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient;
+
+import de.webis.chatnoir2.webclient.search.QuerySuggester;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Query autocompletion endpoint for the web frontend.
+ * Returns a JSON array of suggested queries for the query prefix given in parameter <tt>q</tt>.
+ */
+@WebServlet(SuggestServlet.ROUTE)
+public class SuggestServlet extends ChatNoirServlet
+{
+    /**
+     * URL Routing for this servlet.
+     */
+    public static final String ROUTE = "/suggest";
+
+    /**
+     * GET action for this servlet.
+     *
+     * @param request   The HTTP request
+     * @param response  The HTTP response
+     */
+    @Override
+    protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException
+    {
+        final String prefix = request.getParameter("q");
+        final List<String> suggestions = QuerySuggester.getInstance().suggest(null != prefix ? prefix : "",
+                Configured.getConf().getInteger("suggest.size", 10));
+
+        final XContentBuilder builder = XContentFactory.jsonBuilder().startArray();
+        for (String suggestion : suggestions) {
+            builder.value(suggestion);
+        }
+        builder.endArray();
+
+        response.setContentType("application/json");
+        response.setHeader("Cache-Control", "private, max-age=60");
+        response.getWriter().write(builder.string());
+        response.getWriter().flush();
+    }
+}
@@ -28,7 +28,9 @@ package de.webis.chatnoir2.webclient.api;
 import de.webis.chatnoir2.webclient.api.exceptions.*;
 import de.webis.chatnoir2.webclient.api.v1.ApiModuleV1;
 import de.webis.chatnoir2.webclient.util.AnnotationClassLoader;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
 import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.ElasticsearchTimeoutException;
 import org.elasticsearch.common.Nullable;
 
 import javax.servlet.ServletException;
@@ -204,6 +206,12 @@ public class ApiBootstrap
         } else if (exception instanceof UserErrorException) {
             statusCode = ApiErrorModule.SC_BAD_REQUEST;
             message = exception.getMessage();
+        } else if (exception instanceof ElasticsearchTimeoutException) {
+            statusCode = ApiErrorModule.SC_GATEWAY_TIMEOUT;
+            message = "Search timed out";
+        } else if (exception instanceof CircuitBreaker.OpenException) {
+            statusCode = ApiErrorModule.SC_SERVICE_UNAVAILABLE;
+            message = "Search backend temporarily unavailable";
         } else {
             statusCode = ApiErrorModule.SC_INTERNAL_SERVER_ERROR;
             message = "An internal server error occurred. Please try again later.";
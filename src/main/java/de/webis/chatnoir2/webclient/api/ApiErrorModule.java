@@ -46,6 +46,8 @@ public class ApiErrorModule extends ApiModuleBase
     public static final int SC_TOO_MANY_REQUESTS     = 429;
 
     public static final int SC_INTERNAL_SERVER_ERROR = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    public static final int SC_SERVICE_UNAVAILABLE   = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+    public static final int SC_GATEWAY_TIMEOUT       = HttpServletResponse.SC_GATEWAY_TIMEOUT;
 
     /**
      * Add an attribute with this key to the request to provide a customized error message.
@@ -103,6 +105,14 @@ public class ApiErrorModule extends ApiModuleBase
                 errorObj = generateErrorResponse(request, errorCode, "Internal server error.");
                 break;
 
+            case SC_SERVICE_UNAVAILABLE:
+                errorObj = generateErrorResponse(request, errorCode, "Service temporarily unavailable");
+                break;
+
+            case SC_GATEWAY_TIMEOUT:
+                errorObj = generateErrorResponse(request, errorCode, "Search timed out");
+                break;
+
             default:
                 errorObj = generateErrorResponse(request, errorCode, "");
         }
@@ -30,7 +30,11 @@ import de.webis.chatnoir2.webclient.ChatNoirServlet;
 import de.webis.chatnoir2.webclient.api.exceptions.UserErrorException;
 import de.webis.chatnoir2.webclient.api.v1.ApiModuleV1;
 import de.webis.chatnoir2.webclient.auth.api.ApiKeyAuthenticationToken;
+import de.webis.chatnoir2.webclient.auth.api.ApiTokenRealm;
+import de.webis.chatnoir2.webclient.model.api.ApiKeyModel;
+import de.webis.chatnoir2.webclient.search.SearchProvider;
 import de.webis.chatnoir2.webclient.util.Configured;
+import org.apache.shiro.SecurityUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
@@ -38,6 +42,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -174,6 +179,20 @@ public abstract class ApiModuleBase extends ChatNoirServlet
         response.getWriter().flush();
     }
 
+    /**
+     * Write an API error response for exceptions which occurred while processing an asynchronous request.
+     *
+     * @param exception thrown exception
+     * @param asyncContext context of the asynchronous request
+     */
+    @Override
+    protected void handleAsyncException(Throwable exception, AsyncContext asyncContext)
+    {
+        ApiBootstrap.handleException(exception,
+                (HttpServletRequest) asyncContext.getRequest(), (HttpServletResponse) asyncContext.getResponse());
+        asyncContext.complete();
+    }
+
     /**
      * Handle GET request to API endpoint.
      *
@@ -211,6 +230,28 @@ public abstract class ApiModuleBase extends ChatNoirServlet
         }
     }
 
+    /**
+     * Get the latency budget for searches of an API request. The timeout allowed for the
+     * API key can be narrowed further by the <tt>timeout</tt> request parameter.
+     *
+     * @param request HTTP request
+     * @return search timeout in milliseconds (0 or less for the configured default)
+     */
+    protected long getSearchTimeout(HttpServletRequest request) throws ServletException
+    {
+        long timeout = -1;
+        ApiKeyModel userModel = ApiTokenRealm.getUserModel(SecurityUtils.getSubject());
+        if (null != userModel) {
+            timeout = userModel.getApiLimits().getSearchTimeout();
+        }
+
+        Integer requestTimeout = getTypedNestedParameter(Integer.class, "timeout", request);
+        if (null != requestTimeout) {
+            timeout = SearchProvider.narrowTimeout(timeout, requestTimeout);
+        }
+        return timeout;
+    }
+
     /**
      * Return and parse POST data payload.
      *
@@ -101,6 +101,7 @@ public class ApiKeyManagerApiModule extends ApiModuleBase
                     .field("day", limits.getDailyLimit())
                     .field("week", limits.getWeeklyLimit())
                     .field("month", limits.getMonthlyLimit())
+                    .field("search_timeout", limits.getSearchTimeout())
                 .endObject();
                 continue;
             }
@@ -0,0 +1,585 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.api.v1;
+
+import de.webis.chatnoir2.webclient.api.ApiBootstrap;
+import de.webis.chatnoir2.webclient.api.ApiErrorModule;
+import de.webis.chatnoir2.webclient.api.ApiModuleBase;
+import de.webis.chatnoir2.webclient.api.exceptions.UserErrorException;
+import de.webis.chatnoir2.webclient.auth.ChatNoirWebSessionManager;
+import de.webis.chatnoir2.webclient.search.*;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
+import de.webis.chatnoir2.webclient.util.Configured;
+import de.webis.chatnoir2.webclient.util.PlainTextRenderer;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.web.mgt.DefaultWebSecurityManager;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+
+/**
+ * ChatNoir API module for running multiple search, phrase search and
+ * document retrieval operations with a single API call.
+ *
+ * All search operations are sent to the cluster as a single multi search request,
+ * document retrievals run in parallel. Results are streamed back in the order of
+ * the requested operations. Each operation is charged against the user's API quota.
+ */
+@ApiModuleV1("_batch")
+public class BatchApiModule extends ApiModuleBase
+{
+    /**
+     * Shared thread pool for parallel document retrieval.
+     */
+    private static ExecutorService sDocumentExecutor = null;
+
+    /**
+     * Writer for the result of a single batch operation.
+     */
+    @FunctionalInterface
+    private interface ResultWriter
+    {
+        void write(XContentBuilder builder) throws IOException;
+    }
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        final JSONArray operations = getTypedNestedParameter(JSONArray.class, "operations", request);
+        if (null == operations || operations.length() == 0) {
+            ApiBootstrap.handleApiError(request, response, ApiErrorModule.SC_BAD_REQUEST,
+                    "No batch operations given");
+            return;
+        }
+
+        int maxOperations = Configured.getConf().getInteger("api.batch.max_operations", 100);
+        if (operations.length() > maxOperations) {
+            ApiBootstrap.handleApiError(request, response, ApiErrorModule.SC_BAD_REQUEST,
+                    String.format("Too many batch operations (maximum: %d)", maxOperations));
+            return;
+        }
+
+        final long searchTimeout = getSearchTimeout(request);
+        final SearchRequestBatch batch = new SearchRequestBatch();
+        final List<CompletableFuture<ResultWriter>> started = startOperations(operations.length(), batch, i -> {
+            // the first operation has already been charged by the authentication filter
+            if (i > 0 && !chargeQuota()) {
+                return CompletableFuture.completedFuture(
+                        errorWriter(ApiErrorModule.SC_TOO_MANY_REQUESTS, "Quota exceeded"));
+            }
+            return startOperation(request, operations.optJSONObject(i), batch, searchTimeout);
+        });
+        final List<CompletableFuture<ResultWriter>> results = new ArrayList<>(started.size());
+        for (CompletableFuture<ResultWriter> result : started) {
+            results.add(result.exceptionally(this::exceptionWriter));
+        }
+
+        // Results are written in order, each as soon as it and all previous results are available.
+        final long startTime = System.currentTimeMillis();
+        final ResultStream stream = new ResultStream(request.startAsync(request, response),
+                SecurityUtils.getSubject(), getPrettyPrint(request));
+        CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
+        for (CompletableFuture<ResultWriter> result : results) {
+            written = written.thenCombine(result, (v, writer) -> writer).thenAcceptAsync(stream::write, stream);
+        }
+        written.whenCompleteAsync((v, e) -> stream.finish(e, results.size(), startTime), stream);
+    }
+
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        doGet(request, response);
+    }
+
+    /**
+     * Response stream which writes batch results as they become available.
+     * Writes are run on container threads of the asynchronous request. If the container times out
+     * the request, the stream is closed and all pending results are discarded.
+     */
+    private static final class ResultStream implements Executor, AsyncListener
+    {
+        private final AsyncContext mAsyncContext;
+        private final Subject mSubject;
+        private final boolean mPrettyPrint;
+        private XContentBuilder mBuilder = null;
+        private volatile boolean mFinished = false;
+
+        ResultStream(AsyncContext asyncContext, Subject subject, boolean prettyPrint)
+        {
+            mAsyncContext = asyncContext;
+            mSubject = subject;
+            mPrettyPrint = prettyPrint;
+            asyncContext.addListener(this);
+        }
+
+        /**
+         * Run a write task on a container thread, unless the stream has already been closed.
+         */
+        @Override
+        public void execute(Runnable task)
+        {
+            if (!mFinished) {
+                mAsyncContext.start(mSubject.associateWith(task));
+            }
+        }
+
+        /**
+         * Write the result of the next operation.
+         *
+         * @param writer result writer
+         */
+        synchronized void write(ResultWriter writer)
+        {
+            if (mFinished) {
+                return;
+            }
+            try {
+                if (null == mBuilder) {
+                    begin();
+                }
+                writer.write(mBuilder);
+                mBuilder.flush();
+                mAsyncContext.getResponse().flushBuffer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Write the response meta data and complete the request.
+         *
+         * @param error exception which aborted the stream or null
+         * @param operations number of operations
+         * @param startTime start time of the batch
+         */
+        synchronized void finish(Throwable error, int operations, long startTime)
+        {
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+
+            final HttpServletResponse response = (HttpServletResponse) mAsyncContext.getResponse();
+            try {
+                if (null == error) {
+                    if (null == mBuilder) {
+                        begin();
+                    }
+                    mBuilder.endArray()
+                        .startObject("meta")
+                            .field("query_time", System.currentTimeMillis() - startTime)
+                            .field("operations", operations)
+                        .endObject()
+                    .endObject();
+                    mBuilder.flush();
+                } else {
+                    if (error instanceof CompletionException && null != error.getCause()) {
+                        error = error.getCause();
+                    }
+                    if (!response.isCommitted()) {
+                        ApiBootstrap.handleException(error, (HttpServletRequest) mAsyncContext.getRequest(), response);
+                    } else if (!(error instanceof UncheckedIOException)) {
+                        Configured.getSysLogger().error("Batch response aborted:", error);
+                    }
+                }
+            } catch (IOException ignored) {
+                // client went away
+            } finally {
+                mAsyncContext.complete();
+            }
+        }
+
+        /**
+         * Start the response.
+         */
+        private void begin() throws IOException
+        {
+            final HttpServletResponse response = (HttpServletResponse) mAsyncContext.getResponse();
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("application/json");
+            mBuilder = XContentFactory.jsonBuilder(response.getOutputStream());
+            if (mPrettyPrint) {
+                mBuilder.prettyPrint();
+            }
+            mBuilder.startObject().startArray("results");
+        }
+
+        @Override
+        public synchronized void onTimeout(AsyncEvent event)
+        {
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+
+            final HttpServletResponse response = (HttpServletResponse) mAsyncContext.getResponse();
+            if (!response.isCommitted()) {
+                ApiBootstrap.handleException(new ElasticsearchTimeoutException("Batch did not complete in time"),
+                        (HttpServletRequest) mAsyncContext.getRequest(), response);
+            }
+            mAsyncContext.complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event)
+        {
+            mFinished = true;
+        }
+
+        @Override
+        public void onError(AsyncEvent event)
+        {
+            mFinished = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {}
+    }
+
+    /**
+     * Start a number of batch operations and send the search requests they have queued.
+     * Operations which fail to start yield an exceptionally completed future instead of
+     * aborting the batch. The batch is always executed, since queued requests would
+     * otherwise never complete and block identical searches of other requests.
+     *
+     * @param count number of operations
+     * @param batch batch to which search requests are added
+     * @param starter function which starts the operation with the given index
+     * @param <T> operation result type
+     * @return futures of all operations in order
+     */
+    public static <T> List<CompletableFuture<T>> startOperations(int count, SearchRequestBatch batch,
+                                                                 IntFunction<CompletableFuture<T>> starter)
+    {
+        final List<CompletableFuture<T>> futures = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; ++i) {
+                CompletableFuture<T> future;
+                try {
+                    future = starter.apply(i);
+                } catch (RuntimeException e) {
+                    future = new CompletableFuture<>();
+                    future.completeExceptionally(e);
+                }
+                futures.add(future);
+            }
+        } finally {
+            batch.execute();
+        }
+        return futures;
+    }
+
+    /**
+     * Charge one operation against the current user's API quota.
+     *
+     * @return false if the quota has been exceeded
+     */
+    private boolean chargeQuota()
+    {
+        Subject subject = SecurityUtils.getSubject();
+        if (!subject.isAuthenticated()) {
+            return true;
+        }
+
+        DefaultWebSecurityManager securityManager = (DefaultWebSecurityManager) SecurityUtils.getSecurityManager();
+        ChatNoirWebSessionManager sessionManager  = (ChatNoirWebSessionManager) securityManager.getSessionManager();
+        if (!sessionManager.validateApiSessionQuota(subject)) {
+            return false;
+        }
+        sessionManager.incrementApiQuotaUsage(subject.getSession());
+        return true;
+    }
+
+    /**
+     * Start a single batch operation.
+     *
+     * @param request HTTP request
+     * @param operation operation parameters
+     * @param batch batch to which search requests are added
+     * @param searchTimeout search timeout of the batch request in milliseconds
+     * @return future that completes with a writer for the operation result
+     */
+    private CompletableFuture<ResultWriter> startOperation(HttpServletRequest request, JSONObject operation,
+                                                           SearchRequestBatch batch, long searchTimeout)
+    {
+        if (null == operation) {
+            throw new UserErrorException("Batch operations must be objects");
+        }
+
+        String type = operation.optString("type", "search");
+        switch (type) {
+            case "search":
+            case "phrases":
+                return startSearchOperation(request, operation, type, batch, searchTimeout);
+            case "document":
+                return startDocumentOperation(operation);
+            default:
+                throw new UserErrorException("Invalid operation type: " + type);
+        }
+    }
+
+    /**
+     * Start a simple search or phrase search operation.
+     *
+     * @param request HTTP request
+     * @param operation operation parameters
+     * @param type operation type
+     * @param batch batch to which search requests are added
+     * @param searchTimeout search timeout of the batch request in milliseconds
+     * @return future that completes with a writer for the operation result
+     */
+    private CompletableFuture<ResultWriter> startSearchOperation(HttpServletRequest request, JSONObject operation,
+                                                                 String type, SearchRequestBatch batch,
+                                                                 long searchTimeout)
+    {
+        String queryString = operation.optString("query", operation.optString("q", "")).trim();
+        if (queryString.isEmpty()) {
+            throw new UserErrorException("Empty search query");
+        }
+
+        String[] indices = null;
+        Object indexParam = operation.opt("index");
+        if (indexParam instanceof JSONArray) {
+            JSONArray indexArray = (JSONArray) indexParam;
+            indices = new String[indexArray.length()];
+            for (int i = 0; i < indexArray.length(); ++i) {
+                indices[i] = indexArray.getString(i);
+            }
+        } else if (indexParam instanceof String) {
+            indices = ((String) indexParam).split(",");
+        }
+
+        int from = Math.max(0, operation.optInt("from", 0));
+        int size = operation.optInt("size", 0);
+        if (size < 1) {
+            size = Configured.getConf().getInteger("serp.results_per_page");
+        }
+        final boolean explain = operation.optBoolean("explain", false);
+
+        final SimpleSearch search;
+        if (type.equals("phrases")) {
+            PhraseSearch phraseSearch = new PhraseSearch(indices);
+            phraseSearch.setSlop(operation.optInt("slop",
+                    Configured.getConf().getInteger("search.phrase_search.slop")));
+            search = phraseSearch;
+        } else {
+            search = new SimpleSearch(indices);
+        }
+        search.setExplain(explain);
+        search.setTimeout(SearchProvider.narrowTimeout(searchTimeout, operation.optLong("timeout", -1)));
+        search.setRequestBatch(batch);
+
+        final long startTime = System.currentTimeMillis();
+        final boolean firstPage = from == 0;
+        return search.doSearchAsync(queryString, from, size).thenApply(searchResponse -> {
+            final long elapsedTime = System.currentTimeMillis() - startTime;
+            final List<SearchResultBuilder.SearchResult> results = search.getResults();
+
+            return builder -> {
+                // write query log
+                if (firstPage) {
+                    writeQueryLog(search, request, queryString, false);
+                }
+
+                builder.startObject()
+                    .field("type", type)
+                    .startObject("meta")
+                        .field("query_time", elapsedTime)
+                        .field("total_results", search.getTotalResultNumber())
+                        .array("indices", search.getEffectiveIndices())
+                        .field("degradation_level", search.getDegradationLevel().getName())
+                        .field("stale", search.isStale())
+                        .field("spelling_suggestion", search.getSpellingSuggestion())
+                        .field("timed_out", search.isTimedOut())
+                        .startObject("shards")
+                            .field("total", search.getTotalShards())
+                            .field("failed", search.getFailedShards())
+                        .endObject()
+                    .endObject()
+                    .startArray("results");
+                        for (final SearchResultBuilder.SearchResult result : results) {
+                            builder.startObject()
+                                .field("score", result.score())
+                                .field("uuid", result.documentId())
+                                .field("index", result.index())
+                                .field("trec_id", result.trecId())
+                                .field("target_hostname", result.targetHostname())
+                                .field("target_uri", result.targetUri())
+                                .field("page_rank", result.pageRank())
+                                .field("spam_rank", result.spamRank())
+                                .field("title", result.title())
+                                .field("snippet", result.snippet());
+                            if (explain) {
+                                builder.field("explanation");
+                                new ExplanationXContent(result.explanation()).toXContent(builder, ToXContent.EMPTY_PARAMS);
+                            }
+                            builder.endObject();
+                        }
+                    builder.endArray()
+                .endObject();
+            };
+        });
+    }
+
+    /**
+     * Start a document retrieval operation.
+     *
+     * @param operation operation parameters
+     * @return future that completes with a writer for the operation result
+     */
+    private CompletableFuture<ResultWriter> startDocumentOperation(JSONObject operation)
+    {
+        final String uuidParam = operation.optString("uuid", null);
+        final String uriParam = operation.optString("uri", null);
+        final String indexParam = operation.optString("index", null);
+        final boolean plain = operation.optBoolean("plain", false);
+        if (null == uuidParam && null == uriParam) {
+            throw new UserErrorException("Document operations require a uuid or uri");
+        }
+        if (null == indexParam) {
+            throw new UserErrorException("Document operations require an index");
+        }
+
+        final DocumentRetriever retriever = new DocumentRetriever(false, true);
+        if (!retriever.isIndexAllowed(indexParam)) {
+            throw new UserErrorException("Index not allowed: " + indexParam);
+        }
+
+        return CompletableFuture.supplyAsync(() -> {
+            DocumentRetriever.Document doc = null;
+            if (null != uuidParam) {
+                try {
+                    doc = retriever.getByUUID(indexParam, UUID.fromString(uuidParam));
+                } catch (IllegalArgumentException ignored) {}
+                if (null == doc) {
+                    doc = retriever.getByIndexDocID(indexParam, uuidParam);
+                }
+            } else {
+                doc = retriever.getByURI(indexParam, uriParam);
+            }
+
+            if (null == doc) {
+                return errorWriter(ApiErrorModule.SC_NOT_FOUND, "Document not found");
+            }
+
+            final DocumentRetriever.Document document = doc;
+            final String body = plain ? PlainTextRenderer.getBasicHtml(doc.getBody()) : doc.getBody();
+            return builder -> builder.startObject()
+                .field("type", "document")
+                .field("uuid", document.getDocUUID().toString())
+                .field("index", document.getIndexName())
+                .field("record_id", document.getRecordID())
+                .field("target_uri", document.getTargetURI())
+                .field("body", body)
+            .endObject();
+        }, getDocumentExecutor());
+    }
+
+    /**
+     * Create a result writer for a failed operation.
+     *
+     * @param code error code
+     * @param message error message
+     * @return result writer
+     */
+    private ResultWriter errorWriter(int code, String message)
+    {
+        return builder -> builder.startObject()
+            .startObject("error")
+                .field("code", code)
+                .field("message", message)
+            .endObject()
+        .endObject();
+    }
+
+    /**
+     * Create a result writer for an operation which failed with an exception.
+     *
+     * @param exception thrown exception
+     * @return result writer
+     */
+    private ResultWriter exceptionWriter(Throwable exception)
+    {
+        if (exception instanceof CompletionException && null != exception.getCause()) {
+            exception = exception.getCause();
+        }
+        if (exception instanceof UserErrorException) {
+            return errorWriter(ApiErrorModule.SC_BAD_REQUEST, exception.getMessage());
+        }
+        if (exception instanceof JSONException) {
+            return errorWriter(ApiErrorModule.SC_BAD_REQUEST, "Invalid operation: " + exception.getMessage());
+        }
+        if (exception instanceof ElasticsearchTimeoutException) {
+            return errorWriter(ApiErrorModule.SC_GATEWAY_TIMEOUT, "Search timed out");
+        }
+        if (exception instanceof CircuitBreaker.OpenException) {
+            return errorWriter(ApiErrorModule.SC_SERVICE_UNAVAILABLE, "Search backend temporarily unavailable");
+        }
+
+        Configured.getSysLogger().error("Batch operation failed:", exception);
+        return errorWriter(ApiErrorModule.SC_INTERNAL_SERVER_ERROR,
+                "An internal server error occurred. Please try again later.");
+    }
+
+    /**
+     * @return shared thread pool for document retrieval
+     */
+    private static synchronized ExecutorService getDocumentExecutor()
+    {
+        if (null == sDocumentExecutor) {
+            sDocumentExecutor = Executors.newFixedThreadPool(
+                    Configured.getConf().getInteger("api.batch.document_threads", 8), r -> {
+                        Thread t = new Thread(r, "chatnoir2-batch-document-retriever");
+                        t.setDaemon(true);
+                        return t;
+                    });
+        }
+        return sDocumentExecutor;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.api.v1;
+
+import de.webis.chatnoir2.webclient.api.ApiBootstrap;
+import de.webis.chatnoir2.webclient.api.ApiErrorModule;
+import de.webis.chatnoir2.webclient.api.ApiModuleBase;
+import de.webis.chatnoir2.webclient.search.ExportSearch;
+import de.webis.chatnoir2.webclient.search.SearchResultBuilder;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.search.SearchHit;
+import org.json.JSONArray;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ChatNoir API module for exporting complete result sets as newline-delimited JSON.
+ */
+@ApiModuleV1("_export")
+public class ExportApiModule extends ApiModuleBase
+{
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        String searchQueryString = getTypedNestedParameter(String.class, "query", request);
+        if (null == searchQueryString) {
+            searchQueryString = getTypedNestedParameter(String.class, "q", request);
+        }
+
+        if (null == searchQueryString || searchQueryString.trim().isEmpty()) {
+            ApiBootstrap.handleApiError(request, response, ApiErrorModule.SC_BAD_REQUEST,
+                    "Empty search query");
+            return;
+        }
+
+        final String[] indices = toStringArray(getTypedNestedParameter(JSONArray.class, "index", request));
+        String[] fields = toStringArray(getTypedNestedParameter(JSONArray.class, "fields", request));
+        if (null == fields) {
+            fields = Configured.getConf().getStringArray("api.export.default_fields");
+        }
+        String[] sort = toStringArray(getTypedNestedParameter(JSONArray.class, "sort", request));
+
+        long maxResults = Configured.getConf().getLong("api.export.max_results", -1L);
+        Long limit = getTypedNestedParameter(Long.class, "limit", request);
+        if (null == limit || limit <= 0 || (maxResults > 0 && limit > maxResults)) {
+            limit = maxResults;
+        }
+
+        final ExportSearch search = new ExportSearch(indices);
+        search.setFields(fields);
+        try {
+            if (null != sort) {
+                search.setSort(sort);
+            }
+        } catch (IllegalArgumentException e) {
+            ApiBootstrap.handleApiError(request, response, ApiErrorModule.SC_BAD_REQUEST,
+                    "Invalid sort order: " + e.getMessage());
+            return;
+        }
+        Integer pageSize = getTypedNestedParameter(Integer.class, "page_size", request);
+        if (null != pageSize && pageSize > 0) {
+            search.setPageSize(Math.min(pageSize, Configured.getConf().getInteger("api.export.page_size", 1000)));
+        }
+
+        // The export runs synchronously on the request thread. The next page is only requested once
+        // the current one has been written, so slow clients throttle the export via blocking writes to
+        // the response stream, and no asynchronous request timeout can cut off a long export.
+        writeQueryLog(search, request, searchQueryString, false);
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("application/x-ndjson");
+        final OutputStream out = response.getOutputStream();
+        final Map<String, String> indexAliases = new HashMap<>();
+        final String[] exportFields = fields;
+        final long startTime = System.currentTimeMillis();
+        final long[] exported = {0};
+
+        long totalResults;
+        try {
+            totalResults = search.export(searchQueryString, limit, hit -> {
+                writeLine(out, buildHitLine(hit, exportFields, indexAliases));
+                ++exported[0];
+            });
+        } catch (IOException e) {
+            // client went away
+            throw e;
+        } catch (Exception e) {
+            Configured.getSysLogger().error("Export failed:", e);
+            final XContentBuilder error = XContentFactory.jsonBuilder();
+            error.startObject()
+                .startObject("error")
+                    .field("code", ApiErrorModule.SC_INTERNAL_SERVER_ERROR)
+                    .field("message", "Export aborted due to an internal server error.")
+                .endObject()
+            .endObject();
+            writeLine(out, error);
+            return;
+        }
+
+        final XContentBuilder meta = XContentFactory.jsonBuilder();
+        meta.startObject()
+            .startObject("meta")
+                .field("query_time", System.currentTimeMillis() - startTime)
+                .field("total_results", totalResults)
+                .field("exported_results", exported[0])
+                .array("indices", search.getEffectiveIndices())
+            .endObject()
+        .endObject();
+        writeLine(out, meta);
+    }
+
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        doGet(request, response);
+    }
+
+    /**
+     * Build output line for an exported hit.
+     *
+     * @param hit search hit
+     * @param fields requested fields
+     * @param indexAliases cache for index alias names
+     * @return line builder
+     */
+    private XContentBuilder buildHitLine(SearchHit hit, String[] fields, Map<String, String> indexAliases) throws IOException
+    {
+        final XContentBuilder builder = XContentFactory.jsonBuilder();
+        builder.startObject()
+            .field("uuid", hit.getId())
+            .field("index", indexAliases.computeIfAbsent(hit.getIndex(),
+                    i -> new SearchResultBuilder().index(i).build().index()))
+            .field("score", Float.isNaN(hit.getScore()) ? null : hit.getScore());
+
+        if (hit.getSortValues().length > 0) {
+            builder.array("sort", hit.getSortValues());
+        }
+
+        final Map<String, Object> source = hit.getSource();
+        if (null != source) {
+            for (Map.Entry<String, Object> e : source.entrySet()) {
+                builder.field(e.getKey(), e.getValue());
+            }
+        }
+        return builder.endObject();
+    }
+
+    /**
+     * Write and flush a single NDJSON line.
+     *
+     * @param out output stream
+     * @param line line content
+     */
+    private void writeLine(OutputStream out, XContentBuilder line) throws IOException
+    {
+        out.write(line.string().getBytes(StandardCharsets.UTF_8));
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Convert JSONArray parameter to String array.
+     *
+     * @param array parameter value
+     * @return String array or null if array is null
+     */
+    private String[] toStringArray(JSONArray array)
+    {
+        if (null == array) {
+            return null;
+        }
+        String[] strings = new String[array.length()];
+        for (int i = 0; i < array.length(); ++i) {
+            strings[i] = array.getString(i);
+        }
+        return strings;
+    }
+}
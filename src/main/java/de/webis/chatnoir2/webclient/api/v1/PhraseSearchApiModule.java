@@ -30,6 +30,7 @@ import de.webis.chatnoir2.webclient.api.ApiErrorModule;
 import de.webis.chatnoir2.webclient.api.ApiModuleBase;
 import de.webis.chatnoir2.webclient.resources.ConfigLoader;
 import de.webis.chatnoir2.webclient.search.PhraseSearch;
+import de.webis.chatnoir2.webclient.search.SearchProvider;
 import de.webis.chatnoir2.webclient.search.SearchResultBuilder;
 import de.webis.chatnoir2.webclient.util.Configured;
 import de.webis.chatnoir2.webclient.search.ExplanationXContent;
@@ -92,55 +93,68 @@ public class PhraseSearchApiModule extends ApiModuleBase
         final long startTime = System.currentTimeMillis();
         search.setSlop(slop);
         search.setExplain(doExplain);
-        search.doSearch(searchQueryString, from, size);
-        final long elapsedTime = System.currentTimeMillis() - startTime;
+        search.setTimeout(getSearchTimeout(request));
+        if (minimal) {
+            search.setRenderingMode(SearchProvider.RenderingMode.MINIMAL);
+        }
+        final int resultsFrom = from;
+        final String queryString = searchQueryString;
+        completeAsync(request, response, search.doSearchAsync(searchQueryString, from, size),
+                search.getResponseTimeout(), searchResponse -> {
+            final long elapsedTime = System.currentTimeMillis() - startTime;
 
-        final List<SearchResultBuilder.SearchResult> results = search.getResults();
+            final List<SearchResultBuilder.SearchResult> results = search.getResults();
 
-        // write query log
-        if (from == 0) {
-            writeQueryLog(search, request, searchQueryString, false);
-        }
+            // write query log
+            if (resultsFrom == 0) {
+                writeQueryLog(search, request, queryString, false);
+            }
 
-        final XContentBuilder builder = getResponseBuilder(request);
-        builder.startObject()
-            .startObject("meta")
-                .field("query_time", elapsedTime)
-                .field("total_results", search.getTotalResultNumber())
-                .array("indices", search.getEffectiveIndices())
-            .endObject()
-            .startArray("results");
-                for (final SearchResultBuilder.SearchResult result : results) {
-                    builder.startObject();
-                        builder.field("score", result.score())
-                                .field("uuid", result.documentId());
-
-                        if (!minimal) {
-                            builder.field("index", result.index())
-                                    .field("trec_id", result.trecId())
-                                    .field("target_hostname", result.targetHostname());
-                        }
-
-                        builder.field("target_uri", result.targetUri());
-
-                        if (!minimal) {
-                            builder.field("page_rank", result.pageRank())
-                                    .field("spam_rank", result.spamRank())
-                                    .field("title", result.title());
-                        }
-
-                        builder.field("snippet", result.snippet());
-
-                        if (!minimal || doExplain) {
-                            builder.field("explanation");
-                            new ExplanationXContent(result.explanation()).toXContent(builder, ToXContent.EMPTY_PARAMS);
-                        }
-                    builder.endObject();
-                }
-            builder.endArray()
-        .endObject();
-
-        writeResponse(response, builder);
+            final XContentBuilder builder = getResponseBuilder(request);
+            builder.startObject()
+                .startObject("meta")
+                    .field("query_time", elapsedTime)
+                    .field("total_results", search.getTotalResultNumber())
+                    .array("indices", search.getEffectiveIndices())
+                    .field("timed_out", search.isTimedOut())
+                    .startObject("shards")
+                        .field("total", search.getTotalShards())
+                        .field("failed", search.getFailedShards())
+                    .endObject()
+                .endObject()
+                .startArray("results");
+                    for (final SearchResultBuilder.SearchResult result : results) {
+                        builder.startObject();
+                            builder.field("score", result.score())
+                                    .field("uuid", result.documentId());
+
+                            if (!minimal) {
+                                builder.field("index", result.index())
+                                        .field("trec_id", result.trecId())
+                                        .field("target_hostname", result.targetHostname());
+                            }
+
+                            builder.field("target_uri", result.targetUri());
+
+                            if (!minimal) {
+                                builder.field("page_rank", result.pageRank())
+                                        .field("spam_rank", result.spamRank())
+                                        .field("title", result.title());
+                            }
+
+                            builder.field("snippet", result.snippet());
+
+                            if (!minimal || doExplain) {
+                                builder.field("explanation");
+                                new ExplanationXContent(result.explanation()).toXContent(builder, ToXContent.EMPTY_PARAMS);
+                            }
+                        builder.endObject();
+                    }
+                builder.endArray()
+            .endObject();
+
+            writeResponse(response, builder);
+        });
     }
 
     @Override
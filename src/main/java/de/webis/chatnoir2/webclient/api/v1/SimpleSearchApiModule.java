@@ -84,45 +84,58 @@ public class SimpleSearchApiModule extends ApiModuleBase
         final SimpleSearch search = new SimpleSearch(indicesStr);
         final long startTime = System.currentTimeMillis();
         search.setExplain(doExplain);
-        search.doSearch(searchQueryString, from, size);
-        final long elapsedTime = System.currentTimeMillis() - startTime;
+        search.setTimeout(getSearchTimeout(request));
+        final int resultsFrom = from;
+        final String queryString = searchQueryString;
+        completeAsync(request, response, search.doSearchAsync(searchQueryString, from, size),
+                search.getResponseTimeout(), searchResponse -> {
+            final long elapsedTime = System.currentTimeMillis() - startTime;
 
-        final List<SearchResultBuilder.SearchResult> results = search.getResults();
+            final List<SearchResultBuilder.SearchResult> results = search.getResults();
 
-        // write query log
-        if (from == 0) {
-            writeQueryLog(search, request, searchQueryString, false);
-        }
+            // write query log
+            if (resultsFrom == 0) {
+                writeQueryLog(search, request, queryString, false);
+            }
 
-        final XContentBuilder builder = getResponseBuilder(request);
-        builder.startObject()
-            .startObject("meta")
-                .field("query_time", elapsedTime)
-                .field("total_results", search.getTotalResultNumber())
-                .array("indices", search.getEffectiveIndices())
-            .endObject()
-            .startArray("results");
+            final XContentBuilder builder = getResponseBuilder(request);
+            builder.startObject()
+                .startObject("meta")
+                    .field("query_time", elapsedTime)
+                    .field("total_results", search.getTotalResultNumber())
+                    .array("indices", search.getEffectiveIndices())
+                    .field("degradation_level", search.getDegradationLevel().getName())
+                    .field("stale", search.isStale())
+                    .field("spelling_suggestion", search.getSpellingSuggestion())
+                    .field("timed_out", search.isTimedOut())
+                    .startObject("shards")
+                        .field("total", search.getTotalShards())
+                        .field("failed", search.getFailedShards())
+                    .endObject()
+                .endObject()
+                .startArray("results");
 
-                for (final SearchResultBuilder.SearchResult result : results) {
-                    builder.startObject()
-                        .field("score", result.score())
-                        .field("uuid", result.documentId())
-                        .field("index", result.index())
-                        .field("trec_id", result.trecId())
-                        .field("target_hostname", result.targetHostname())
-                        .field("target_uri", result.targetUri())
-                        .field("page_rank", result.pageRank())
-                        .field("spam_rank", result.spamRank())
-                        .field("title", result.title())
-                        .field("snippet", result.snippet())
-                        .field("explanation");
-                            new ExplanationXContent(result.explanation()).toXContent(builder, ToXContent.EMPTY_PARAMS);
-                    builder.endObject();
-                }
-            builder.endArray()
-        .endObject();
+                    for (final SearchResultBuilder.SearchResult result : results) {
+                        builder.startObject()
+                            .field("score", result.score())
+                            .field("uuid", result.documentId())
+                            .field("index", result.index())
+                            .field("trec_id", result.trecId())
+                            .field("target_hostname", result.targetHostname())
+                            .field("target_uri", result.targetUri())
+                            .field("page_rank", result.pageRank())
+                            .field("spam_rank", result.spamRank())
+                            .field("title", result.title())
+                            .field("snippet", result.snippet())
+                            .field("explanation");
+                                new ExplanationXContent(result.explanation()).toXContent(builder, ToXContent.EMPTY_PARAMS);
+                        builder.endObject();
+                    }
+                builder.endArray()
+            .endObject();
 
-        writeResponse(response, builder);
+            writeResponse(response, builder);
+        });
     }
 
     @Override
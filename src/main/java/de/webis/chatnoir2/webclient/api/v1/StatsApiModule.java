@@ -0,0 +1,95 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.api.v1;
+
+import de.webis.chatnoir2.webclient.api.ApiBootstrap;
+import de.webis.chatnoir2.webclient.api.ApiErrorModule;
+import de.webis.chatnoir2.webclient.api.ApiModuleBase;
+import de.webis.chatnoir2.webclient.auth.api.ApiTokenRealm;
+import de.webis.chatnoir2.webclient.model.api.ApiKeyModel;
+import de.webis.chatnoir2.webclient.search.CompiledPattern;
+import de.webis.chatnoir2.webclient.search.DegradationController;
+import de.webis.chatnoir2.webclient.search.HostnameIndex;
+import de.webis.chatnoir2.webclient.search.QuerySuggester;
+import de.webis.chatnoir2.webclient.search.RankedListCache;
+import de.webis.chatnoir2.webclient.search.SearchRequestCoalescer;
+import de.webis.chatnoir2.webclient.search.SearchRequestHedger;
+import de.webis.chatnoir2.webclient.search.SearchResultCache;
+import de.webis.chatnoir2.webclient.search.ShardCacheMonitor;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
+import de.webis.chatnoir2.webclient.util.ClientManager;
+import de.webis.chatnoir2.webclient.util.ConfigWatcher;
+import de.webis.chatnoir2.webclient.util.LangDetector;
+import org.apache.shiro.SecurityUtils;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * ChatNoir API module for retrieving runtime statistics of this frontend node.
+ */
+@ApiModuleV1("_stats")
+public class StatsApiModule extends ApiModuleBase
+{
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        ApiKeyModel userModel = ApiTokenRealm.getUserModel(SecurityUtils.getSubject());
+        if (null == userModel || !userModel.getRoles().contains("admin")) {
+            ApiBootstrap.handleApiError(request, response, ApiErrorModule.SC_FORBIDDEN,
+                    "You are not allowed to view runtime statistics");
+            return;
+        }
+
+        final XContentBuilder builder = getResponseBuilder(request);
+        builder.startObject()
+            .field("result_cache", SearchResultCache.getInstance().getStats())
+            .field("ranked_list_cache", RankedListCache.getInstance().getStats())
+            .field("request_coalescing", SearchRequestCoalescer.getInstance().getStats())
+            .field("degradation", DegradationController.getInstance().getStats())
+            .field("hedging", SearchRequestHedger.getInstance().getStats())
+            .field("hostname_index", HostnameIndex.getInstance().getStats())
+            .field("query_suggester", QuerySuggester.getInstance().getStats())
+            .field("lang_detection", LangDetector.getStats())
+            .field("shard_caches", ShardCacheMonitor.getInstance().getStats())
+            .field("boost_patterns", CompiledPattern.getStats())
+            .field("config_reload", ConfigWatcher.getStats())
+            .field("clients", ClientManager.getInstance().getStats())
+            .field("circuit_breakers", CircuitBreaker.getStats())
+        .endObject();
+
+        writeResponse(response, builder);
+    }
+
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        doGet(request, response);
+    }
+}
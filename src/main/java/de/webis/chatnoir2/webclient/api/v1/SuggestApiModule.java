@@ -0,0 +1,88 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.api.v1;
+
+import de.webis.chatnoir2.webclient.api.ApiBootstrap;
+import de.webis.chatnoir2.webclient.api.ApiErrorModule;
+import de.webis.chatnoir2.webclient.api.ApiModuleBase;
+import de.webis.chatnoir2.webclient.search.QuerySuggester;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ChatNoir API module for query autocompletion.
+ */
+@ApiModuleV1("_suggest")
+public class SuggestApiModule extends ApiModuleBase
+{
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        String prefix = getTypedNestedParameter(String.class, "query", request);
+        if (null == prefix) {
+            prefix = getTypedNestedParameter(String.class, "q", request);
+        }
+
+        if (null == prefix || prefix.trim().isEmpty()) {
+            ApiBootstrap.handleApiError(request, response, ApiErrorModule.SC_BAD_REQUEST,
+                    "Empty query prefix");
+            return;
+        }
+
+        final int maxSize = Configured.getConf().getInteger("suggest.max_size", 20);
+        Integer size = getTypedNestedParameter(Integer.class, "size", request);
+        if (null == size || size < 1) {
+            size = Configured.getConf().getInteger("suggest.size", 10);
+        }
+
+        final long startTime = System.nanoTime();
+        final List<String> suggestions = QuerySuggester.getInstance().suggest(prefix, Math.min(size, maxSize));
+        final double elapsedTime = (System.nanoTime() - startTime) / 1000000.0;
+
+        final XContentBuilder builder = getResponseBuilder(request);
+        builder.startObject()
+            .startObject("meta")
+                .field("query_time", elapsedTime)
+            .endObject()
+            .array("suggestions", suggestions.toArray(new String[0]))
+        .endObject();
+
+        writeResponse(response, builder);
+    }
+
+    @Override
+    public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException
+    {
+        doGet(request, response);
+    }
+}
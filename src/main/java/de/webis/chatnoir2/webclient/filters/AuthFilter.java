@@ -31,7 +31,7 @@ import javax.servlet.annotation.WebFilter;
 /**
  * Filter requests to serve static content.
  */
-@WebFilter(filterName="AuthFilter", urlPatterns = AuthFilter.ROUTE)
+@WebFilter(filterName="AuthFilter", urlPatterns = AuthFilter.ROUTE, asyncSupported = true)
 public class AuthFilter extends ShiroFilter
 {
     static final String ROUTE = "/*";
@@ -33,7 +33,7 @@ import java.io.IOException;
 /**
  * Filter requests to set correct request and response encoding.
  */
-@WebFilter(filterName = "CharSetFilter", urlPatterns = CharSetFilter.ROUTE)
+@WebFilter(filterName = "CharSetFilter", urlPatterns = CharSetFilter.ROUTE, asyncSupported = true)
 public class CharSetFilter implements Filter
 {
     static final String ROUTE = "/*";
@@ -45,7 +45,7 @@ import javax.servlet.annotation.WebFilter;
         StaticResourceFilter.ROUTE3,
         StaticResourceFilter.ROUTE4,
         StaticResourceFilter.ROUTE5
-})
+}, asyncSupported = true)
 public class StaticResourceFilter implements Filter
 {
     /**
@@ -26,12 +26,15 @@
 package de.webis.chatnoir2.webclient.hdfs;
 
 import de.webis.WebisUUID;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
 import de.webis.chatnoir2.webclient.util.Configured;
 import de.webis.chatnoir2.webclient.resources.ConfigLoader;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.MapFile;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -41,6 +44,9 @@ import java.util.UUID;
 
 /**
  * Tools for retrieving WARC records from Webis MapFiles.
+ *
+ * Requests to the MapFiles of each index go through a {@link CircuitBreaker}, so that
+ * lookups fail fast while HDFS is unavailable.
  */
 public class MapFileReader extends Configured
 {
@@ -107,12 +113,27 @@ public class MapFileReader extends Configured
         return getDocument(uuid, index);
     }
 
+    /**
+     * Get the circuit breaker for the MapFiles of an index. While the breaker is open,
+     * the existence of the MapFile directory is probed in the background.
+     *
+     * @param index Elasticsearch index for which the MapFiles provide documents
+     * @param mapfileConfig MapFile configuration of the index
+     * @return circuit breaker
+     */
+    private static CircuitBreaker getBreaker(final String index, final ConfigLoader.Config mapfileConfig)
+    {
+        return CircuitBreaker.get("hdfs:" + index, () ->
+                FileSystem.get(mHadoopConfig).exists(new Path(mapfileConfig.getString("path"))));
+    }
+
     /**
      * Retrieve document from MapFile using its UUID.
      *
      * @param recordUUID UUID of the document
      * @param index Elasticsearch index for which this MapFile provides documents
      * @return retrieved document as a JSONObject or null
+     * @throws CircuitBreaker.OpenException if HDFS is unavailable
      */
     public static JSONObject getDocument(final UUID recordUUID, final String index)
     {
@@ -121,6 +142,10 @@ public class MapFileReader extends Configured
         }
 
         final ConfigLoader.Config mapfileConfig = mInstance.getConf().get("hdfs.mapfiles").get(index);
+        final CircuitBreaker breaker = getBreaker(index, mapfileConfig);
+        if (!breaker.allowRequest()) {
+            throw new CircuitBreaker.OpenException(breaker.getName());
+        }
         final int partition = getPartition(recordUUID.toString(), mapfileConfig.getInteger("partitions"));
         String inputPathStr = String.format("%s/%s-r-%05d", mapfileConfig.getString("path"),
                 DATA_OUTPUT_NAME, partition);
@@ -133,9 +158,14 @@ public class MapFileReader extends Configured
                 mMapfileReaders.put(inputPath, reader);
             }
 
-            return new JSONObject(reader.get(new Text(recordUUID.toString()), new Text()).toString());
+            final Writable value = reader.get(new Text(recordUUID.toString()), new Text());
+            breaker.recordSuccess();
+            return new JSONObject(value.toString());
 
-        } catch (IOException | JSONException | NullPointerException e) {
+        } catch (IOException e) {
+            breaker.recordFailure();
+            return null;
+        } catch (JSONException | NullPointerException e) {
             return null;
         }
     }
@@ -146,6 +176,7 @@ public class MapFileReader extends Configured
      * @param url Web URL of the document
      * @param index Elasticsearch index for which this MapFile provides documents
      * @return retrieved UUID
+     * @throws CircuitBreaker.OpenException if HDFS is unavailable
      */
     public static UUID getUUIDForUrl(final String url, final String index)
     {
@@ -154,6 +185,10 @@ public class MapFileReader extends Configured
         }
 
         final ConfigLoader.Config mapfileConfig = mInstance.getConf().get("hdfs.mapfiles").get(index);
+        final CircuitBreaker breaker = getBreaker(index, mapfileConfig);
+        if (!breaker.allowRequest()) {
+            throw new CircuitBreaker.OpenException(breaker.getName());
+        }
         final int partition = getPartition(url, mapfileConfig.getInteger("partitions"));
         String inputPathStr = String.format("%s/%s-r-%05d", mapfileConfig.getString("path"),
                 URI_OUTPUT_NAME, partition);
@@ -165,12 +200,17 @@ public class MapFileReader extends Configured
                 reader = new MapFile.Reader(inputPath, mHadoopConfig);
                 mMapfileReaders.put(inputPath, reader);
             }
-            String uuidStr = reader.get(new Text(url), new Text()).toString();
+            final Writable value = reader.get(new Text(url), new Text());
+            breaker.recordSuccess();
+            String uuidStr = value.toString();
             if (uuidStr.startsWith(DATA_OUTPUT_NAME))
                 uuidStr = uuidStr.substring(DATA_OUTPUT_NAME.length());
             return UUID.fromString(uuidStr);
 
-        } catch (IOException | NullPointerException e) {
+        } catch (IOException e) {
+            breaker.recordFailure();
+            return null;
+        } catch (NullPointerException e) {
             return null;
         }
     }
@@ -25,14 +25,23 @@
 
 package de.webis.chatnoir2.webclient.listeners;
 
+import de.webis.chatnoir2.webclient.search.HostnameIndex;
+import de.webis.chatnoir2.webclient.search.IndexRegistry;
+import de.webis.chatnoir2.webclient.search.IndexVersionTracker;
+import de.webis.chatnoir2.webclient.search.QuerySuggester;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
+import de.webis.chatnoir2.webclient.util.ConfigWatcher;
 import de.webis.chatnoir2.webclient.util.Configured;
+import de.webis.chatnoir2.webclient.util.LangDetector;
+import de.webis.chatnoir2.webclient.util.ParallelMapper;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 
 /**
- * Cleanly shut down web contexts when the container stops.
+ * Initialize shared resources when the container starts and
+ * cleanly shut down web contexts when the container stops.
  */
 @WebListener
 public class ShutdownListener implements ServletContextListener
@@ -40,11 +49,20 @@ public class ShutdownListener implements ServletContextListener
     @Override
     public void contextInitialized(ServletContextEvent event)
     {
+        LangDetector.init();
+        ConfigWatcher.start();
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent event)
     {
+        ConfigWatcher.shutdown();
+        IndexVersionTracker.shutdown();
+        IndexRegistry.shutdown();
+        HostnameIndex.shutdown();
+        QuerySuggester.shutdown();
+        ParallelMapper.shutdown();
+        CircuitBreaker.shutdown();
         Configured.shutdownClient();
     }
 }
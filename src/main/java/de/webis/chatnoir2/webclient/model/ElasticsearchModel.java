@@ -25,6 +25,7 @@
 
 package de.webis.chatnoir2.webclient.model;
 
+import de.webis.chatnoir2.webclient.util.ClientManager;
 import de.webis.chatnoir2.webclient.util.Configured;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsRequest;
 import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
@@ -81,7 +82,7 @@ public abstract class ElasticsearchModel extends ValidatingModel<String, Object>
      */
     public boolean loadById(String documentId)
     {
-        GetResponse response = Configured.getClient().prepareGet(mIndexName, mType, documentId).get();
+        GetResponse response = Configured.getClient(ClientManager.Workload.LOOKUP).prepareGet(mIndexName, mType, documentId).get();
         if (!response.isExists()) {
             return false;
         }
@@ -112,7 +113,7 @@ public abstract class ElasticsearchModel extends ValidatingModel<String, Object>
     protected boolean doCommit()
     {
         IndexResponse response = Configured
-                .getClient()
+                .getClient(ClientManager.Workload.LOOKUP)
                 .prepareIndex(mIndexName, mType, mDocumentId)
                 .setSource(getAll())
                 .get();
@@ -139,7 +140,7 @@ public abstract class ElasticsearchModel extends ValidatingModel<String, Object>
 
         IndicesExistsRequest request = new IndicesExistsRequest(mIndexName);
         try {
-            TransportClient client = Configured.getClient();
+            TransportClient client = Configured.getClient(ClientManager.Workload.LOOKUP);
             IndicesExistsResponse response = client.admin().indices().exists(request).get();
             if (!response.isExists()) {
                 Configured.getSysLogger().info(String.format(
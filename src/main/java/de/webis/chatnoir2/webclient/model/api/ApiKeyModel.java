@@ -383,14 +383,16 @@ public class ApiKeyModel extends ElasticsearchModel {
                 putNoUpdate("limits", new ApiLimits(
                         null != limits.get("day") ? ((Integer) limits.get("day")).longValue() : null,
                         null != limits.get("week") ? ((Integer) limits.get("week")).longValue() : null,
-                        null != limits.get("month") ? ((Integer) limits.get("month")).longValue() : null));
+                        null != limits.get("month") ? ((Integer) limits.get("month")).longValue() : null,
+                        null != limits.get("search_timeout") ? ((Integer) limits.get("search_timeout")).longValue() : null));
             } catch (ClassCastException ignored) {
                 try {
                     // returned type may already be Long, so try again
                     putNoUpdate("limits", new ApiLimits(
                             (Long) limits.get("day"),
                             (Long) limits.get("week"),
-                            (Long) limits.get("month")));
+                            (Long) limits.get("month"),
+                            (Long) limits.get("search_timeout")));
                 } catch (ClassCastException e) {
                     Configured.getSysLogger().debug("Error loading model data", e);
                     return false;
@@ -412,10 +414,22 @@ public class ApiKeyModel extends ElasticsearchModel {
          * @param month monthly limit (null for default)
          */
         public ApiLimits(@Nullable Long day, @Nullable Long week, @Nullable Long month)
+        {
+            this(day, week, month, null);
+        }
+
+        /**
+         * @param day daily limit (null for default)
+         * @param week weekly limit (null for default)
+         * @param month monthly limit (null for default)
+         * @param searchTimeout search timeout in milliseconds (null for default)
+         */
+        public ApiLimits(@Nullable Long day, @Nullable Long week, @Nullable Long month, @Nullable Long searchTimeout)
         {
             put("day", day);
             put("week", week);
             put("month", month);
+            put("search_timeout", searchTimeout);
         }
 
         /**
@@ -448,6 +462,16 @@ public class ApiKeyModel extends ElasticsearchModel {
             return getLimit("month");
         }
 
+        /**
+         * Get actual search timeout after resolution of parent limits.
+         *
+         * @return search timeout in milliseconds
+         */
+        public long getSearchTimeout()
+        {
+            return getLimit("search_timeout");
+        }
+
         private long getLimit(String field)
         {
             final Long limit = get(field);
@@ -456,7 +480,7 @@ public class ApiKeyModel extends ElasticsearchModel {
                 return ((ApiLimits) mParent.get("limits")).getLimit(field);
             }
             if (null == limit) {
-                return Configured.getConf().getLong("auth.api.default_quota_limits." + field);
+                return Configured.getConf().getLong("auth.api.default_quota_limits." + field, -1L);
             }
             if (null != mParent) {
                 long parentLimit = ((ApiLimits) mParent.get("limits")).getLimit(field);
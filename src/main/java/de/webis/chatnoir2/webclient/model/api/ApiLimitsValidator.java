@@ -102,6 +102,11 @@ public class ApiLimitsValidator extends StatefulValidator
             mMessage = "Monthly limit out of bounds.";
             return false;
         }
+        if (limits.get("search_timeout") != null && referenceLimits.getSearchTimeout() > 0 &&
+                (limits.get("search_timeout") <= 0 || limits.get("search_timeout") > referenceLimits.getSearchTimeout())) {
+            mMessage = "Search timeout out of bounds.";
+            return false;
+        }
 
         return true;
     }
@@ -36,16 +36,30 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Loader and provider singleton for configuration directives.
+ *
+ * Loaded configurations are deeply immutable, so a {@link Config} object is a consistent
+ * snapshot which can be shared between threads without locking.
  */
 public class ConfigLoader
 {
-    private static final String DEFAULT_FILE_NAME = "config.yml";
+    /**
+     * Name of the default configuration file.
+     */
+    public static final String DEFAULT_FILE_NAME = "config.yml";
+
+    /**
+     * System configuration directory, which takes precedence over all other locations.
+     */
+    public static final String SYSTEM_CONFIG_DIR = "/etc/chatnoir2/";
 
     private static final ConfigLoader mInstance = new ConfigLoader();
 
@@ -98,6 +112,20 @@ public class ConfigLoader
         return new Config(mConfigObjects.get(configFileName));
     }
 
+    /**
+     * Load a fresh copy of a configuration file, bypassing (and not updating) the cache
+     * used by {@link #getConfig(String)}. Used for reloading a changed configuration.
+     *
+     * @param configFileName name of the config file
+     * @return the Config object
+     * @throws IOException
+     * @throws ParseException
+     */
+    public Config loadConfig(final String configFileName) throws IOException, ParseException
+    {
+        return new Config(parseConfigFile(configFileName));
+    }
+
     /**
      * Load configuration from JSON file.
      *
@@ -111,7 +139,20 @@ public class ConfigLoader
             configFileName = DEFAULT_FILE_NAME;
         }
 
-        Path configFile = Paths.get("/etc/chatnoir2/" + configFileName);
+        mConfigObjects.put(configFileName, parseConfigFile(configFileName));
+    }
+
+    /**
+     * Locate and parse a configuration file.
+     *
+     * @param configFileName the configuration file
+     * @return immutable parsed configuration object
+     * @throws IOException
+     * @throws ParseException
+     */
+    private Object parseConfigFile(String configFileName) throws IOException, ParseException
+    {
+        Path configFile = Paths.get(SYSTEM_CONFIG_DIR + configFileName);
         if (!Files.exists(configFile)) {
             configFile = Paths.get(configFileName);
         }
@@ -133,17 +174,52 @@ public class ConfigLoader
                     .convertToMap(new BytesArray(fileContents), false,
                             configFileName.endsWith(".json") ? XContentType.JSON : XContentType.YAML);
 
-            mConfigObjects.put(configFileName, xContent.v2());
+            return freeze(xContent.v2());
         } catch (Exception e) {
             throw new ParseException(e.getMessage());
         }
     }
 
+    /**
+     * Create a deeply immutable copy of a parsed configuration object.
+     *
+     * @param obj parsed configuration object
+     * @return immutable copy
+     */
+    private static Object freeze(final Object obj)
+    {
+        if (obj instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) obj).entrySet()) {
+                map.put(e.getKey(), freeze(e.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        if (obj instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) obj).size());
+            for (Object o : (List<?>) obj) {
+                list.add(freeze(o));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return obj;
+    }
+
     /**
      * Configuration data transfer object.
      */
     public static class Config
     {
+        /**
+         * Maximum number of cached key paths.
+         */
+        private static final int MAX_KEY_PATHS = 4096;
+
+        /**
+         * Cache of dotted directive names split into their path components.
+         */
+        private static final ConcurrentHashMap<String, String[]> sKeyPaths = new ConcurrentHashMap<>();
+
         /**
          * Raw JSON config object.
          */
@@ -177,9 +253,10 @@ public class ConfigLoader
          */
         public boolean contains(String name)
         {
-            assert mConfigObject != null;
+            if (!(mConfigObject instanceof Map)) {
+                return false;
+            }
             return ((Map) mConfigObject).get(name) != null || get(name).mConfigObject != null;
-
         }
 
         /**
@@ -198,8 +275,7 @@ public class ConfigLoader
 
             Object obj = mConfigObject;
             try {
-                String[] splits = name.split("\\.");
-                for (String s : splits) {
+                for (String s : getKeyPath(name)) {
                     obj = ((Map) obj).get(s);
                 }
             } catch (Exception e) {
@@ -209,6 +285,25 @@ public class ConfigLoader
             return new Config(obj);
         }
 
+        /**
+         * Split a dotted directive name into its path components.
+         * Directive names are almost always constants, so the split paths are cached.
+         *
+         * @param name directive name
+         * @return path components
+         */
+        private static String[] getKeyPath(final String name)
+        {
+            String[] path = sKeyPaths.get(name);
+            if (null == path) {
+                path = name.split("\\.");
+                if (sKeyPaths.size() < MAX_KEY_PATHS) {
+                    sKeyPaths.putIfAbsent(name, path);
+                }
+            }
+            return path;
+        }
+
         /**
          * Get configuration directive as String.
          *
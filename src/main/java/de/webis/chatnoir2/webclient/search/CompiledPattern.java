@@ -0,0 +1,441 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.search;
+
+import org.apache.lucene.util.IntsRef;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.lucene.util.automaton.*;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Anchored regular expression compiled into the cheapest equivalent combination of
+ * <code>term</code>, <code>terms</code>, <code>prefix</code> and residual <code>regexp</code> queries.
+ *
+ * The pattern is expanded into its top-level alternatives (distributing groups and optional parts).
+ * Alternatives which match a finite set of strings become terms, alternatives which match a fixed
+ * prefix followed by anything become prefix queries and only the remaining alternatives are kept
+ * as a regular expression. The compiled form is verified to accept exactly the same language as
+ * the original pattern, otherwise the original pattern is used unchanged.
+ * Compiled queries are constant-score queries, so they score exactly like the original regexp query.
+ */
+public final class CompiledPattern
+{
+    /**
+     * Maximum number of alternatives to expand a pattern into.
+     */
+    private static final int MAX_ALTERNATIVES = 64;
+
+    /**
+     * Maximum number of automaton states during determinization (same as Elasticsearch default).
+     */
+    private static final int MAX_DETERMINIZED_STATES = 10000;
+
+    private static final AtomicLong sPatterns = new AtomicLong();
+    private static final AtomicLong sFullyCompiled = new AtomicLong();
+    private static final AtomicLong sPartiallyCompiled = new AtomicLong();
+    private static final AtomicLong sTerms = new AtomicLong();
+    private static final AtomicLong sPrefixes = new AtomicLong();
+    private static final AtomicLong sStatesBefore = new AtomicLong();
+    private static final AtomicLong sStatesAfter = new AtomicLong();
+
+    private final String mPattern;
+    private final List<String> mTerms;
+    private final List<String> mPrefixes;
+    private final String mRegexp;
+    private final int mStatesBefore;
+    private final int mStatesAfter;
+
+    private CompiledPattern(String pattern, List<String> terms, List<String> prefixes, String regexp,
+                            int statesBefore, int statesAfter)
+    {
+        mPattern = pattern;
+        mTerms = Collections.unmodifiableList(terms);
+        mPrefixes = Collections.unmodifiableList(prefixes);
+        mRegexp = regexp;
+        mStatesBefore = statesBefore;
+        mStatesAfter = statesAfter;
+    }
+
+    /**
+     * Compile an anchored regular expression (Lucene / Elasticsearch regexp syntax).
+     *
+     * @param pattern regular expression
+     * @return compiled pattern
+     */
+    public static CompiledPattern compile(String pattern)
+    {
+        CompiledPattern compiled = doCompile(pattern);
+
+        sPatterns.incrementAndGet();
+        if (null == compiled.mRegexp) {
+            sFullyCompiled.incrementAndGet();
+        } else if (!compiled.isUnchanged()) {
+            sPartiallyCompiled.incrementAndGet();
+        }
+        sTerms.addAndGet(compiled.mTerms.size());
+        sPrefixes.addAndGet(compiled.mPrefixes.size());
+        sStatesBefore.addAndGet(compiled.mStatesBefore);
+        sStatesAfter.addAndGet(compiled.mStatesAfter);
+
+        return compiled;
+    }
+
+    private static CompiledPattern doCompile(String pattern)
+    {
+        final Automaton original;
+        try {
+            original = toAutomaton(pattern);
+        } catch (IllegalArgumentException | TooComplexToDeterminizeException e) {
+            // leave validation to Elasticsearch
+            return new CompiledPattern(pattern, new ArrayList<>(), new ArrayList<>(), pattern, 0, 0);
+        }
+        final CompiledPattern unchanged = new CompiledPattern(pattern, new ArrayList<>(), new ArrayList<>(),
+                pattern, original.getNumStates(), original.getNumStates());
+
+        List<String> alternatives = expand(pattern);
+        if (null == alternatives) {
+            return unchanged;
+        }
+
+        try {
+            Set<String> terms = new LinkedHashSet<>();
+            List<String> prefixes = new ArrayList<>();
+            List<String> regexps = new ArrayList<>();
+            List<Automaton> parts = new ArrayList<>();
+            for (String alternative : alternatives) {
+                Automaton a = toAutomaton(alternative);
+                parts.add(a);
+
+                if (Operations.isFinite(a)) {
+                    List<String> strings = getFiniteStrings(a);
+                    if (null != strings) {
+                        terms.addAll(strings);
+                        continue;
+                    }
+                } else {
+                    String prefix = Operations.getCommonPrefix(a);
+                    Automaton prefixAutomaton = Operations.concatenate(
+                            Automata.makeString(prefix), Automata.makeAnyString());
+                    if (Operations.sameLanguage(a, determinize(prefixAutomaton))) {
+                        prefixes.add(prefix);
+                        continue;
+                    }
+                }
+                regexps.add(alternative);
+            }
+
+            // verify that compiled form is equivalent to the original pattern
+            if (!Operations.sameLanguage(original, determinize(Operations.union(parts)))) {
+                return unchanged;
+            }
+
+            String regexp = null;
+            int statesAfter = 0;
+            if (regexps.size() == 1) {
+                regexp = regexps.get(0);
+            } else if (regexps.size() > 1) {
+                StringJoiner joiner = new StringJoiner("|");
+                regexps.forEach(r -> joiner.add("(" + r + ")"));
+                regexp = joiner.toString();
+            }
+            if (null != regexp) {
+                statesAfter = toAutomaton(regexp).getNumStates();
+            }
+
+            return new CompiledPattern(pattern, new ArrayList<>(terms), prefixes, regexp,
+                    original.getNumStates(), statesAfter);
+        } catch (IllegalArgumentException | TooComplexToDeterminizeException e) {
+            return unchanged;
+        }
+    }
+
+    /**
+     * @return original regular expression
+     */
+    public String getPattern()
+    {
+        return mPattern;
+    }
+
+    /**
+     * @return exact terms matched by the pattern
+     */
+    public List<String> getTerms()
+    {
+        return mTerms;
+    }
+
+    /**
+     * @return prefixes matched by the pattern
+     */
+    public List<String> getPrefixes()
+    {
+        return mPrefixes;
+    }
+
+    /**
+     * @return residual regular expression or null if none is needed
+     */
+    public String getRegexp()
+    {
+        return mRegexp;
+    }
+
+    /**
+     * @return whether the pattern could not be compiled into cheaper queries
+     */
+    public boolean isUnchanged()
+    {
+        return mPattern.equals(mRegexp) && mTerms.isEmpty() && mPrefixes.isEmpty();
+    }
+
+    /**
+     * Build query matching the pattern on a field with constant score.
+     *
+     * @param field field name
+     * @param boost constant score of matching documents
+     * @return query
+     */
+    public QueryBuilder toQuery(String field, float boost)
+    {
+        if (isUnchanged()) {
+            return QueryBuilders.regexpQuery(field, mRegexp).boost(boost);
+        }
+
+        List<QueryBuilder> clauses = new ArrayList<>();
+        if (mTerms.size() == 1) {
+            clauses.add(QueryBuilders.termQuery(field, mTerms.get(0)));
+        } else if (mTerms.size() > 1) {
+            clauses.add(QueryBuilders.termsQuery(field, mTerms));
+        }
+        for (String prefix : mPrefixes) {
+            clauses.add(QueryBuilders.prefixQuery(field, prefix));
+        }
+        if (null != mRegexp) {
+            clauses.add(QueryBuilders.regexpQuery(field, mRegexp));
+        }
+
+        if (clauses.size() == 1) {
+            return QueryBuilders.constantScoreQuery(clauses.get(0)).boost(boost);
+        }
+        BoolQueryBuilder bool = QueryBuilders.boolQuery().minimumShouldMatch(1);
+        clauses.forEach(bool::should);
+        return QueryBuilders.constantScoreQuery(bool).boost(boost);
+    }
+
+    /**
+     * Get compilation statistics of all patterns compiled so far.
+     * Automaton states of regular expressions are a measure of their evaluation cost.
+     *
+     * @return map of statistics counters
+     */
+    public static Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long statesBefore = sStatesBefore.get();
+        long statesAfter = sStatesAfter.get();
+        stats.put("patterns", sPatterns.get());
+        stats.put("fully_compiled", sFullyCompiled.get());
+        stats.put("partially_compiled", sPartiallyCompiled.get());
+        stats.put("terms", sTerms.get());
+        stats.put("prefixes", sPrefixes.get());
+        stats.put("regexp_states_before", statesBefore);
+        stats.put("regexp_states_after", statesAfter);
+        stats.put("regexp_states_reduction", statesBefore > 0 ? 1.0 - (double) statesAfter / statesBefore : 0.0);
+        return stats;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s => terms: %s, prefixes: %s, regexp: %s", mPattern, mTerms, mPrefixes, mRegexp);
+    }
+
+    private static Automaton determinize(Automaton a)
+    {
+        return Operations.removeDeadStates(Operations.determinize(a, MAX_DETERMINIZED_STATES));
+    }
+
+    private static Automaton toAutomaton(String regexp)
+    {
+        return determinize(new RegExp(regexp).toAutomaton(MAX_DETERMINIZED_STATES));
+    }
+
+    /**
+     * @return all strings accepted by a finite automaton or null if there are too many
+     */
+    private static List<String> getFiniteStrings(Automaton a)
+    {
+        List<String> strings = new ArrayList<>();
+        FiniteStringsIterator iterator = new FiniteStringsIterator(a);
+        for (IntsRef s; null != (s = iterator.next()); ) {
+            if (strings.size() >= MAX_ALTERNATIVES) {
+                return null;
+            }
+            strings.add(UnicodeUtil.newString(s.ints, s.offset, s.length));
+        }
+        return strings;
+    }
+
+    /**
+     * Expand a regular expression into its alternatives by distributing top-level alternations,
+     * groups and optional parts. Other constructs are kept as they are.
+     *
+     * @param pattern regular expression
+     * @return list of alternatives or null if the pattern cannot be expanded
+     */
+    static List<String> expand(String pattern)
+    {
+        if (pattern.indexOf('&') >= 0 || pattern.indexOf('~') >= 0) {
+            // intersection and complement do not distribute
+            return null;
+        }
+        int[] pos = {0};
+        List<String> alternatives = expandAlternation(pattern, pos);
+        if (null == alternatives || pos[0] != pattern.length()) {
+            return null;
+        }
+        return alternatives;
+    }
+
+    private static List<String> expandAlternation(String pattern, int[] pos)
+    {
+        List<String> alternatives = new ArrayList<>();
+        List<String> current = Collections.singletonList("");
+
+        while (pos[0] < pattern.length()) {
+            final int start = pos[0];
+            final char c = pattern.charAt(start);
+
+            if (c == ')') {
+                break;
+            }
+            if (c == '|') {
+                alternatives.addAll(current);
+                current = Collections.singletonList("");
+                ++pos[0];
+                continue;
+            }
+
+            List<String> unit;
+            if (c == '(') {
+                ++pos[0];
+                List<String> inner = expandAlternation(pattern, pos);
+                if (null == inner || pos[0] >= pattern.length() || pattern.charAt(pos[0]) != ')') {
+                    return null;
+                }
+                ++pos[0];
+                unit = inner;
+            } else {
+                int end = findAtomEnd(pattern, start);
+                if (end < 0) {
+                    return null;
+                }
+                pos[0] = end;
+                unit = Collections.singletonList(pattern.substring(start, end));
+            }
+
+            // quantifiers
+            if (pos[0] < pattern.length()) {
+                char q = pattern.charAt(pos[0]);
+                if (q == '?') {
+                    ++pos[0];
+                    List<String> optional = new ArrayList<>();
+                    optional.add("");
+                    optional.addAll(unit);
+                    unit = optional;
+                } else if (q == '*' || q == '+' || q == '{') {
+                    int end = q == '{' ? pattern.indexOf('}', pos[0]) + 1 : pos[0] + 1;
+                    if (end <= 0) {
+                        return null;
+                    }
+                    String atom = pattern.substring(start, pos[0]);
+                    unit = Collections.singletonList(atom + pattern.substring(pos[0], end));
+                    pos[0] = end;
+                    if (pos[0] < pattern.length() && "?*+{".indexOf(pattern.charAt(pos[0])) >= 0) {
+                        return null;
+                    }
+                }
+            }
+
+            List<String> product = new ArrayList<>(current.size() * unit.size());
+            for (String prefix : current) {
+                for (String suffix : unit) {
+                    product.add(prefix + suffix);
+                }
+            }
+            if (product.size() + alternatives.size() > MAX_ALTERNATIVES) {
+                return null;
+            }
+            current = product;
+        }
+
+        alternatives.addAll(current);
+        return alternatives;
+    }
+
+    /**
+     * @return end index (exclusive) of the atom starting at the given index or -1 if it is malformed
+     */
+    private static int findAtomEnd(String pattern, int start)
+    {
+        char c = pattern.charAt(start);
+        switch (c) {
+            case '\\':
+                return start + 2 <= pattern.length() ? start + 2 : -1;
+            case '[':
+                for (int i = start + 1; i < pattern.length(); ++i) {
+                    if (pattern.charAt(i) == '\\') {
+                        ++i;
+                    } else if (pattern.charAt(i) == ']') {
+                        return i + 1;
+                    }
+                }
+                return -1;
+            case '"':
+                int quote = pattern.indexOf('"', start + 1);
+                return quote >= 0 ? quote + 1 : -1;
+            case '<':
+                int close = pattern.indexOf('>', start + 1);
+                return close >= 0 ? close + 1 : -1;
+            case '?':
+            case '*':
+            case '+':
+            case '{':
+            case '}':
+            case ']':
+                return -1;
+            default:
+                return start + 1;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import de.webis.chatnoir2.webclient.util.Configured;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load-adaptive controller for expensive ranking features.
+ *
+ * Tracks an exponentially weighted moving average of the latency of search requests
+ * sent to the cluster. If the average exceeds a configured threshold, ranking features are
+ * disabled step by step along a fixed ladder of {@link Level}s. As soon as the average drops
+ * below a lower recovery threshold, features are enabled again one level at a time.
+ * Level changes are rate-limited to give the cluster time to react.
+ */
+public class DegradationController extends Configured
+{
+    /**
+     * Degradation levels in ascending order. Each level includes all previous ones.
+     */
+    public enum Level
+    {
+        /**
+         * All ranking features enabled.
+         */
+        NONE("none"),
+
+        /**
+         * Fuzzy matching disabled.
+         */
+        NO_FUZZY("no_fuzzy"),
+
+        /**
+         * Rescore window reduced.
+         */
+        REDUCED_RESCORE_WINDOW("reduced_rescore_window"),
+
+        /**
+         * Node limit (<code>terminate_after</code>) reduced.
+         */
+        REDUCED_NODE_LIMIT("reduced_node_limit"),
+
+        /**
+         * Proximity matching disabled.
+         */
+        NO_PROXIMITY("no_proximity");
+
+        private final String mName;
+
+        Level(String name)
+        {
+            mName = name;
+        }
+
+        /**
+         * @return external name of this level
+         */
+        public String getName()
+        {
+            return mName;
+        }
+
+        /**
+         * @param other level to compare to
+         * @return true if this level includes the degradations of <code>other</code>
+         */
+        public boolean includes(Level other)
+        {
+            return ordinal() >= other.ordinal();
+        }
+    }
+
+    private static DegradationController sInstance = null;
+
+    private volatile boolean mEnabled;
+    private volatile double mDegradeThreshold;
+    private volatile double mRecoverThreshold;
+    private volatile double mAlpha;
+    private volatile long mCooldown;
+    private volatile double mRescoreWindowFactor;
+    private volatile double mNodeLimitFactor;
+
+    private volatile Level mLevel = Level.NONE;
+    private double mLatencyAverage = 0.0;
+    private long mLastChange = 0;
+
+    private final AtomicLong mSamples = new AtomicLong();
+    private final AtomicLong mLevelChanges = new AtomicLong();
+
+    private DegradationController()
+    {
+        loadConfig(getConf());
+        addConfigListener(this::loadConfig);
+    }
+
+    /**
+     * Read thresholds from the configuration.
+     *
+     * @param conf configuration
+     */
+    private void loadConfig(ConfigLoader.Config conf)
+    {
+        mEnabled             = conf.getBoolean("degradation.enabled", false);
+        mDegradeThreshold    = conf.getLong("degradation.degrade_latency", 1500L);
+        mRecoverThreshold    = conf.getLong("degradation.recover_latency", 600L);
+        mAlpha               = Math.min(1.0, Math.max(0.01, conf.getDouble("degradation.smoothing", 0.1)));
+        mCooldown            = conf.getLong("degradation.cooldown", 10L) * 1000L;
+        mRescoreWindowFactor = conf.getDouble("degradation.rescore_window_factor", 0.5);
+        mNodeLimitFactor     = conf.getDouble("degradation.node_limit_factor", 0.5);
+        if (!mEnabled) {
+            mLevel = Level.NONE;
+        }
+    }
+
+    /**
+     * @return singleton controller instance
+     */
+    public static synchronized DegradationController getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new DegradationController();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return whether adaptive degradation is enabled
+     */
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+    /**
+     * @return currently active degradation level
+     */
+    public Level getLevel()
+    {
+        return mLevel;
+    }
+
+    /**
+     * Record the latency of a search request sent to the cluster and adjust
+     * the degradation level if necessary.
+     *
+     * @param latency request latency in milliseconds
+     */
+    public void recordLatency(long latency)
+    {
+        if (!mEnabled) {
+            return;
+        }
+
+        mSamples.incrementAndGet();
+        synchronized (this) {
+            mLatencyAverage = mSamples.get() == 1 ? latency : mAlpha * latency + (1.0 - mAlpha) * mLatencyAverage;
+
+            long now = System.currentTimeMillis();
+            if (now - mLastChange < mCooldown) {
+                return;
+            }
+
+            Level[] levels = Level.values();
+            Level newLevel = mLevel;
+            if (mLatencyAverage > mDegradeThreshold && mLevel.ordinal() < levels.length - 1) {
+                newLevel = levels[mLevel.ordinal() + 1];
+            } else if (mLatencyAverage < mRecoverThreshold && mLevel.ordinal() > 0) {
+                newLevel = levels[mLevel.ordinal() - 1];
+            }
+
+            if (newLevel != mLevel) {
+                getLogger().warn(String.format("Search latency average at %.0fms, changing degradation level from '%s' to '%s'",
+                        mLatencyAverage, mLevel.getName(), newLevel.getName()));
+                mLevel = newLevel;
+                mLastChange = now;
+                mLevelChanges.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Apply the current degradation to a configured rescore window size.
+     *
+     * @param level degradation level
+     * @param rescoreWindow configured rescore window size
+     * @return effective rescore window size
+     */
+    public int getRescoreWindow(Level level, int rescoreWindow)
+    {
+        if (level.includes(Level.REDUCED_RESCORE_WINDOW)) {
+            return Math.max(1, (int) (rescoreWindow * mRescoreWindowFactor));
+        }
+        return rescoreWindow;
+    }
+
+    /**
+     * Apply the current degradation to a configured node limit.
+     *
+     * @param level degradation level
+     * @param nodeLimit configured node limit
+     * @return effective node limit
+     */
+    public int getNodeLimit(Level level, int nodeLimit)
+    {
+        if (level.includes(Level.REDUCED_NODE_LIMIT)) {
+            return Math.max(1, (int) (nodeLimit * mNodeLimitFactor));
+        }
+        return nodeLimit;
+    }
+
+    /**
+     * Get controller statistics.
+     *
+     * @return map of statistics counters
+     */
+    public synchronized Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", mEnabled);
+        stats.put("level", mLevel.ordinal());
+        stats.put("level_name", mLevel.getName());
+        stats.put("latency_average", mLatencyAverage);
+        stats.put("samples", mSamples.get());
+        stats.put("level_changes", mLevelChanges.get());
+        return stats;
+    }
+}
@@ -28,6 +28,8 @@ package de.webis.chatnoir2.webclient.search;
 import de.webis.WebisUUID;
 import de.webis.chatnoir2.webclient.CacheServlet;
 import de.webis.chatnoir2.webclient.hdfs.MapFileReader;
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
+import de.webis.chatnoir2.webclient.util.ClientManager;
 import de.webis.chatnoir2.webclient.util.TextCleanser;
 import org.apache.http.client.utils.URIBuilder;
 import org.elasticsearch.action.get.GetResponse;
@@ -94,6 +96,20 @@ public class DocumentRetriever extends IndexRetrievalOperator
         return mCleanEncodingErrors;
     }
 
+    /**
+     * Retrieve a document from an Elasticsearch index through the index's circuit breaker.
+     *
+     * @param indexName index to retrieve the document from
+     * @param docID Elasticsearch document ID
+     * @return get response
+     * @throws CircuitBreaker.OpenException if the index is unavailable
+     */
+    private GetResponse getIndexDocument(final String indexName, final String docID)
+    {
+        return ClientManager.getIndexBreaker(indexName).call(() ->
+                getClient(ClientManager.Workload.LOOKUP).prepareGet(indexName, "warcrecord", docID).get());
+    }
+
     /**
      * Retrieve plain text rendering of a document from given Elasticsearch index.
      *
@@ -107,7 +123,7 @@ public class DocumentRetriever extends IndexRetrievalOperator
             return null;
         }
 
-        final GetResponse response = getClient().prepareGet(indexName, "warcrecord", docID).get();
+        final GetResponse response = getIndexDocument(indexName, docID);
         if (!response.isExists()) {
             return null;
         }
@@ -148,7 +164,7 @@ public class DocumentRetriever extends IndexRetrievalOperator
             return null;
         }
 
-        final GetResponse response = getClient().prepareGet(indexName, "warcrecord", docID).get();
+        final GetResponse response = getIndexDocument(indexName, docID);
         if (!response.isExists()) {
             return null;
         }
@@ -178,6 +194,8 @@ public class DocumentRetriever extends IndexRetrievalOperator
             String prefix = getConf().get("hdfs.mapfiles").get(indexName).getString("prefix");
             final UUID uuid = WebisUUID.generateUUID(prefix, warcID);
             return getByUUID(indexName, uuid);
+        } catch (CircuitBreaker.OpenException e) {
+            throw e;
         } catch (Exception e) {
             return null;
         }
@@ -0,0 +1,198 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.ClientManager;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provider for exporting complete result sets.
+ *
+ * Unlike {@link SimpleSearch}, which is limited to the first 10,000 hits, this provider
+ * walks through all hits of a query using the scroll API. Only one page of hits is held
+ * in memory at a time and the next page is requested only after all hits of the current
+ * page have been consumed, so a slow consumer slows down the export instead of letting
+ * hits pile up. Results are ranked by the pre-query only, since rescoring is not available
+ * for scrolled searches.
+ */
+public class ExportSearch extends SimpleSearch
+{
+    /**
+     * Consumer for exported hits.
+     */
+    @FunctionalInterface
+    public interface HitConsumer
+    {
+        /**
+         * @param hit exported hit
+         * @throws IOException if hit cannot be written
+         */
+        void accept(SearchHit hit) throws IOException;
+    }
+
+    private String[] mFields = new String[0];
+    private final List<SortBuilder<?>> mSort = new ArrayList<>();
+    private int mPageSize;
+    private TimeValue mKeepAlive;
+
+    public ExportSearch(final String[] indices)
+    {
+        super(indices);
+        mPageSize = getConf().getInteger("api.export.page_size", 1000);
+        mKeepAlive = TimeValue.parseTimeValue(getConf().getString("api.export.scroll_keepalive", "1m"),
+                "api.export.scroll_keepalive");
+    }
+
+    public ExportSearch()
+    {
+        this(null);
+    }
+
+    /**
+     * Set source fields to export. Field names may contain language placeholders.
+     *
+     * @param fields field names
+     */
+    public void setFields(String[] fields)
+    {
+        mFields = fields;
+    }
+
+    /**
+     * @return source fields to export
+     */
+    public String[] getFields()
+    {
+        return mFields;
+    }
+
+    /**
+     * Set sort order of exported hits.
+     * Valid sort specifications are <code>_score</code> (default), <code>_doc</code> (index order,
+     * fastest) or a field name with optional order suffix such as <code>page_rank:desc</code>.
+     *
+     * @param sortSpecs sort specifications in order of precedence
+     * @throws IllegalArgumentException if a sort order is invalid
+     */
+    public void setSort(String[] sortSpecs)
+    {
+        mSort.clear();
+        for (String spec : sortSpecs) {
+            spec = spec.trim();
+            if (spec.isEmpty()) {
+                continue;
+            }
+
+            String field = spec;
+            SortOrder order = null;
+            int pos = spec.lastIndexOf(':');
+            if (-1 != pos) {
+                field = spec.substring(0, pos);
+                order = SortOrder.fromString(spec.substring(pos + 1));
+            }
+
+            if (field.equals("_score") || field.equals("score")) {
+                mSort.add(SortBuilders.scoreSort().order(null != order ? order : SortOrder.DESC));
+            } else if (field.equals("_doc")) {
+                mSort.add(SortBuilders.fieldSort("_doc"));
+            } else {
+                mSort.add(SortBuilders.fieldSort(field).order(null != order ? order : SortOrder.ASC));
+            }
+        }
+    }
+
+    /**
+     * @param pageSize number of hits to retrieve per scroll page
+     */
+    public void setPageSize(int pageSize)
+    {
+        mPageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Export all hits for a query.
+     * This method blocks until all hits have been consumed, the limit has been reached
+     * or the consumer throws an exception.
+     *
+     * @param query search query
+     * @param limit maximum number of hits to export (0 or less for unlimited)
+     * @param consumer consumer for exported hits
+     * @return total number of hits matching the query
+     * @throws IOException if the consumer fails to process a hit
+     */
+    public long export(String query, long limit, HitConsumer consumer) throws IOException
+    {
+        final QueryBuilder preQuery = buildPreQuery(new StringBuffer(normalizeQuery(query)));
+
+        String[] fields = new String[mFields.length];
+        for (int i = 0; i < mFields.length; ++i) {
+            fields[i] = replaceLocalePlaceholders(mFields[i]);
+        }
+
+        final SearchRequestBuilder requestBuilder = getClient(ClientManager.Workload.BULK)
+                .prepareSearch(getEffectiveIndices())
+                .setQuery(preQuery)
+                .setSize(limit > 0 ? (int) Math.min(mPageSize, limit) : mPageSize)
+                .setScroll(mKeepAlive)
+                .setFetchSource(fields, null);
+        mSort.forEach(requestBuilder::addSort);
+
+        SearchResponse response = requestBuilder.get();
+        final long totalHits = response.getHits().getTotalHits();
+        long exported = 0;
+        try {
+            while (response.getHits().getHits().length > 0) {
+                for (SearchHit hit : response.getHits()) {
+                    consumer.accept(hit);
+                    if (limit > 0 && ++exported >= limit) {
+                        return totalHits;
+                    }
+                }
+
+                response = getClient(ClientManager.Workload.BULK).prepareSearchScroll(response.getScrollId())
+                        .setScroll(mKeepAlive)
+                        .get();
+            }
+        } finally {
+            if (null != response.getScrollId()) {
+                getClient(ClientManager.Workload.BULK).prepareClearScroll().addScrollId(response.getScrollId()).execute();
+            }
+        }
+
+        return totalHits;
+    }
+}
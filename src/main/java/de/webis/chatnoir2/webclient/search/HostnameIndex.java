@@ -0,0 +1,371 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.ClientManager;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.apache.lucene.util.IntsRefBuilder;
+import org.apache.lucene.util.automaton.CharacterRunAutomaton;
+import org.apache.lucene.util.automaton.LevenshteinAutomata;
+import org.apache.lucene.util.fst.Builder;
+import org.apache.lucene.util.fst.FST;
+import org.apache.lucene.util.fst.PositiveIntOutputs;
+import org.apache.lucene.util.fst.Util;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory dictionary of known host names with their document counts.
+ *
+ * The dictionary is compiled into a finite state transducer from the host names in the
+ * configured indices. It is rebuilt periodically in the background and replaced atomically,
+ * so lookups never block and never involve a request to the cluster.
+ * Fuzzy lookups intersect the transducer with a Levenshtein automaton, which allows
+ * fuzzy host name matching to be resolved locally into a cheap terms query.
+ */
+public class HostnameIndex extends Configured
+{
+    /**
+     * Index field containing the (unanalyzed) host names.
+     */
+    public static final String FIELD = "warc_target_hostname.raw";
+
+    private static HostnameIndex sInstance = null;
+
+    private volatile Dictionary mDictionary = null;
+    private volatile long mLastBuildTime = 0;
+    private volatile long mLastBuildDuration = 0;
+
+    private final ScheduledExecutorService mExecutor;
+
+    private HostnameIndex()
+    {
+        mExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatnoir2-hostname-index");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (getConf().getBoolean("hostname_index.enabled", true)) {
+            long interval = getConf().getLong("hostname_index.refresh_interval", 24L);
+            mExecutor.scheduleWithFixedDelay(this::rebuild, 0, interval, TimeUnit.HOURS);
+        }
+    }
+
+    /**
+     * @return singleton index instance
+     */
+    public static synchronized HostnameIndex getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new HostnameIndex();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Stop background rebuilds of the singleton instance (if it exists).
+     */
+    public static synchronized void shutdown()
+    {
+        if (null != sInstance) {
+            sInstance.mExecutor.shutdownNow();
+            sInstance = null;
+        }
+    }
+
+    /**
+     * @return current host name dictionary or null if it has not been built yet
+     */
+    public Dictionary getDictionary()
+    {
+        return mDictionary;
+    }
+
+    /**
+     * Get index statistics.
+     *
+     * @return map of statistics counters
+     */
+    public Map<String, Object> getStats()
+    {
+        Dictionary dictionary = mDictionary;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ready", null != dictionary);
+        stats.put("size", null != dictionary ? dictionary.size() : 0);
+        stats.put("size_in_bytes", null != dictionary ? dictionary.ramBytesUsed() : 0);
+        stats.put("last_build", mLastBuildTime);
+        stats.put("last_build_time_in_millis", mLastBuildDuration);
+        return stats;
+    }
+
+    /**
+     * Rebuild the dictionary from the host names in the configured indices.
+     * Host names are retrieved in partitions to limit the size of each aggregation.
+     */
+    private void rebuild()
+    {
+        final long startTime = System.currentTimeMillis();
+        final int maxHosts = getConf().getInteger("hostname_index.max_hosts", 500000);
+        final int partitions = Math.max(1, getConf().getInteger("hostname_index.partitions", 10));
+
+        SortedMap<String, Long> hosts = new TreeMap<>();
+        try {
+            for (int p = 0; p < partitions; ++p) {
+                SearchResponse response = getClient(ClientManager.Workload.BULK)
+                        .prepareSearch(getConf().getStringArray("cluster.indices"))
+                        .setSize(0)
+                        .addAggregation(AggregationBuilders.terms("hosts")
+                                .field(FIELD)
+                                .size(maxHosts / partitions)
+                                .includeExclude(new IncludeExclude(p, partitions)))
+                        .get();
+
+                Terms terms = response.getAggregations().get("hosts");
+                for (Terms.Bucket bucket : terms.getBuckets()) {
+                    hosts.merge(bucket.getKeyAsString(), bucket.getDocCount(), Long::sum);
+                }
+            }
+
+            mDictionary = new Dictionary(hosts);
+            mLastBuildTime = System.currentTimeMillis();
+            mLastBuildDuration = mLastBuildTime - startTime;
+            getLogger().info(String.format("Built host name index with %d hosts (%d bytes) in %dms",
+                    mDictionary.size(), mDictionary.ramBytesUsed(), System.currentTimeMillis() - startTime));
+        } catch (Exception e) {
+            getLogger().warn("Failed to build host name index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compact host name dictionary backed by a finite state transducer.
+     */
+    public static class Dictionary
+    {
+        private final FST<Long> mFst;
+        private final int mSize;
+
+        /**
+         * @param hosts sorted map of host names and their document counts
+         * @throws IOException if transducer cannot be built
+         */
+        public Dictionary(SortedMap<String, Long> hosts) throws IOException
+        {
+            Builder<Long> builder = new Builder<>(FST.INPUT_TYPE.BYTE4, PositiveIntOutputs.getSingleton());
+            IntsRefBuilder scratch = new IntsRefBuilder();
+            int size = 0;
+            for (Map.Entry<String, Long> e : hosts.entrySet()) {
+                // skip host names whose UTF-16 order differs from their code point order
+                String host = e.getKey();
+                if (host.isEmpty() || host.length() != host.codePointCount(0, host.length())) {
+                    continue;
+                }
+                builder.add(Util.toUTF32(host, scratch), Math.max(0L, e.getValue()));
+                ++size;
+            }
+            mFst = builder.finish();
+            mSize = size;
+        }
+
+        /**
+         * @return number of host names
+         */
+        public int size()
+        {
+            return mSize;
+        }
+
+        /**
+         * @return approximate memory used by the dictionary in bytes
+         */
+        public long ramBytesUsed()
+        {
+            return null != mFst ? mFst.ramBytesUsed() : 0;
+        }
+
+        /**
+         * @param host host name
+         * @return number of documents of the given host or -1 if the host is unknown
+         */
+        public long getDocCount(String host)
+        {
+            if (null == mFst || host.isEmpty()) {
+                return -1;
+            }
+            try {
+                Long count = Util.get(mFst, Util.toUTF32(host, new IntsRefBuilder()));
+                return null != count ? count : -1;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * Resolve a query string to a known host name. The query string is accepted
+         * with or without leading <tt>www.</tt>.
+         *
+         * @param query query string
+         * @return known host name or null if the query is not a known host name
+         */
+        public String resolve(String query)
+        {
+            String host = query.trim().toLowerCase();
+            if (getDocCount(host) >= 0) {
+                return host;
+            }
+            if (!host.startsWith("www.") && getDocCount("www." + host) >= 0) {
+                return "www." + host;
+            }
+            return null;
+        }
+
+        /**
+         * Find host names within a given edit distance of a term.
+         * Candidates are ordered by edit distance and then by document count.
+         *
+         * @param term term to match
+         * @param maxEdits maximum edit distance (at most 2)
+         * @param maxCandidates maximum number of candidates to return
+         * @return matching host names
+         */
+        public List<Candidate> findFuzzy(String term, int maxEdits, int maxCandidates)
+        {
+            if (null == mFst || term.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            maxEdits = Math.max(0, Math.min(maxEdits, LevenshteinAutomata.MAXIMUM_SUPPORTED_DISTANCE));
+            LevenshteinAutomata levenshtein = new LevenshteinAutomata(term, false);
+            CharacterRunAutomaton[] automata = new CharacterRunAutomaton[maxEdits + 1];
+            for (int d = 0; d <= maxEdits; ++d) {
+                automata[d] = new CharacterRunAutomaton(levenshtein.toAutomaton(d));
+            }
+
+            List<Candidate> candidates = new ArrayList<>();
+            try {
+                FST.Arc<Long> root = mFst.getFirstArc(new FST.Arc<>());
+                collect(root, automata, 0, 0L, new StringBuilder(), mFst.getBytesReader(), candidates);
+            } catch (IOException e) {
+                return Collections.emptyList();
+            }
+
+            candidates.sort(Comparator.comparingInt(Candidate::getDistance)
+                    .thenComparing(Comparator.comparingLong(Candidate::getDocCount).reversed()));
+            return candidates.size() > maxCandidates ? candidates.subList(0, maxCandidates) : candidates;
+        }
+
+        /**
+         * Recursively collect all host names accepted by the Levenshtein automaton
+         * below the target node of the given arc.
+         */
+        private void collect(FST.Arc<Long> parent, CharacterRunAutomaton[] automata, int state, long output,
+                             StringBuilder prefix, FST.BytesReader reader, List<Candidate> candidates) throws IOException
+        {
+            if (!FST.targetHasArcs(parent)) {
+                return;
+            }
+
+            CharacterRunAutomaton automaton = automata[automata.length - 1];
+            FST.Arc<Long> arc = mFst.readFirstTargetArc(parent, new FST.Arc<>(), reader);
+            while (true) {
+                if (arc.label != FST.END_LABEL) {
+                    int nextState = automaton.step(state, arc.label);
+                    if (nextState != -1) {
+                        int prefixLength = prefix.length();
+                        long nextOutput = output + arc.output;
+                        prefix.appendCodePoint(arc.label);
+
+                        if (arc.isFinal() && automaton.isAccept(nextState)) {
+                            String host = prefix.toString();
+                            int distance = 0;
+                            while (!automata[distance].run(host)) {
+                                ++distance;
+                            }
+                            candidates.add(new Candidate(host, distance, nextOutput + arc.nextFinalOutput));
+                        }
+                        collect(arc, automata, nextState, nextOutput, prefix, reader, candidates);
+                        prefix.setLength(prefixLength);
+                    }
+                }
+
+                if (arc.isLast()) {
+                    break;
+                }
+                mFst.readNextArc(arc, reader);
+            }
+        }
+    }
+
+    /**
+     * Fuzzy host name match.
+     */
+    public static class Candidate
+    {
+        private final String mHost;
+        private final int mDistance;
+        private final long mDocCount;
+
+        Candidate(String host, int distance, long docCount)
+        {
+            mHost = host;
+            mDistance = distance;
+            mDocCount = docCount;
+        }
+
+        /**
+         * @return matched host name
+         */
+        public String getHost()
+        {
+            return mHost;
+        }
+
+        /**
+         * @return edit distance to the query term
+         */
+        public int getDistance()
+        {
+            return mDistance;
+        }
+
+        /**
+         * @return number of documents of this host
+         */
+        public long getDocCount()
+        {
+            return mDocCount;
+        }
+    }
+}
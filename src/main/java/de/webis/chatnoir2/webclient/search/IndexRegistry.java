@@ -0,0 +1,264 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import de.webis.chatnoir2.webclient.util.ClientManager;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.cluster.metadata.AliasMetaData;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of allowed indices, their aliases and display names.
+ *
+ * Index aliases are read from the configuration (<code>cluster.index_aliases</code>) and
+ * extended by the aliases of allowed indices defined in the cluster, so that results from
+ * concrete indices behind an alias are attributed correctly. Aliases are refreshed periodically
+ * in the background and all lookups go to an immutable {@link Snapshot}, which is replaced atomically.
+ */
+public class IndexRegistry extends Configured
+{
+    private static IndexRegistry sInstance = null;
+
+    private volatile Snapshot mSnapshot;
+
+    private final ScheduledExecutorService mExecutor;
+
+    private final ConfigListener mConfigListener = new ConfigListener()
+    {
+        @Override
+        public void validateConfig(ConfigLoader.Config conf)
+        {
+            if (new Snapshot(conf, Collections.emptyMap()).getAllowedIndices().isEmpty()) {
+                throw new IllegalArgumentException("No allowed indices configured");
+            }
+        }
+
+        @Override
+        public void configReloaded(ConfigLoader.Config conf)
+        {
+            mSnapshot = new Snapshot(conf, mSnapshot.mClusterAliases);
+            mExecutor.execute(IndexRegistry.this::refresh);
+        }
+    };
+
+    private IndexRegistry()
+    {
+        mSnapshot = new Snapshot(getConf(), Collections.emptyMap());
+        addConfigListener(mConfigListener);
+
+        mExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatnoir2-index-registry");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = getConf().getLong("cluster.alias_refresh_interval", 300L);
+        if (interval > 0) {
+            mExecutor.scheduleWithFixedDelay(this::refresh, 0, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return singleton registry instance
+     */
+    public static synchronized IndexRegistry getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new IndexRegistry();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Stop background refresh of the singleton instance (if it exists).
+     */
+    public static synchronized void shutdown()
+    {
+        if (null != sInstance) {
+            sInstance.mExecutor.shutdownNow();
+            removeConfigListener(sInstance.mConfigListener);
+            sInstance = null;
+        }
+    }
+
+    /**
+     * @return current registry snapshot
+     */
+    public Snapshot getSnapshot()
+    {
+        return mSnapshot;
+    }
+
+    /**
+     * Rebuild the registry from the configuration and the aliases defined in the cluster.
+     * If the cluster cannot be reached, previously discovered aliases are kept.
+     */
+    public void refresh()
+    {
+        Snapshot current = mSnapshot;
+        Map<String, String> clusterAliases = current.mClusterAliases;
+        try {
+            List<String> allowed = current.getAllowedIndices();
+            GetAliasesResponse response = getClient(ClientManager.Workload.BULK).admin().indices()
+                    .prepareGetAliases(allowed.toArray(new String[allowed.size()]))
+                    .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                    .get();
+
+            clusterAliases = new HashMap<>();
+            Iterator<String> it = response.getAliases().keysIt();
+            while (it.hasNext()) {
+                String index = it.next();
+                for (AliasMetaData alias : response.getAliases().get(index)) {
+                    clusterAliases.putIfAbsent(index, alias.alias());
+                }
+            }
+            if (!clusterAliases.equals(current.mClusterAliases)) {
+                getLogger().info(String.format("Discovered index aliases: %s", clusterAliases));
+            }
+        } catch (Exception e) {
+            getLogger().warn(String.format("Failed to retrieve index aliases: %s", e.getMessage()));
+        }
+
+        mSnapshot = new Snapshot(getConf(), clusterAliases);
+    }
+
+    /**
+     * Immutable registry snapshot.
+     */
+    public static final class Snapshot
+    {
+        private final List<String> mAllowedIndices;
+        private final List<String> mDefaultIndices;
+
+        /**
+         * Allowed indices including the indices behind allowed aliases and aliases of allowed indices.
+         */
+        private final Set<String> mAllowedNames = new HashSet<>();
+
+        /**
+         * Aliases by concrete index name.
+         */
+        private final Map<String, String> mAliases = new HashMap<>();
+
+        /**
+         * Display names by index or alias name.
+         */
+        private final Map<String, String> mDisplayNames = new HashMap<>();
+
+        /**
+         * Aliases discovered in the cluster by concrete index name.
+         */
+        private final Map<String, String> mClusterAliases;
+
+        Snapshot(ConfigLoader.Config conf, Map<String, String> clusterAliases)
+        {
+            mAllowedIndices = Collections.unmodifiableList(Arrays.asList(conf.getStringArray("cluster.indices")));
+            List<String> defaultIndices = Arrays.asList(conf.getStringArray("cluster.default_indices"));
+            mDefaultIndices = defaultIndices.isEmpty() ? mAllowedIndices : Collections.unmodifiableList(defaultIndices);
+            mClusterAliases = Collections.unmodifiableMap(clusterAliases);
+
+            mAllowedNames.addAll(mAllowedIndices);
+            for (ConfigLoader.Config c : conf.getArray("cluster.index_aliases")) {
+                String index = c.getString("index", "");
+                String alias = c.getString("alias", "");
+                mAliases.putIfAbsent(index, alias);
+                if (c.contains("display_name")) {
+                    mDisplayNames.putIfAbsent(index, c.getString("display_name"));
+                    mDisplayNames.putIfAbsent(alias, c.getString("display_name"));
+                }
+                if (mAllowedIndices.contains(alias)) {
+                    mAllowedNames.add(index);
+                }
+                if (mAllowedIndices.contains(index)) {
+                    mAllowedNames.add(alias);
+                }
+            }
+
+            // configured aliases take precedence
+            for (Map.Entry<String, String> e : mClusterAliases.entrySet()) {
+                if (mAliases.containsKey(e.getKey()) || !mAllowedIndices.contains(e.getValue())) {
+                    continue;
+                }
+                mAliases.put(e.getKey(), e.getValue());
+                mAllowedNames.add(e.getKey());
+                if (mDisplayNames.containsKey(e.getValue())) {
+                    mDisplayNames.put(e.getKey(), mDisplayNames.get(e.getValue()));
+                }
+            }
+        }
+
+        /**
+         * @return indices the user is allowed to search
+         */
+        public List<String> getAllowedIndices()
+        {
+            return mAllowedIndices;
+        }
+
+        /**
+         * @return indices to search if no (allowed) indices are given
+         */
+        public List<String> getDefaultIndices()
+        {
+            return mDefaultIndices;
+        }
+
+        /**
+         * Check whether a given index is an allowed index or an alias of an allowed index.
+         *
+         * @param indexName index name to check (will not be trimmed)
+         * @return whether index is allowed
+         */
+        public boolean isAllowed(String indexName)
+        {
+            return mAllowedNames.contains(indexName);
+        }
+
+        /**
+         * @param index concrete index name
+         * @return alias of the index or null if it has none
+         */
+        public String getAlias(String index)
+        {
+            return mAliases.get(index);
+        }
+
+        /**
+         * @param name index or alias name
+         * @return display name or null if none is configured
+         */
+        public String getDisplayName(String name)
+        {
+            return mDisplayNames.get(name);
+        }
+    }
+}
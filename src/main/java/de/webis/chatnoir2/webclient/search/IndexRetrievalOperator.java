@@ -25,11 +25,10 @@
 
 package de.webis.chatnoir2.webclient.search;
 
-import de.webis.chatnoir2.webclient.resources.ConfigLoader;
 import de.webis.chatnoir2.webclient.util.Configured;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.List;
 
 /**
  * Abstract base class for retrieval operations on Elasticsearch indices.
@@ -37,19 +36,14 @@ import java.util.Arrays;
 public abstract class IndexRetrievalOperator extends Configured
 {
     /**
-     * List of allowed indices.
+     * Snapshot of allowed indices and aliases.
      */
-    private ArrayList<String> mAllowedIndices;
-
-    /**
-     * List of default indices.
-     */
-    private ArrayList<String> mDefaultIndices;
+    private final IndexRegistry.Snapshot mIndices;
 
     /**
      * Effective list of indices to search.
      */
-    private ArrayList<String> mActiveIndices = null;
+    private List<String> mActiveIndices = null;
 
     /**
      * @param indices Array of index names to search (null means use default from config).
@@ -57,11 +51,7 @@ public abstract class IndexRetrievalOperator extends Configured
      */
     public IndexRetrievalOperator(String[] indices)
     {
-        mAllowedIndices = new ArrayList<>(Arrays.asList(getConf().getStringArray("cluster.indices")));
-        mDefaultIndices = new ArrayList<>(Arrays.asList(getConf().getStringArray("cluster.default_indices")));
-        if (mDefaultIndices.isEmpty()) {
-            mDefaultIndices.addAll(mAllowedIndices);
-        }
+        mIndices = IndexRegistry.getInstance().getSnapshot();
         setActiveIndices(indices);
     }
 
@@ -81,26 +71,19 @@ public abstract class IndexRetrievalOperator extends Configured
      * @param candidateIndices candidate indices to choose from
      */
     public void setActiveIndices(String[] candidateIndices) {
-        if (null == mActiveIndices) {
-            mActiveIndices = new ArrayList<>();
-        }
-
-        mActiveIndices.clear();
-
         if (null == candidateIndices) {
-            mActiveIndices.addAll(mDefaultIndices);
+            mActiveIndices = mIndices.getDefaultIndices();
             return;
         }
 
+        List<String> activeIndices = new ArrayList<>(candidateIndices.length);
         for (String index : candidateIndices) {
             if (isIndexAllowed(index)) {
-                mActiveIndices.add(index.trim());
+                activeIndices.add(index.trim());
             }
         }
 
-        if (mActiveIndices.isEmpty()) {
-            mActiveIndices.addAll(mDefaultIndices);
-        }
+        mActiveIndices = activeIndices.isEmpty() ? mIndices.getDefaultIndices() : activeIndices;
     }
 
     /**
@@ -110,27 +93,7 @@ public abstract class IndexRetrievalOperator extends Configured
      * @return whether index is allowed by global configuration
      */
     public boolean isIndexAllowed(String indexName) {
-        if (null == indexName) {
-            return false;
-        }
-
-        indexName = indexName.trim();
-
-        if (mAllowedIndices.contains(indexName)) {
-            return true;
-        }
-
-        ConfigLoader.Config[] aliases = getConf().get("cluster").getArray("index_aliases");
-        for (ConfigLoader.Config c: aliases) {
-            String index = c.getString("index");
-            String alias = c.getString("alias");
-            if ((index.equals(indexName) && mAllowedIndices.contains(alias)) ||
-                    (alias.equals(indexName) && mAllowedIndices.contains(index))) {
-                return true;
-            }
-        }
-
-        return false;
+        return null != indexName && mIndices.isAllowed(indexName.trim());
     }
 
     /**
@@ -150,6 +113,14 @@ public abstract class IndexRetrievalOperator extends Configured
      */
     public String[] getAllowedIndices()
     {
-        return mAllowedIndices.toArray(new String[mAllowedIndices.size()]);
+        return mIndices.getAllowedIndices().toArray(new String[mIndices.getAllowedIndices().size()]);
+    }
+
+    /**
+     * @return snapshot of allowed indices, aliases and display names used by this operator
+     */
+    public IndexRegistry.Snapshot getIndexSnapshot()
+    {
+        return mIndices;
     }
 }
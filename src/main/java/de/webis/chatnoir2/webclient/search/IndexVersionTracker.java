@@ -0,0 +1,178 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.ClientManager;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.action.admin.indices.stats.IndexStats;
+import org.elasticsearch.action.admin.indices.stats.IndicesStatsResponse;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.metadata.MetaData;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of version tokens for Elasticsearch indices (or aliases).
+ * A version token changes whenever the index behind a name is replaced (new index UUID)
+ * or its contents change (document or indexing counts move).
+ *
+ * Tokens are refreshed periodically in the background, so looking up a token never
+ * involves a request to the cluster.
+ */
+public class IndexVersionTracker extends Configured
+{
+    private static IndexVersionTracker sInstance = null;
+
+    /**
+     * Current version tokens by index or alias name.
+     */
+    private final ConcurrentHashMap<String, String> mVersions = new ConcurrentHashMap<>();
+
+    /**
+     * Set of tracked index names.
+     */
+    private final Set<String> mTrackedIndices = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService mExecutor;
+
+    private IndexVersionTracker()
+    {
+        mTrackedIndices.addAll(Arrays.asList(getConf().getStringArray("cluster.indices")));
+
+        mExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatnoir2-index-version-tracker");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = getConf().getLong("result_cache.index_check_interval", 60L);
+        mExecutor.scheduleWithFixedDelay(this::refresh, 0, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return singleton tracker instance
+     */
+    public static synchronized IndexVersionTracker getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new IndexVersionTracker();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Stop background refresh of the singleton instance (if it exists).
+     */
+    public static synchronized void shutdown()
+    {
+        if (null != sInstance) {
+            sInstance.mExecutor.shutdownNow();
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Get combined version token for a set of indices.
+     * Indices which are not tracked yet will be tracked from now on.
+     *
+     * @param indices index or alias names
+     * @return version token
+     */
+    public String getVersion(String[] indices)
+    {
+        StringBuilder version = new StringBuilder();
+        for (String index : indices) {
+            if (mTrackedIndices.add(index)) {
+                mExecutor.execute(() -> refreshIndex(index));
+            }
+            version.append(index).append('@').append(mVersions.getOrDefault(index, "")).append(';');
+        }
+        return version.toString();
+    }
+
+    /**
+     * Refresh version tokens of all tracked indices.
+     */
+    private void refresh()
+    {
+        for (String index : mTrackedIndices) {
+            refreshIndex(index);
+        }
+    }
+
+    /**
+     * Refresh version token of a single index or alias.
+     *
+     * @param index index or alias name
+     */
+    private void refreshIndex(String index)
+    {
+        try {
+            MetaData metaData = getClient(ClientManager.Workload.BULK).admin().cluster().prepareState()
+                    .clear()
+                    .setMetaData(true)
+                    .setIndices(index)
+                    .get().getState().getMetaData();
+            IndicesStatsResponse stats = getClient(ClientManager.Workload.BULK).admin().indices().prepareStats(index)
+                    .clear()
+                    .setDocs(true)
+                    .setIndexing(true)
+                    .get();
+
+            // sort by concrete index name for stable tokens
+            Map<String, String> tokens = new TreeMap<>();
+            for (IndexMetaData indexMetaData : metaData) {
+                tokens.put(indexMetaData.getIndex().getName(), indexMetaData.getIndexUUID());
+            }
+            for (Map.Entry<String, IndexStats> e : stats.getIndices().entrySet()) {
+                CommonStats primaries = e.getValue().getPrimaries();
+                String token = tokens.getOrDefault(e.getKey(), "");
+                if (null != primaries.getDocs()) {
+                    token += "/" + primaries.getDocs().getCount() + "/" + primaries.getDocs().getDeleted();
+                }
+                if (null != primaries.getIndexing()) {
+                    token += "/" + primaries.getIndexing().getTotal().getIndexCount();
+                }
+                tokens.put(e.getKey(), token);
+            }
+
+            String version = tokens.toString();
+            String oldVersion = mVersions.put(index, version);
+            if (null != oldVersion && !oldVersion.equals(version)) {
+                getLogger().info(String.format("Index '%s' changed, cached results will be discarded", index));
+            }
+        } catch (Exception e) {
+            getLogger().warn(String.format("Failed to retrieve version of index '%s': %s", index, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Read-only view on selected fields of a search hit's source.
+ *
+ * The source bytes are parsed on first access in a single streaming pass, which
+ * picks up only the requested fields and skips everything else without building
+ * a map of the full document source.
+ */
+public class LazySource
+{
+    private final BytesReference mSourceRef;
+    private final Set<String> mFields;
+    private Map<String, Object> mValues = null;
+
+    /**
+     * @param sourceRef raw source bytes (may be null)
+     * @param fields names of fields to read (dotted paths)
+     */
+    public LazySource(BytesReference sourceRef, Collection<String> fields)
+    {
+        mSourceRef = sourceRef;
+        mFields = new HashSet<>(fields);
+    }
+
+    /**
+     * Get value of a source field.
+     *
+     * @param field field name
+     * @return field value or null if field does not exist or was not requested
+     */
+    public Object get(String field)
+    {
+        if (null == mValues) {
+            mValues = parse();
+        }
+        return mValues.get(field);
+    }
+
+    /**
+     * @param field field name
+     * @return field value as String or null
+     */
+    public String getString(String field)
+    {
+        Object value = get(field);
+        return null != value ? value.toString() : null;
+    }
+
+    /**
+     * @param field field name
+     * @return field value as Double or null if value is not numeric
+     */
+    public Double getDouble(String field)
+    {
+        Object value = get(field);
+        return value instanceof Number ? ((Number) value).doubleValue() : null;
+    }
+
+    /**
+     * @param field field name
+     * @return field value as Integer or null if value is not numeric
+     */
+    public Integer getInteger(String field)
+    {
+        Object value = get(field);
+        return value instanceof Number ? ((Number) value).intValue() : null;
+    }
+
+    /**
+     * Parse requested fields from the source bytes.
+     *
+     * @return map of parsed field values
+     */
+    private Map<String, Object> parse()
+    {
+        Map<String, Object> values = new HashMap<>();
+        if (null == mSourceRef || mFields.isEmpty()) {
+            return values;
+        }
+
+        try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY, mSourceRef,
+                XContentFactory.xContentType(mSourceRef))) {
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                parseObject(parser, "", values);
+            }
+        } catch (IOException e) {
+            throw new ElasticsearchParseException("Failed to parse document source", e);
+        }
+        return values;
+    }
+
+    /**
+     * Parse requested fields from the current object.
+     *
+     * @param parser parser positioned at the start of an object
+     * @param prefix path prefix of the current object
+     * @param values map to which to add parsed values
+     */
+    private void parseObject(XContentParser parser, String prefix, Map<String, Object> values) throws IOException
+    {
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+            final String path = prefix + parser.currentName();
+            token = parser.nextToken();
+
+            if (token == XContentParser.Token.START_OBJECT && isPathPrefix(path)) {
+                parseObject(parser, path + ".", values);
+            } else if (token.isValue() && mFields.contains(path)) {
+                values.put(path, parseValue(parser, token));
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Parse a scalar value.
+     *
+     * @param parser parser positioned at a value token
+     * @param token current token
+     * @return parsed value
+     */
+    private Object parseValue(XContentParser parser, XContentParser.Token token) throws IOException
+    {
+        switch (token) {
+            case VALUE_NUMBER:
+                return parser.numberValue();
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            default:
+                return parser.text();
+        }
+    }
+
+    /**
+     * @param path object path
+     * @return true if any requested field is located below the given path
+     */
+    private boolean isPathPrefix(String path)
+    {
+        for (String field : mFields) {
+            if (field.startsWith(path + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
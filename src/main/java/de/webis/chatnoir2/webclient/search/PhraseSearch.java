@@ -25,8 +25,6 @@
 
 package de.webis.chatnoir2.webclient.search;
 
-import de.webis.chatnoir2.webclient.resources.ConfigLoader;
-import de.webis.chatnoir2.webclient.resources.ConfigLoader.Config;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.search.collapse.CollapseBuilder;
@@ -46,21 +44,19 @@ public class PhraseSearch extends SimpleSearch
      */
     private int mSlop = 0;
 
-    /**
-     * Config object shortcut to phrase search config.
-     */
-    private final Config mPhraseConfig;
+    public PhraseSearch(final String[] indices)
+    {
+        super(indices);
+    }
 
     /**
-     * Config object shortcut to simple search config.
+     * Get the compiled phrase search profile for the current search language.
+     *
+     * @return phrase search profile
      */
-    private final Config mSimpleConfig;
-
-    public PhraseSearch(final String[] indices)
+    protected SearchProfile getPhraseSearchProfile()
     {
-        super(indices);
-        mPhraseConfig = getConf().get("search.phrase_search");
-        mSimpleConfig = getConf().get("search.default_simple");
+        return SearchProfile.get(SearchProfile.PHRASE_SEARCH, getSearchLanguage());
     }
 
     @Override
@@ -73,14 +69,23 @@ public class PhraseSearch extends SimpleSearch
     @Override
     protected int getNodeLimit()
     {
-        return mPhraseConfig.getInteger("node_limit", 10000);
+        return getPhraseSearchProfile().getNodeLimit();
+    }
+
+    @Override
+    protected long getSearchTimeout()
+    {
+        return narrowTimeout(getPhraseSearchProfile().getTimeout(), getTimeout());
     }
 
     @Override
     protected HighlightBuilder buildFieldHighlighter()
     {
         return new HighlightBuilder()
-                .field("body_lang." + getSearchLanguage(), getSnippetLength(), 1)
+                .field(new HighlightBuilder.Field("body_lang." + getSearchLanguage())
+                        .fragmentSize(getSnippetLength())
+                        .numOfFragments(1)
+                        .noMatchSize(getSnippetLength()))
                 .encoder("html");
     }
 
@@ -89,12 +94,11 @@ public class PhraseSearch extends SimpleSearch
     {
         BoolQueryBuilder boolQuery = QueryBuilders.boolQuery();
 
-        Config[] fields = mPhraseConfig.getArray("fields");
         List<String> phraseFields = new ArrayList<>();
-        for (Config c: fields) {
-            String fieldName = replaceLocalePlaceholders(c.getString("name"));
+        for (SearchProfile.Field f: getPhraseSearchProfile().getPhraseFields()) {
+            String fieldName = f.getName();
             MatchPhraseQueryBuilder matchPhraseQuery = QueryBuilders.matchPhraseQuery(fieldName, queryString.toString());
-            matchPhraseQuery.boost(c.getFloat("boost", 1.0f));
+            matchPhraseQuery.boost(f.getBoost());
 
             boolQuery.must(matchPhraseQuery);
             phraseFields.add(fieldName);
@@ -102,7 +106,11 @@ public class PhraseSearch extends SimpleSearch
 
         addSimpleSearchFields(boolQuery, queryString, phraseFields);
 
-        addFilters(boolQuery);
+        BoolQueryBuilder staticFilter = QueryBuilders.boolQuery();
+        addFilters(staticFilter);
+        if (staticFilter.hasClauses()) {
+            boolQuery.filter(staticFilter);
+        }
         addBoosts(boolQuery, true);
 
         return boolQuery;
@@ -124,16 +132,15 @@ public class PhraseSearch extends SimpleSearch
      */
     protected void addSimpleSearchFields(BoolQueryBuilder query, StringBuffer queryString, List<String> blackList)
     {
-        ConfigLoader.Config[] simpleSearchFields = mSimpleConfig.getArray("main_fields");
-        for (ConfigLoader.Config field : simpleSearchFields) {
-            String fieldName = replaceLocalePlaceholders(field.getString("name"));
+        for (SearchProfile.Field field : getSearchProfile().getMainFields()) {
+            String fieldName = field.getName();
             if (blackList.contains(fieldName)) {
                 // we already scored by this field
                 continue;
             }
 
             MatchQueryBuilder matchQuery = QueryBuilders.matchQuery(fieldName, queryString.toString());
-            matchQuery.boost(field.getFloat("boost", 1.0f));
+            matchQuery.boost(field.getBoost());
             query.should(matchQuery);
         }
     }
@@ -151,7 +158,7 @@ public class PhraseSearch extends SimpleSearch
      */
     public void setSlop(int slop)
     {
-        slop = Math.min(Math.max(0, slop), mPhraseConfig.getInteger("max_slop", 2));
+        slop = Math.min(Math.max(0, slop), getPhraseSearchProfile().getMaxSlop());
         mSlop = slop;
     }
 }
@@ -0,0 +1,407 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Query autocompletion from the query log.
+ *
+ * Queries from the most recent query log files are counted and compiled into a weighted
+ * finite state transducer, which returns the most frequent logged queries for a prefix.
+ * The transducer is rebuilt periodically in the background and replaced atomically,
+ * so lookups never block and never involve a request to the cluster.
+ * To protect the privacy of users, queries are only suggested once they have been submitted
+ * by a configured minimum number of distinct users (identified by user name or IP address).
+ */
+public class QuerySuggester extends Configured
+{
+    /**
+     * Marker preceding the query string in query log lines.
+     */
+    private static final String QUERY_MARKER = "QUERY: ";
+
+    /**
+     * Marker preceding the user name in query log lines.
+     */
+    private static final String USER_MARKER = "USER: ";
+
+    /**
+     * Marker preceding the IP address in query log lines.
+     */
+    private static final String IP_MARKER = "IP: ";
+
+    /**
+     * Marker preceding the user agent in query log lines.
+     */
+    private static final String USER_AGENT_MARKER = "USER-AGENT: ";
+
+    private static QuerySuggester sInstance = null;
+
+    private volatile WFSTCompletionLookup mLookup = null;
+    private volatile long mSize = 0;
+    private volatile long mLastBuildTime = 0;
+    private volatile long mLastBuildDuration = 0;
+
+    private final ScheduledExecutorService mExecutor;
+    private final boolean mEnabled;
+
+    private QuerySuggester()
+    {
+        mExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatnoir2-query-suggester");
+            t.setDaemon(true);
+            return t;
+        });
+
+        mEnabled = getConf().getBoolean("suggest.enabled", true);
+        if (mEnabled) {
+            long interval = getConf().getLong("suggest.refresh_interval", 60L);
+            mExecutor.scheduleWithFixedDelay(this::rebuild, 0, interval, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * @return singleton suggester instance
+     */
+    public static synchronized QuerySuggester getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new QuerySuggester();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Stop background rebuilds of the singleton instance (if it exists).
+     */
+    public static synchronized void shutdown()
+    {
+        if (null != sInstance) {
+            sInstance.mExecutor.shutdownNow();
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Normalize a query string for counting and lookup.
+     *
+     * @param query query string
+     * @return lower-cased query string with collapsed white space
+     */
+    public static String normalize(String query)
+    {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase();
+    }
+
+    /**
+     * Get the most frequent logged queries starting with a given prefix.
+     *
+     * @param prefix query prefix
+     * @param size maximum number of suggestions
+     * @return suggested queries ordered by frequency (empty if no suggestions are available)
+     */
+    public List<String> suggest(String prefix, int size)
+    {
+        WFSTCompletionLookup lookup = mLookup;
+        String normalizedPrefix = normalize(prefix);
+        if (null == lookup || normalizedPrefix.isEmpty() || size < 1) {
+            return Collections.emptyList();
+        }
+
+        try {
+            List<String> suggestions = new ArrayList<>(size);
+            for (Lookup.LookupResult result : lookup.lookup(normalizedPrefix, false, size)) {
+                suggestions.add(result.key.toString());
+            }
+            return suggestions;
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return whether suggestions have been built from the query log
+     */
+    public boolean isReady()
+    {
+        return null != mLookup;
+    }
+
+    /**
+     * Check whether a query has been logged frequently enough to be suggested itself.
+     * Such queries are unlikely to be misspelled.
+     *
+     * @param query query string
+     * @return true if query is a known frequent query
+     */
+    public boolean isFrequentQuery(String query)
+    {
+        WFSTCompletionLookup lookup = mLookup;
+        return null != lookup && null != lookup.get(normalize(query));
+    }
+
+    /**
+     * Get suggester statistics.
+     *
+     * @return map of statistics counters
+     */
+    public Map<String, Object> getStats()
+    {
+        WFSTCompletionLookup lookup = mLookup;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", mEnabled);
+        stats.put("ready", null != lookup);
+        stats.put("size", mSize);
+        stats.put("size_in_bytes", null != lookup ? lookup.ramBytesUsed() : 0);
+        stats.put("last_build", mLastBuildTime);
+        stats.put("last_build_time_in_millis", mLastBuildDuration);
+        return stats;
+    }
+
+    /**
+     * Rebuild the completion transducer from the most recent query log files.
+     */
+    private void rebuild()
+    {
+        final long startTime = System.currentTimeMillis();
+        String logDir = getConf().getString("suggest.query_log_dir", "");
+        if (logDir.isEmpty()) {
+            logDir = System.getProperty("catalina.home", ".") + "/logs/chatnoir2/query_logs";
+        }
+        final int maxFiles = getConf().getInteger("suggest.max_log_files", 20);
+        final int maxLength = getConf().getInteger("suggest.max_query_length", 100);
+        final int minUsers = Math.max(1, getConf().getInteger("suggest.min_users", 3));
+
+        try {
+            Path dir = Paths.get(logDir);
+            if (!Files.isDirectory(dir)) {
+                getLogger().warn(String.format("Query log directory '%s' does not exist", logDir));
+                return;
+            }
+
+            List<Path> files;
+            try (Stream<Path> list = Files.list(dir)) {
+                files = list
+                        .filter(Files::isRegularFile)
+                        .sorted(Comparator.comparingLong((Path p) -> p.toFile().lastModified()).reversed())
+                        .limit(maxFiles)
+                        .collect(Collectors.toList());
+            }
+
+            Map<String, Long> counts = countQueries(files, maxLength, minUsers);
+            WFSTCompletionLookup lookup = build(counts);
+            mLookup = lookup;
+            mSize = counts.size();
+            mLastBuildTime = System.currentTimeMillis();
+            mLastBuildDuration = mLastBuildTime - startTime;
+            getLogger().info(String.format("Built query suggester with %d queries from %d log files in %dms",
+                    mSize, files.size(), mLastBuildDuration));
+        } catch (Exception e) {
+            getLogger().warn("Failed to build query suggester: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Count normalized queries in query log files.
+     * Only queries which have been submitted by at least <tt>minUsers</tt> distinct users are returned.
+     * Users are identified by their user name or, if they are not logged in, by their IP address.
+     * Log lines without either are attributed to a single anonymous user.
+     *
+     * @param files query log files
+     * @param maxLength maximum length of queries to count
+     * @param minUsers minimum number of distinct users who must have submitted a query
+     * @return map of normalized queries and the number of times they have been logged
+     */
+    public static Map<String, Long> countQueries(List<Path> files, int maxLength, int minUsers) throws IOException
+    {
+        Map<String, QueryCount> queryCounts = new HashMap<>();
+        for (Path file : files) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while (null != (line = reader.readLine())) {
+                    int pos = line.indexOf(QUERY_MARKER);
+                    if (pos < 0) {
+                        continue;
+                    }
+                    String query = normalize(line.substring(pos + QUERY_MARKER.length()));
+                    if (!query.isEmpty() && query.length() <= maxLength) {
+                        queryCounts.computeIfAbsent(query, q -> new QueryCount())
+                                .add(getUserId(line.substring(0, pos)), minUsers);
+                    }
+                }
+            }
+        }
+
+        Map<String, Long> counts = new HashMap<>();
+        for (Map.Entry<String, QueryCount> e : queryCounts.entrySet()) {
+            if (e.getValue().mUsers.size() >= minUsers) {
+                counts.put(e.getKey(), e.getValue().mCount);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Extract the user identifier from the header of a query log line.
+     *
+     * @param header part of the log line preceding the query
+     * @return user name, IP address or empty string if neither is logged
+     */
+    private static String getUserId(String header)
+    {
+        // the user agent is logged last and may contain arbitrary strings
+        int end = header.indexOf(USER_AGENT_MARKER);
+        if (end >= 0) {
+            header = header.substring(0, end);
+        }
+
+        String marker = USER_MARKER;
+        int pos = header.indexOf(marker);
+        if (pos < 0) {
+            marker = IP_MARKER;
+            pos = header.indexOf(marker);
+        }
+        if (pos < 0) {
+            return "";
+        }
+        pos += marker.length();
+        end = header.indexOf(' ', pos);
+        return marker + header.substring(pos, end < 0 ? header.length() : end);
+    }
+
+    /**
+     * Number of occurrences and distinct users of a logged query.
+     */
+    private static class QueryCount
+    {
+        private long mCount = 0;
+        private final Set<String> mUsers = new HashSet<>();
+
+        /**
+         * Count one occurrence of the query.
+         *
+         * @param userId identifier of the submitting user
+         * @param maxUsers number of distinct users after which to stop tracking users
+         */
+        void add(String userId, int maxUsers)
+        {
+            ++mCount;
+            if (mUsers.size() < maxUsers) {
+                mUsers.add(userId);
+            }
+        }
+    }
+
+    /**
+     * Build completion transducer from query counts.
+     *
+     * @param counts map of normalized queries and their counts
+     * @return completion lookup
+     */
+    public static WFSTCompletionLookup build(Map<String, Long> counts) throws IOException
+    {
+        WFSTCompletionLookup lookup = new WFSTCompletionLookup(new RAMDirectory(), "suggest", false);
+        lookup.build(new CountIterator(counts.entrySet().iterator()));
+        return lookup;
+    }
+
+    /**
+     * Input iterator over query counts.
+     */
+    private static class CountIterator implements InputIterator
+    {
+        private final Iterator<Map.Entry<String, Long>> mIterator;
+        private long mWeight = 0;
+
+        CountIterator(Iterator<Map.Entry<String, Long>> iterator)
+        {
+            mIterator = iterator;
+        }
+
+        @Override
+        public BytesRef next()
+        {
+            if (!mIterator.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, Long> e = mIterator.next();
+            mWeight = Math.min(e.getValue(), Integer.MAX_VALUE);
+            return new BytesRef(e.getKey());
+        }
+
+        @Override
+        public long weight()
+        {
+            return mWeight;
+        }
+
+        @Override
+        public BytesRef payload()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean hasPayloads()
+        {
+            return false;
+        }
+
+        @Override
+        public Set<BytesRef> contexts()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean hasContexts()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.CacheManager;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.apache.shiro.cache.Cache;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.suggest.Suggest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local cache for ranked document lists.
+ *
+ * A ranked list holds the IDs and final scores of all documents within the rescore
+ * window of a query. Subsequent result pages for the same query can be served by fetching
+ * only the documents of the requested page by ID instead of ranking the query again.
+ * Lists are discarded as soon as one of the searched indices changes.
+ */
+public class RankedListCache extends Configured
+{
+    /**
+     * Name of EH cache for ranked lists.
+     */
+    private static final String CACHE_NAME = RankedListCache.class.getName() + "-0-lists";
+
+    private static RankedListCache sInstance = null;
+
+    private final Cache<String, RankedList> mCache;
+    private volatile boolean mEnabled;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mInvalidations = new AtomicLong();
+
+    private RankedListCache()
+    {
+        mCache = new CacheManager().getCache(CACHE_NAME);
+        mEnabled = getConf().getBoolean("result_cache.ranked_lists", true);
+        addConfigListener(conf -> {
+            // cached rankings may have been computed with outdated search profiles
+            mEnabled = conf.getBoolean("result_cache.ranked_lists", true);
+            clear();
+        });
+    }
+
+    /**
+     * @return singleton cache instance
+     */
+    public static synchronized RankedListCache getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new RankedListCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return whether ranked list caching is enabled
+     */
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+    /**
+     * Look up cached ranked list.
+     *
+     * @param key canonical key of the ranking request
+     * @param indices searched indices
+     * @return cached ranked list or null if there is no valid cached list
+     */
+    public RankedList get(String key, String[] indices)
+    {
+        RankedList list = mCache.get(key);
+        if (null == list) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        if (!list.mIndexVersion.equals(IndexVersionTracker.getInstance().getVersion(indices))) {
+            mCache.remove(key);
+            mInvalidations.incrementAndGet();
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        mHits.incrementAndGet();
+        return list;
+    }
+
+    /**
+     * Create a ranked list from the response to a ranking request and add it to the cache.
+     * Timed out or partial responses will not be cached.
+     *
+     * @param key canonical key of the ranking request
+     * @param indices searched indices
+     * @param response response to the ranking request
+     * @return created ranked list
+     */
+    public RankedList put(String key, String[] indices, SearchResponse response)
+    {
+        RankedList list = new RankedList(response, IndexVersionTracker.getInstance().getVersion(indices));
+        if (!response.isTimedOut() && response.getFailedShards() == 0) {
+            mCache.put(key, list);
+        }
+        return list;
+    }
+
+    /**
+     * Remove all cached lists.
+     */
+    public void clear()
+    {
+        mCache.clear();
+    }
+
+    /**
+     * Get cache statistics.
+     *
+     * @return map of statistics counters
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = mHits.get();
+        long misses = mMisses.get();
+        stats.put("enabled", mEnabled);
+        stats.put("size", mCache.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("invalidations", mInvalidations.get());
+        stats.put("hit_ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        return stats;
+    }
+
+    /**
+     * Ranked list of document IDs and scores.
+     */
+    public static class RankedList
+    {
+        private final String[] mIndices;
+        private final String[] mIds;
+        private final String[] mHostnames;
+        private final float[] mScores;
+        private final long mTotalHits;
+        private final float mMaxScore;
+        private final Boolean mTerminatedEarly;
+        private final boolean mTimedOut;
+        private final ShardSearchFailure[] mShardFailures;
+        private final Suggest mSuggest;
+        private final String mIndexVersion;
+
+        private RankedList(SearchResponse response, String indexVersion)
+        {
+            SearchHits hits = response.getHits();
+            SearchHit[] hitArray = hits.getHits();
+            mIndices = new String[hitArray.length];
+            mIds = new String[hitArray.length];
+            mScores = new float[hitArray.length];
+            mHostnames = new String[hitArray.length];
+            for (int i = 0; i < hitArray.length; ++i) {
+                SearchHitField hostField = hitArray[i].getField("warc_target_hostname.raw");
+                mHostnames[i] = null != hostField && null != hostField.getValue() ? hostField.getValue().toString() : null;
+                mIndices[i] = hitArray[i].getIndex();
+                mIds[i] = hitArray[i].getId();
+                mScores[i] = hitArray[i].getScore();
+            }
+            mTotalHits = hits.getTotalHits();
+            mMaxScore = hits.getMaxScore();
+            mTerminatedEarly = response.isTerminatedEarly();
+            mTimedOut = response.isTimedOut();
+            mShardFailures = response.getShardFailures();
+            mSuggest = response.getSuggest();
+            mIndexVersion = indexVersion;
+        }
+
+        /**
+         * @return number of ranked documents
+         */
+        public int size()
+        {
+            return mIds.length;
+        }
+
+        /**
+         * @param rank zero-based rank
+         * @return concrete index of the document at the given rank
+         */
+        public String getIndex(int rank)
+        {
+            return mIndices[rank];
+        }
+
+        /**
+         * @param rank zero-based rank
+         * @return ID of the document at the given rank
+         */
+        public String getId(int rank)
+        {
+            return mIds[rank];
+        }
+
+        /**
+         * @param rank zero-based rank
+         * @return host name of the document at the given rank (may be null)
+         */
+        public String getHostname(int rank)
+        {
+            return mHostnames[rank];
+        }
+
+        /**
+         * @param rank zero-based rank
+         * @return final score of the document at the given rank
+         */
+        public float getScore(int rank)
+        {
+            return mScores[rank];
+        }
+
+        /**
+         * @return total number of hits of the ranking request
+         */
+        public long getTotalHits()
+        {
+            return mTotalHits;
+        }
+
+        /**
+         * @return maximum score
+         */
+        public float getMaxScore()
+        {
+            return mMaxScore;
+        }
+
+        /**
+         * @return whether the ranking request terminated early
+         */
+        public Boolean isTerminatedEarly()
+        {
+            return mTerminatedEarly;
+        }
+
+        /**
+         * @return whether the ranking request timed out
+         */
+        public boolean isTimedOut()
+        {
+            return mTimedOut;
+        }
+
+        /**
+         * @return shard failures of the ranking request
+         */
+        public ShardSearchFailure[] getShardFailures()
+        {
+            return mShardFailures;
+        }
+
+        /**
+         * @return suggestions returned with the ranking request (may be null)
+         */
+        public Suggest getSuggest()
+        {
+            return mSuggest;
+        }
+    }
+}
@@ -0,0 +1,744 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.common.lucene.search.function.FieldValueFactorFunction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable, pre-compiled search settings for one configured search profile
+ * (such as <code>search.default_simple</code>) and one search language.
+ *
+ * All language placeholders are already resolved and all config lookups have
+ * been performed, so query builders can use a profile without touching the
+ * configuration on every request. Profiles are compiled lazily and cached.
+ * When the configuration is reloaded, all cached profiles are recompiled from the
+ * new configuration and replaced at once.
+ */
+public final class SearchProfile
+{
+    /**
+     * Config key of the default simple search profile.
+     */
+    public static final String SIMPLE_SEARCH = "search.default_simple";
+
+    /**
+     * Config key of the phrase search profile.
+     */
+    public static final String PHRASE_SEARCH = "search.phrase_search";
+
+    /**
+     * Search language to use for unsupported languages.
+     */
+    public static final String DEFAULT_LANGUAGE = "en";
+
+    /**
+     * Maximum number of cached profiles. Profiles beyond this limit are compiled, but not cached.
+     */
+    private static final int MAX_CACHED_PROFILES = 256;
+
+    /**
+     * Cache of compiled profiles.
+     */
+    private static volatile ConcurrentHashMap<String, SearchProfile> sProfiles = new ConcurrentHashMap<>();
+
+    /**
+     * Supported search languages (empty if any two-letter language code is allowed).
+     */
+    private static volatile Set<String> sLanguages = loadLanguages(Configured.getConf());
+
+    static {
+        Configured.addConfigListener(new Configured.ConfigListener()
+        {
+            @Override
+            public void validateConfig(ConfigLoader.Config conf)
+            {
+                try {
+                    new SearchProfile(conf, SIMPLE_SEARCH, "en");
+                    new SearchProfile(conf, PHRASE_SEARCH, "en");
+                    compileAll(conf);
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("Invalid search profile: " + e.getMessage(), e);
+                }
+            }
+
+            @Override
+            public void configReloaded(ConfigLoader.Config conf)
+            {
+                sLanguages = loadLanguages(conf);
+                sProfiles = compileAll(conf);
+            }
+        });
+    }
+
+    private final String mLanguage;
+    private final List<Field> mMainFields;
+    private final String[] mMainFieldNames;
+    private final List<Field> mPhraseFields;
+    private final List<Boost> mBoosts;
+    private final List<Penalty> mPenalties;
+    private final float mPenaltyFactor;
+    private final List<RangeFilter> mRangeFilters;
+    private final List<FieldValueFactor> mFieldValueFactors;
+    private final List<QueryFilter> mQueryFilters;
+    private final Set<String> mQueryFilterKeywords;
+    private final int mNodeLimit;
+    private final int mRescoreWindow;
+    private final long mTimeout;
+    private final int mDefaultSlop;
+    private final int mMaxSlop;
+
+    /**
+     * Compile profile from config.
+     *
+     * @param conf configuration to compile the profile from
+     * @param profileKey config key of the search profile
+     * @param language search language
+     */
+    private SearchProfile(final ConfigLoader.Config conf, final String profileKey, final String language)
+    {
+        final ConfigLoader.Config config = conf.get(profileKey);
+        mLanguage = language;
+
+        List<Field> mainFields = new ArrayList<>();
+        for (ConfigLoader.Config c : config.getArray("main_fields")) {
+            mainFields.add(new Field(
+                    localize(c.getString("name", "")),
+                    c.getFloat("boost", 1.0f),
+                    c.getBoolean("proximity_matching", false),
+                    c.getInteger("proximity_slop", 1),
+                    c.getFloat("proximity_boost", 1.0f),
+                    c.getBoolean("fuzzy_matching", false)));
+        }
+        mMainFields = Collections.unmodifiableList(mainFields);
+        mMainFieldNames = new String[mainFields.size()];
+        for (int i = 0; i < mMainFieldNames.length; ++i) {
+            mMainFieldNames[i] = mainFields.get(i).getName();
+        }
+
+        List<Field> phraseFields = new ArrayList<>();
+        for (ConfigLoader.Config c : config.getArray("fields")) {
+            phraseFields.add(new Field(localize(c.getString("name", "")), c.getFloat("boost", 1.0f),
+                    false, 0, 1.0f, false));
+        }
+        mPhraseFields = Collections.unmodifiableList(phraseFields);
+
+        List<Boost> boosts = new ArrayList<>();
+        for (ConfigLoader.Config c : config.getArray("boosts")) {
+            boosts.add(new Boost(
+                    localize(c.getString("name", "")),
+                    localize(c.getString("value", "")),
+                    c.getBoolean("match", false),
+                    c.getFloat("match_boost", 1.0f)));
+        }
+        mBoosts = Collections.unmodifiableList(boosts);
+
+        ConfigLoader.Config penaltyConfig = config.get("penalties");
+        List<Penalty> penalties = new ArrayList<>();
+        for (ConfigLoader.Config c : penaltyConfig.getArray("fields")) {
+            boolean isRegexp = c.contains("regexp");
+            penalties.add(new Penalty(
+                    localize(c.getString("name", "")),
+                    localize(c.getString(isRegexp ? "regexp" : "value", "")),
+                    isRegexp,
+                    c.getFloat("boost", 2.0f)));
+        }
+        mPenalties = Collections.unmodifiableList(penalties);
+        mPenaltyFactor = penaltyConfig.getFloat("penalty_factor", 0.2f);
+
+        List<RangeFilter> rangeFilters = new ArrayList<>();
+        for (ConfigLoader.Config c : config.getArray("range_filters")) {
+            rangeFilters.add(new RangeFilter(
+                    localize(c.getString("name", "")),
+                    c.getDouble("gt"),
+                    c.getDouble("gte"),
+                    c.getDouble("lt"),
+                    c.getDouble("lte"),
+                    c.getBoolean("include_unset", false),
+                    c.getBoolean("negate", false)));
+        }
+        mRangeFilters = Collections.unmodifiableList(rangeFilters);
+
+        List<FieldValueFactor> valueFactors = new ArrayList<>();
+        for (ConfigLoader.Config c : config.getArray("field_value_factors")) {
+            valueFactors.add(new FieldValueFactor(
+                    c.getString("name"),
+                    c.getFloat("factor", 1.0f),
+                    FieldValueFactorFunction.Modifier.fromString(c.getString("modifier", "")),
+                    c.getFloat("missing", 1.0f)));
+        }
+        mFieldValueFactors = Collections.unmodifiableList(valueFactors);
+
+        List<QueryFilter> queryFilters = new ArrayList<>();
+        for (ConfigLoader.Config c : config.getArray("query_filters")) {
+            queryFilters.add(new QueryFilter(c.getString("keyword"), c.getString("field")));
+        }
+        mQueryFilters = Collections.unmodifiableList(queryFilters);
+        Set<String> queryFilterKeywords = new HashSet<>();
+        for (QueryFilter f : queryFilters) {
+            queryFilterKeywords.add(f.getKeyword());
+        }
+        mQueryFilterKeywords = Collections.unmodifiableSet(queryFilterKeywords);
+
+        mNodeLimit     = config.getInteger("node_limit", PHRASE_SEARCH.equals(profileKey) ? 10000 : 200000);
+        mRescoreWindow = config.getInteger("rescore_window", 400);
+        mTimeout       = config.getLong("timeout", -1L);
+        mDefaultSlop   = config.getInteger("default_slop", 0);
+        mMaxSlop       = config.getInteger("max_slop", 2);
+    }
+
+    /**
+     * Get compiled search profile for a given profile config key and search language.
+     *
+     * @param profileKey config key of the search profile (e.g. {@link #SIMPLE_SEARCH})
+     * @param language search language
+     * @return compiled profile
+     */
+    public static SearchProfile get(final String profileKey, final String language)
+    {
+        final String lang = resolveLanguage(language);
+        final ConcurrentHashMap<String, SearchProfile> profiles = sProfiles;
+        final String key = profileKey + ":" + lang;
+        final SearchProfile profile = profiles.get(key);
+        if (null != profile) {
+            return profile;
+        }
+        if (profiles.size() >= MAX_CACHED_PROFILES) {
+            return new SearchProfile(Configured.getConf(), profileKey, lang);
+        }
+        return profiles.computeIfAbsent(key, k -> new SearchProfile(Configured.getConf(), profileKey, lang));
+    }
+
+    /**
+     * Map a requested search language to a supported search language.
+     * Languages which are not listed in <code>search.languages</code> are replaced
+     * with {@link #DEFAULT_LANGUAGE}, since the indices have no language-specific fields for them.
+     * If no languages are configured, any two-letter language code is accepted.
+     *
+     * @param language requested language code
+     * @return supported language code
+     */
+    public static String resolveLanguage(final String language)
+    {
+        if (null == language || language.length() != 2) {
+            return DEFAULT_LANGUAGE;
+        }
+        final String lang = language.toLowerCase();
+        final Set<String> languages = sLanguages;
+        if (languages.isEmpty()) {
+            return lang.chars().allMatch(c -> c >= 'a' && c <= 'z') ? lang : DEFAULT_LANGUAGE;
+        }
+        return languages.contains(lang) ? lang : DEFAULT_LANGUAGE;
+    }
+
+    /**
+     * @param language language code
+     * @return whether the indices have language-specific fields for the given language
+     */
+    public static boolean isSupportedLanguage(final String language)
+    {
+        return null != language && resolveLanguage(language).equals(language.toLowerCase());
+    }
+
+    /**
+     * Read supported search languages from a configuration.
+     *
+     * @param conf configuration
+     * @return set of supported language codes
+     */
+    private static Set<String> loadLanguages(final ConfigLoader.Config conf)
+    {
+        final Set<String> languages = new HashSet<>();
+        for (String lang : conf.getStringArray("search.languages")) {
+            languages.add(lang.toLowerCase());
+        }
+        return Collections.unmodifiableSet(languages);
+    }
+
+    /**
+     * Recompile all currently cached profiles from a given configuration.
+     *
+     * @param conf configuration to compile the profiles from
+     * @return new profile cache
+     */
+    private static ConcurrentHashMap<String, SearchProfile> compileAll(final ConfigLoader.Config conf)
+    {
+        final Set<String> languages = loadLanguages(conf);
+        final ConcurrentHashMap<String, SearchProfile> profiles = new ConcurrentHashMap<>();
+        for (String key : sProfiles.keySet()) {
+            final int sep = key.lastIndexOf(':');
+            final String lang = key.substring(sep + 1);
+            if (!languages.isEmpty() && !languages.contains(lang)) {
+                continue;
+            }
+            profiles.put(key, new SearchProfile(conf, key.substring(0, sep), lang));
+        }
+        return profiles;
+    }
+
+    /**
+     * Discard all compiled profiles, so they will be recompiled from the current config on next use.
+     */
+    public static void clearCache()
+    {
+        sProfiles.clear();
+    }
+
+    /**
+     * Replace language placeholders in a config value.
+     *
+     * @param value config value
+     * @return localized value
+     */
+    private String localize(final String value)
+    {
+        return value.replace("%lang%", mLanguage);
+    }
+
+    /**
+     * @return search language this profile was compiled for
+     */
+    public String getLanguage()
+    {
+        return mLanguage;
+    }
+
+    /**
+     * @return main search fields
+     */
+    public List<Field> getMainFields()
+    {
+        return mMainFields;
+    }
+
+    /**
+     * @return names of all main search fields
+     */
+    public String[] getMainFieldNames()
+    {
+        return mMainFieldNames.clone();
+    }
+
+    /**
+     * @return phrase search fields
+     */
+    public List<Field> getPhraseFields()
+    {
+        return mPhraseFields;
+    }
+
+    /**
+     * @return positive field value boosts
+     */
+    public List<Boost> getBoosts()
+    {
+        return mBoosts;
+    }
+
+    /**
+     * @return field value penalties
+     */
+    public List<Penalty> getPenalties()
+    {
+        return mPenalties;
+    }
+
+    /**
+     * @return overall penalty factor
+     */
+    public float getPenaltyFactor()
+    {
+        return mPenaltyFactor;
+    }
+
+    /**
+     * @return range filters
+     */
+    public List<RangeFilter> getRangeFilters()
+    {
+        return mRangeFilters;
+    }
+
+    /**
+     * @return field value factors in the order in which they are to be applied
+     */
+    public List<FieldValueFactor> getFieldValueFactors()
+    {
+        return mFieldValueFactors;
+    }
+
+    /**
+     * @return user-defined query string filters
+     */
+    public List<QueryFilter> getQueryFilters()
+    {
+        return mQueryFilters;
+    }
+
+    /**
+     * @return keywords of user-defined query string filters
+     */
+    public Set<String> getQueryFilterKeywords()
+    {
+        return mQueryFilterKeywords;
+    }
+
+    /**
+     * @return node limit after which to terminate search
+     */
+    public int getNodeLimit()
+    {
+        return mNodeLimit;
+    }
+
+    /**
+     * @return window size for query rescorer
+     */
+    public int getRescoreWindow()
+    {
+        return mRescoreWindow;
+    }
+
+    /**
+     * @return search timeout in milliseconds (0 or less for no timeout)
+     */
+    public long getTimeout()
+    {
+        return mTimeout;
+    }
+
+    /**
+     * @return default phrase slop
+     */
+    public int getDefaultSlop()
+    {
+        return mDefaultSlop;
+    }
+
+    /**
+     * @return maximum phrase slop
+     */
+    public int getMaxSlop()
+    {
+        return mMaxSlop;
+    }
+
+    /**
+     * Search field.
+     */
+    public static final class Field
+    {
+        private final String mName;
+        private final float mBoost;
+        private final boolean mProximityMatching;
+        private final int mProximitySlop;
+        private final float mProximityBoost;
+        private final boolean mFuzzyMatching;
+
+        Field(String name, float boost, boolean proximityMatching, int proximitySlop,
+              float proximityBoost, boolean fuzzyMatching)
+        {
+            mName = name;
+            mBoost = boost;
+            mProximityMatching = proximityMatching;
+            mProximitySlop = proximitySlop;
+            mProximityBoost = proximityBoost;
+            mFuzzyMatching = fuzzyMatching;
+        }
+
+        public String getName()
+        {
+            return mName;
+        }
+
+        public float getBoost()
+        {
+            return mBoost;
+        }
+
+        public boolean isProximityMatching()
+        {
+            return mProximityMatching;
+        }
+
+        public int getProximitySlop()
+        {
+            return mProximitySlop;
+        }
+
+        public float getProximityBoost()
+        {
+            return mProximityBoost;
+        }
+
+        public boolean isFuzzyMatching()
+        {
+            return mFuzzyMatching;
+        }
+    }
+
+    /**
+     * Regular expression field value boost.
+     */
+    public static final class Boost
+    {
+        private final String mField;
+        private final String mValue;
+        private final CompiledPattern mPattern;
+        private final boolean mMatch;
+        private final float mMatchBoost;
+
+        Boost(String field, String value, boolean match, float matchBoost)
+        {
+            mField = field;
+            mValue = value;
+            mPattern = CompiledPattern.compile(value);
+            mMatch = match;
+            mMatchBoost = matchBoost;
+        }
+
+        public String getField()
+        {
+            return mField;
+        }
+
+        /**
+         * @return anchored regular expression
+         */
+        public String getValue()
+        {
+            return mValue;
+        }
+
+        /**
+         * @return regular expression compiled into cheaper queries
+         */
+        public CompiledPattern getCompiledPattern()
+        {
+            return mPattern;
+        }
+
+        /**
+         * @return whether boost is to be applied during match phase (pre-query)
+         */
+        public boolean isMatch()
+        {
+            return mMatch;
+        }
+
+        public float getMatchBoost()
+        {
+            return mMatchBoost;
+        }
+    }
+
+    /**
+     * Field value penalty.
+     */
+    public static final class Penalty
+    {
+        private final String mField;
+        private final String mValue;
+        private final boolean mRegexp;
+        private final CompiledPattern mPattern;
+        private final float mBoost;
+
+        Penalty(String field, String value, boolean regexp, float boost)
+        {
+            mField = field;
+            mValue = value;
+            mRegexp = regexp;
+            mPattern = regexp ? CompiledPattern.compile(value) : null;
+            mBoost = boost;
+        }
+
+        public String getField()
+        {
+            return mField;
+        }
+
+        /**
+         * @return exact value or regular expression to match
+         */
+        public String getValue()
+        {
+            return mValue;
+        }
+
+        /**
+         * @return whether value is a regular expression
+         */
+        public boolean isRegexp()
+        {
+            return mRegexp;
+        }
+
+        /**
+         * @return regular expression compiled into cheaper queries (null if value is not a regular expression)
+         */
+        public CompiledPattern getCompiledPattern()
+        {
+            return mPattern;
+        }
+
+        public float getBoost()
+        {
+            return mBoost;
+        }
+    }
+
+    /**
+     * Numeric range filter.
+     */
+    public static final class RangeFilter
+    {
+        private final String mField;
+        private final Double mGt;
+        private final Double mGte;
+        private final Double mLt;
+        private final Double mLte;
+        private final boolean mIncludeUnset;
+        private final boolean mNegate;
+
+        RangeFilter(String field, Double gt, Double gte, Double lt, Double lte, boolean includeUnset, boolean negate)
+        {
+            mField = field;
+            mGt = gt;
+            mGte = gte;
+            mLt = lt;
+            mLte = lte;
+            mIncludeUnset = includeUnset;
+            mNegate = negate;
+        }
+
+        public String getField()
+        {
+            return mField;
+        }
+
+        public Double getGt()
+        {
+            return mGt;
+        }
+
+        public Double getGte()
+        {
+            return mGte;
+        }
+
+        public Double getLt()
+        {
+            return mLt;
+        }
+
+        public Double getLte()
+        {
+            return mLte;
+        }
+
+        public boolean isIncludeUnset()
+        {
+            return mIncludeUnset;
+        }
+
+        public boolean isNegate()
+        {
+            return mNegate;
+        }
+    }
+
+    /**
+     * Field value factor scoring function.
+     */
+    public static final class FieldValueFactor
+    {
+        private final String mField;
+        private final float mFactor;
+        private final FieldValueFactorFunction.Modifier mModifier;
+        private final float mMissing;
+
+        FieldValueFactor(String field, float factor, FieldValueFactorFunction.Modifier modifier, float missing)
+        {
+            mField = field;
+            mFactor = factor;
+            mModifier = modifier;
+            mMissing = missing;
+        }
+
+        public String getField()
+        {
+            return mField;
+        }
+
+        public float getFactor()
+        {
+            return mFactor;
+        }
+
+        public FieldValueFactorFunction.Modifier getModifier()
+        {
+            return mModifier;
+        }
+
+        public float getMissing()
+        {
+            return mMissing;
+        }
+    }
+
+    /**
+     * User-defined query string filter (such as <code>site:example.com</code>).
+     */
+    public static final class QueryFilter
+    {
+        private final String mKeyword;
+        private final String mField;
+
+        QueryFilter(String keyword, String field)
+        {
+            mKeyword = keyword;
+            mField = field;
+        }
+
+        public String getKeyword()
+        {
+            return mKeyword;
+        }
+
+        public String getField()
+        {
+            return mField;
+        }
+    }
+}
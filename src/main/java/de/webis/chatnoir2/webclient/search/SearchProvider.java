@@ -25,14 +25,31 @@
 
 package de.webis.chatnoir2.webclient.search;
 
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
+import de.webis.chatnoir2.webclient.util.ClientManager;
+import de.webis.chatnoir2.webclient.util.ParallelMapper;
 import de.webis.chatnoir2.webclient.util.TextCleanser;
 import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.UnavailableSecurityManagerException;
+import org.apache.shiro.session.Session;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.text.Text;
 import org.elasticsearch.search.SearchHit;
 
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Public interface for search providers.
@@ -41,6 +58,22 @@ import java.util.*;
  */
 public abstract class SearchProvider extends IndexRetrievalOperator
 {
+    /**
+     * Rendering modes determining which document fields are needed for rendering results.
+     */
+    public enum RenderingMode
+    {
+        /**
+         * All result fields (search result pages and full API responses).
+         */
+        FULL,
+
+        /**
+         * Only URI and snippet (minimal API responses).
+         */
+        MINIMAL
+    }
+
     /**
      * (Default) snippet length.
      */
@@ -54,17 +87,63 @@ public abstract class SearchProvider extends IndexRetrievalOperator
     /**
      * Search result language.
      */
-    private String mSearchLanguage = "en";
+    private String mSearchLanguage = SearchProfile.DEFAULT_LANGUAGE;
 
     /**
      * Whether to group results by hostname.
      */
     private boolean mGroupByHostname = true;
 
+    /**
+     * Whether to collapse results by hostname on the server side.
+     */
+    private boolean mCollapseByHostname = false;
+
+    /**
+     * Maximum number of results per host if results are collapsed by hostname.
+     */
+    private int mHostGroupSize = 3;
+
+    /**
+     * Result rendering mode.
+     */
+    private RenderingMode mRenderingMode = RenderingMode.FULL;
+
+    /**
+     * Batch to which search requests are added instead of sending them individually.
+     */
+    private SearchRequestBatch mRequestBatch = null;
+
+    /**
+     * Whether to hedge slow search requests.
+     */
+    private boolean mHedging = SearchRequestHedger.getInstance().isEnabled();
+
+    /**
+     * Requested search timeout in milliseconds.
+     */
+    private long mTimeout = -1;
+
+    /**
+     * Whether a response was served from the result cache because the cluster was unavailable.
+     */
+    private boolean mStale = false;
+
+    /**
+     * Scheduler for client-side request timeouts.
+     */
+    private static final ScheduledExecutorService sTimeoutScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "chatnoir2-search-timeout");
+        t.setDaemon(true);
+        return t;
+    });
+
     public SearchProvider(final String[] indices)
     {
         super(indices);
         mGroupByHostname = getConf().getBoolean("serp.group_by_hostname", true);
+        mCollapseByHostname = getConf().getBoolean("serp.collapse_by_hostname", mCollapseByHostname);
+        mHostGroupSize = Math.max(1, getConf().getInteger("serp.host_group_size", mHostGroupSize));
         mSnippetLength = getConf().getInteger("serp.snippet_length", mSnippetLength);
         mTitleLength   = getConf().getInteger("serp.title_length", mTitleLength);
     }
@@ -76,12 +155,176 @@ public abstract class SearchProvider extends IndexRetrievalOperator
 
     /**
      * Run a search based on given search fields.
+     * This method blocks until the search has finished. Use {@link #doSearchAsync(String, int, int)}
+     * to run a search without blocking the calling thread.
      *
      * @param query search query
      * @param from first result to return
      * @param size number of results to return
      */
-    public abstract void doSearch(String query, int from, int size);
+    public void doSearch(String query, int from, int size)
+    {
+        try {
+            doSearchAsync(query, from, size).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Run a search based on given search fields without blocking the calling thread.
+     * The returned future completes once the search response has been received. Results
+     * can then be retrieved from this provider as if {@link #doSearch(String, int, int)} had been called.
+     *
+     * @param query search query
+     * @param from first result to return
+     * @param size number of results to return
+     * @return future that completes with the search response
+     */
+    public abstract CompletableFuture<SearchResponse> doSearchAsync(String query, int from, int size);
+
+    /**
+     * Execute a search request without blocking the calling thread.
+     * Responses are served from the local {@link SearchResultCache} if possible. Identical
+     * requests running concurrently are coalesced into a single request to the cluster.
+     * If the cluster is unavailable, an outdated cached response is served instead (if there is one).
+     *
+     * @param requestBuilder configured search request
+     * @return future that completes with the search response
+     */
+    protected CompletableFuture<SearchResponse> executeSearchRequest(SearchRequestBuilder requestBuilder)
+    {
+        final SearchResultCache cache = SearchResultCache.getInstance();
+        final SearchRequest request = requestBuilder.request();
+        final String requestKey = SearchResultCache.getKey(request);
+
+        if (cache.isEnabled()) {
+            final SearchResponse cachedResponse = cache.get(requestKey, request.indices());
+            if (null != cachedResponse) {
+                return CompletableFuture.completedFuture(cachedResponse);
+            }
+        }
+
+        final CompletableFuture<SearchResponse> future = SearchRequestCoalescer.getInstance().execute(requestKey, () ->
+                sendSearchRequest(requestBuilder).thenApply(response -> {
+                    if (cache.isEnabled()) {
+                        cache.put(requestKey, request.indices(), response);
+                    }
+                    return response;
+                }));
+        if (!cache.isEnabled() || !getConf().getBoolean("circuit_breaker.stale_results", true)) {
+            return future;
+        }
+
+        final CompletableFuture<SearchResponse> result = new CompletableFuture<>();
+        future.whenComplete((response, e) -> {
+            if (null == e) {
+                result.complete(response);
+                return;
+            }
+
+            final SearchResponse staleResponse = CircuitBreaker.isBackendFailure(e) ? cache.getStale(requestKey) : null;
+            if (null != staleResponse) {
+                mStale = true;
+                result.complete(staleResponse);
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Send a search request to the cluster without blocking the calling thread.
+     * If a request batch is set, the request will be added to the batch instead. Batched requests
+     * are subject to the same client-side timeout and latency recording as individual requests.
+     * If the circuit breaker of any of the searched indices is open, the request fails immediately.
+     *
+     * @param requestBuilder configured search request
+     * @return future that completes with the search response
+     */
+    protected CompletableFuture<SearchResponse> sendSearchRequest(SearchRequestBuilder requestBuilder)
+    {
+        final List<CircuitBreaker> breakers = new ArrayList<>();
+        for (String index : requestBuilder.request().indices()) {
+            final CircuitBreaker breaker = ClientManager.getIndexBreaker(index);
+            if (!breaker.allowRequest()) {
+                final CompletableFuture<SearchResponse> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new CircuitBreaker.OpenException(breaker.getName()));
+                return rejected;
+            }
+            breakers.add(breaker);
+        }
+
+        final CompletableFuture<SearchResponse> future;
+        final long startTime = System.currentTimeMillis();
+        if (null != mRequestBatch) {
+            future = mRequestBatch.add(requestBuilder);
+        } else if (mHedging) {
+            future = SearchRequestHedger.getInstance().execute(requestBuilder.request());
+        } else {
+            future = new CompletableFuture<>();
+            requestBuilder.execute(ActionListener.wrap(future::complete, future::completeExceptionally));
+        }
+        scheduleClientTimeout(requestBuilder.request(), future);
+        return future.whenComplete((response, e) -> {
+            DegradationController.getInstance().recordLatency(System.currentTimeMillis() - startTime);
+            breakers.forEach(b -> b.record(e));
+        });
+    }
+
+    /**
+     * Fail a pending request future if no response arrives within the request's timeout plus
+     * a grace period. Elasticsearch timeouts only cover the query phase on each shard, so this
+     * ensures that the caller is released even if a node stops responding entirely.
+     *
+     * @param request search request
+     * @param future pending request future
+     */
+    private void scheduleClientTimeout(SearchRequest request, CompletableFuture<SearchResponse> future)
+    {
+        if (null == request.source() || null == request.source().timeout() || future.isDone()) {
+            return;
+        }
+
+        final long timeout = request.source().timeout().millis()
+                + getConf().getLong("cluster.client_timeout_grace", 1000L);
+        final ScheduledFuture<?> timer = sTimeoutScheduler.schedule(() ->
+                future.completeExceptionally(new ElasticsearchTimeoutException(
+                        "No search response within {}ms", timeout)), timeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, e) -> timer.cancel(false));
+    }
+
+    /**
+     * Set a batch to which search requests of this provider are added instead of
+     * sending them to the cluster right away.
+     *
+     * @param requestBatch request batch or null to send requests individually
+     */
+    public void setRequestBatch(SearchRequestBatch requestBatch)
+    {
+        mRequestBatch = requestBatch;
+    }
+
+    /**
+     * @return request batch of this provider or null if none is set
+     */
+    public SearchRequestBatch getRequestBatch()
+    {
+        return mRequestBatch;
+    }
+
+    /**
+     * @return whether the current search response was served from the result cache, because
+     *         the cluster was unavailable (results may be outdated)
+     */
+    public boolean isStale()
+    {
+        return mStale;
+    }
 
     /**
      * Get Elasticsearch SearchResponse object for the current search.
@@ -100,80 +343,307 @@ public abstract class SearchProvider extends IndexRetrievalOperator
         return getResponse().isTerminatedEarly();
     }
 
+    /**
+     * @return whether the most recent search exceeded its timeout (results may be incomplete)
+     */
+    public boolean isTimedOut()
+    {
+        return getResponse().isTimedOut();
+    }
+
+    /**
+     * @return total number of shards searched by the most recent search
+     */
+    public int getTotalShards()
+    {
+        return getResponse().getTotalShards();
+    }
+
+    /**
+     * @return number of shards which failed to respond to the most recent search
+     */
+    public int getFailedShards()
+    {
+        return getResponse().getFailedShards();
+    }
+
+    /**
+     * @return whether results of the most recent search are incomplete due to a timeout or shard failures
+     */
+    public boolean isPartial()
+    {
+        return isTimedOut() || getFailedShards() > 0;
+    }
+
+    /**
+     * Set latency budget for searches. The timeout is applied to the Elasticsearch request,
+     * which then returns partial results, and to the client-side request future.
+     * The timeout can only narrow the timeout configured for the search profile.
+     *
+     * @param timeout timeout in milliseconds (0 or less for the configured default)
+     */
+    public void setTimeout(long timeout)
+    {
+        mTimeout = timeout;
+    }
+
+    /**
+     * @return requested search timeout in milliseconds (0 or less for the configured default)
+     */
+    public long getTimeout()
+    {
+        return mTimeout;
+    }
+
+    /**
+     * Get shard routing preference for a search request. Searches with the same preference
+     * are routed to the same shard copies, which improves the locality of the Elasticsearch
+     * shard request cache, query cache and file system cache. The preference mode is
+     * configured with <tt>cluster.search_preference</tt>.
+     * While the {@link ClientManager} reports slow nodes, a preference for all other
+     * nodes is returned instead.
+     *
+     * @param canonicalQuery canonical (normalized) user query string
+     * @return preference string or null if shard copies should be chosen at random
+     */
+    protected String getPreference(String canonicalQuery)
+    {
+        String nodePreference = ClientManager.getInstance().getNodePreference();
+        if (null != nodePreference) {
+            return nodePreference;
+        }
+
+        String mode = getConf().getString("cluster.search_preference", "query");
+        if (mode.equals("session")) {
+            try {
+                Session session = SecurityUtils.getSubject().getSession(false);
+                if (null != session) {
+                    return "s" + Integer.toHexString(session.getId().hashCode());
+                }
+            } catch (UnavailableSecurityManagerException ignored) { }
+            mode = "query";
+        }
+
+        if (mode.equals("query")) {
+            return "q" + Integer.toHexString(canonicalQuery.toLowerCase().hashCode());
+        }
+        return null;
+    }
+
+    /**
+     * Enable or disable hedging of slow search requests for this provider.
+     * Hedging can only be enabled if it is enabled in the configuration.
+     *
+     * @param hedging whether to hedge slow search requests
+     */
+    public void setHedging(boolean hedging)
+    {
+        mHedging = hedging && SearchRequestHedger.getInstance().isEnabled();
+    }
+
+    /**
+     * @return whether slow search requests are hedged
+     */
+    public boolean isHedging()
+    {
+        return mHedging;
+    }
+
+    /**
+     * Get latency budget for the search request.
+     *
+     * @return timeout in milliseconds (0 or less for no timeout)
+     */
+    protected long getSearchTimeout()
+    {
+        return getTimeout();
+    }
+
+    /**
+     * Get time budget for answering a request with this provider. This is twice the client-side
+     * timeout of a single search request (search timeout plus <tt>cluster.client_timeout_grace</tt>),
+     * which leaves room for follow-up requests and rendering the response.
+     *
+     * @return response timeout in milliseconds (0 or less if searches have no timeout)
+     */
+    public long getResponseTimeout()
+    {
+        final long timeout = getSearchTimeout();
+        if (timeout <= 0) {
+            return 0;
+        }
+        return 2 * (timeout + getConf().getLong("cluster.client_timeout_grace", 1000L));
+    }
+
+    /**
+     * Combine two timeouts, so that the stricter one is used.
+     *
+     * @param timeout base timeout (0 or less for no timeout)
+     * @param limit additional limit (0 or less for no limit)
+     * @return narrowed timeout (0 or less for no timeout)
+     */
+    public static long narrowTimeout(long timeout, long limit)
+    {
+        if (limit <= 0) {
+            return timeout;
+        }
+        return timeout > 0 ? Math.min(timeout, limit) : limit;
+    }
+
     /**
      * Return a list of {@link SearchResultBuilder.SearchResult} objects for the most recent search.
      * The list will be empty if search yielded no hits or no search has been performed.
+     * Large result lists are materialized in parallel.
      *
      * @return list of search results
      */
     public List<SearchResultBuilder.SearchResult> getResults()
     {
-        ArrayList<SearchResultBuilder.SearchResult> results = new ArrayList<>();
-
         if (null == getResponse()) {
-            return results;
+            return new ArrayList<>();
         }
 
-        for (SearchHit hit: getResponse().getHits()) {
-            final Map<String, Object> source = hit.getSource();
+        final String lang = getSearchLanguage();
+        final List<String> sourceFields = Arrays.asList(getSourceFields());
+        return ParallelMapper.map(Arrays.asList(getResponse().getHits().getHits()),
+                hit -> buildResult(hit, lang, sourceFields));
+    }
 
-            String snippet = "";
-            if (null != hit.getHighlightFields().get("body_lang." + getSearchLanguage())) {
-                final Text[] fragments = hit.getHighlightFields().get("body_lang." + getSearchLanguage()).fragments();
-                if (1 >= fragments.length) {
-                    snippet = fragments[0].string();
-                }
+    /**
+     * Build search result from a search hit.
+     *
+     * @param hit search hit
+     * @param lang search language
+     * @param sourceFields source fields to load
+     * @return search result
+     */
+    protected SearchResultBuilder.SearchResult buildResult(SearchHit hit, String lang, List<String> sourceFields)
+    {
+        final LazySource source = new LazySource(hit.getSourceRef(), sourceFields);
+
+        // body highlights fall back to the beginning of the body if there is no match,
+        // but a meta description is preferred over an unhighlighted body fragment
+        String snippet = "";
+        boolean snippetHighlighted = false;
+        if (null != hit.getHighlightFields().get("body_lang." + lang)) {
+            final Text[] fragments = hit.getHighlightFields().get("body_lang." + lang).fragments();
+            if (1 >= fragments.length && 0 < fragments.length) {
+                snippet = fragments[0].string();
+                snippetHighlighted = snippet.contains("<em>");
             }
+        }
 
-            // use meta description or first body part if no highlighted snippet available
-            if (snippet.isEmpty()) {
-                if (!source.get("meta_desc_lang." + getSearchLanguage()).toString().isEmpty()) {
-                    snippet = StringEscapeUtils.escapeHtml(
-                            truncateSnippet((String) source.get("meta_desc_lang." + getSearchLanguage()), mSnippetLength));
-                } else {
-                    snippet = StringEscapeUtils.escapeHtml(
-                            truncateSnippet((String) source.get("body_lang." + getSearchLanguage()), mSnippetLength));
-                }
+        // use meta description or first body part if no highlighted snippet available
+        if (!snippetHighlighted) {
+            final String metaDesc = source.getString("meta_desc_lang." + lang);
+            if (null != metaDesc && !metaDesc.isEmpty()) {
+                snippet = StringEscapeUtils.escapeHtml(truncateSnippet(metaDesc, mSnippetLength));
             }
-            snippet = TextCleanser.cleanseAll(snippet, true);
-
-            // use highlighted title if available
-            String title = StringEscapeUtils.escapeHtml(
-                    truncateSnippet((String) source.get("title_lang." + getSearchLanguage()), mTitleLength));
-            if (null != hit.getHighlightFields().get("title_lang." + getSearchLanguage())) {
-                final Text[] fragments = hit.getHighlightFields().get("title_lang." + getSearchLanguage()).fragments();
-                if (1 >= fragments.length) {
-                    title = fragments[0].string();
-                }
+        }
+        snippet = TextCleanser.cleanseAll(snippet, true);
+
+        // use highlighted title if available
+        String title = StringEscapeUtils.escapeHtml(
+                truncateSnippet(source.getString("title_lang." + lang), mTitleLength));
+        if (null != hit.getHighlightFields().get("title_lang." + lang)) {
+            final Text[] fragments = hit.getHighlightFields().get("title_lang." + lang).fragments();
+            if (1 >= fragments.length) {
+                title = fragments[0].string();
             }
-            title = TextCleanser.cleanseAll(title, true);
+        }
+        title = TextCleanser.cleanseAll(title, true);
 
-            String targetPath = (String) source.get("warc_target_path");
-            if (null != targetPath) {
-                targetPath = Paths.get("/", targetPath).normalize().toString();
-            } else {
-                targetPath = "/";
-            }
+        String targetPath = source.getString("warc_target_path");
+        if (null != targetPath) {
+            targetPath = Paths.get("/", targetPath).normalize().toString();
+        } else {
+            targetPath = "/";
+        }
+
+        final String index = hit.getIndex();
+        final String docId = hit.getId();
+        return new SearchResultBuilder()
+                .score(hit.getScore())
+                .index(index, getIndexSnapshot())
+                .documentId(docId)
+                .trecId(source.getString("warc_trec_id"))
+                .title(title)
+                .targetHostname(source.getString("warc_target_hostname"))
+                .targetPath(targetPath)
+                .targetUri(source.getString("warc_target_uri"))
+                .snippet(snippet)
+                .fullBody(() -> fetchFullBody(index, docId, lang))
+                .pageRank(source.getDouble("page_rank"))
+                .spamRank(source.getInteger("spam_rank"))
+                .explanation(hit.getExplanation())
+                .build();
+    }
 
-            final SearchResultBuilder.SearchResult result = new SearchResultBuilder()
-                    .score(hit.getScore())
-                    .index(hit.getIndex())
-                    .documentId(hit.getId())
-                    .trecId((String) source.get("warc_trec_id"))
-                    .title(title)
-                    .targetHostname((String) source.get("warc_target_hostname"))
-                    .targetPath(targetPath)
-                    .targetUri((String) source.get("warc_target_uri"))
-                    .snippet(snippet)
-                    .fullBody((String) source.get("body_lang." + getSearchLanguage()))
-                    .pageRank((Double) source.get("page_rank"))
-                    .spamRank((Integer) source.get("spam_rank"))
-                    .explanation(hit.getExplanation())
-                    .build();
-            results.add(result);
+    /**
+     * Get the source fields needed for rendering results in the current rendering mode.
+     * The full document body is never included, it is retrieved on demand instead.
+     *
+     * @return localized source field names
+     */
+    protected String[] getSourceFields()
+    {
+        final String lang = getSearchLanguage();
+        if (mRenderingMode == RenderingMode.MINIMAL) {
+            return new String[] {
+                    "warc_target_uri",
+                    "meta_desc_lang." + lang
+            };
         }
 
-        return results;
+        return new String[] {
+                "warc_trec_id",
+                "warc_target_hostname",
+                "warc_target_path",
+                "warc_target_uri",
+                "page_rank",
+                "spam_rank",
+                "title_lang." + lang,
+                "meta_desc_lang." + lang
+        };
+    }
+
+    /**
+     * Retrieve the full body of a document.
+     *
+     * @param index index of the document
+     * @param docId document ID
+     * @param language document language
+     * @return document body or null if document does not exist
+     */
+    protected String fetchFullBody(String index, String docId, String language)
+    {
+        final String field = "body_lang." + language;
+        final GetResponse response = ClientManager.getIndexBreaker(index).call(() ->
+                getClient(ClientManager.Workload.LOOKUP).prepareGet(index, "warcrecord", docId)
+                        .setFetchSource(field, null)
+                        .get());
+        if (!response.isExists()) {
+            return null;
+        }
+        return new LazySource(response.getSourceAsBytesRef(), Collections.singleton(field)).getString(field);
+    }
+
+    /**
+     * @return result rendering mode
+     */
+    public RenderingMode getRenderingMode()
+    {
+        return mRenderingMode;
+    }
+
+    /**
+     * Set result rendering mode. Only document fields needed for this mode will be retrieved.
+     *
+     * @param renderingMode result rendering mode
+     */
+    public void setRenderingMode(RenderingMode renderingMode)
+    {
+        mRenderingMode = renderingMode;
     }
 
     /**
@@ -229,7 +699,7 @@ public abstract class SearchProvider extends IndexRetrievalOperator
      */
     public void setSearchLanguage(String language)
     {
-        mSearchLanguage = language.length() == 2 ? language.toLowerCase() : "en";
+        mSearchLanguage = SearchProfile.resolveLanguage(language);
     }
 
     /**
@@ -248,6 +718,53 @@ public abstract class SearchProvider extends IndexRetrievalOperator
         mGroupByHostname = groupByHostname;
     }
 
+    /**
+     * @return whether to collapse results by hostname on the server side
+     */
+    public boolean isCollapseByHostname()
+    {
+        return mCollapseByHostname;
+    }
+
+    /**
+     * Collapse results by hostname on the server side. Each page will then contain
+     * results from different hosts with up to {@link #getHostGroupSize()} results per host.
+     * Only effective if {@link #isGroupByHostname()} is true.
+     *
+     * @param collapseByHostname whether to collapse results by hostname
+     */
+    public void setCollapseByHostname(boolean collapseByHostname)
+    {
+        mCollapseByHostname = collapseByHostname;
+    }
+
+    /**
+     * @return maximum number of results per host if results are collapsed by hostname
+     */
+    public int getHostGroupSize()
+    {
+        return mHostGroupSize;
+    }
+
+    /**
+     * @param hostGroupSize maximum number of results per host if results are collapsed by hostname
+     */
+    public void setHostGroupSize(int hostGroupSize)
+    {
+        mHostGroupSize = Math.max(1, hostGroupSize);
+    }
+
+    /**
+     * Normalize a user query string by trimming it and collapsing runs of white space.
+     *
+     * @param query user query string
+     * @return normalized query string
+     */
+    protected String normalizeQuery(String query)
+    {
+        return query.trim().replaceAll("\\s+", " ");
+    }
+
     /**
      * Helper function to localize field names according to the current search language.
      *
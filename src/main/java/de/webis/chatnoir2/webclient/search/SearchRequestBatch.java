@@ -0,0 +1,114 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Batch of search requests which are sent to the cluster as a single multi search request.
+ *
+ * Search providers with an attached batch (see {@link SearchProvider#setRequestBatch(SearchRequestBatch)})
+ * queue their requests instead of sending them right away. Queued requests are sent once
+ * {@link #execute()} is called. Requests which are added after the batch has been executed
+ * (e.g. follow-up requests of multi-phase searches) are sent individually.
+ */
+public class SearchRequestBatch extends Configured
+{
+    private final List<SearchRequestBuilder> mRequests = new ArrayList<>();
+    private final List<CompletableFuture<SearchResponse>> mFutures = new ArrayList<>();
+    private boolean mExecuted = false;
+
+    /**
+     * Add a search request to this batch.
+     *
+     * @param requestBuilder configured search request
+     * @return future that completes with the search response once the batch has been executed
+     */
+    public synchronized CompletableFuture<SearchResponse> add(SearchRequestBuilder requestBuilder)
+    {
+        final CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        if (mExecuted) {
+            requestBuilder.execute(ActionListener.wrap(future::complete, future::completeExceptionally));
+            return future;
+        }
+
+        mRequests.add(requestBuilder);
+        mFutures.add(future);
+        return future;
+    }
+
+    /**
+     * @return number of queued requests
+     */
+    public synchronized int size()
+    {
+        return mRequests.size();
+    }
+
+    /**
+     * Send all queued requests to the cluster as one multi search request.
+     * Subsequent calls have no effect.
+     */
+    public synchronized void execute()
+    {
+        if (mExecuted) {
+            return;
+        }
+        mExecuted = true;
+
+        if (mRequests.isEmpty()) {
+            return;
+        }
+
+        final List<CompletableFuture<SearchResponse>> futures = new ArrayList<>(mFutures);
+        final MultiSearchRequestBuilder multiSearch = getClient().prepareMultiSearch();
+        mRequests.forEach(multiSearch::add);
+        mRequests.clear();
+        mFutures.clear();
+
+        multiSearch.execute(ActionListener.wrap(response -> {
+            MultiSearchResponse.Item[] items = response.getResponses();
+            for (int i = 0; i < futures.size(); ++i) {
+                if (i >= items.length) {
+                    futures.get(i).completeExceptionally(new IllegalStateException("Missing multi search response"));
+                } else if (items[i].isFailure()) {
+                    futures.get(i).completeExceptionally(items[i].getFailure());
+                } else {
+                    futures.get(i).complete(items[i].getResponse());
+                }
+            }
+        }, e -> futures.forEach(f -> f.completeExceptionally(e))));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of search requests.
+ *
+ * Concurrent requests with the same canonical key (see {@link SearchResultCache#getKey})
+ * are coalesced, so that only one request per key is sent to the cluster at any time.
+ * All callers waiting for the same key share its {@link SearchResponse}.
+ */
+public class SearchRequestCoalescer
+{
+    private static SearchRequestCoalescer sInstance = null;
+
+    /**
+     * Pending requests by canonical request key.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<SearchResponse>> mInFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+
+    private SearchRequestCoalescer()
+    {
+    }
+
+    /**
+     * @return singleton coalescer instance
+     */
+    public static synchronized SearchRequestCoalescer getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new SearchRequestCoalescer();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Execute a search request unless an identical request is already in flight.
+     *
+     * The returned future is private to the caller, so completing or cancelling it
+     * does not affect other callers waiting for the same response.
+     *
+     * @param key canonical request key
+     * @param requestSupplier supplier which sends the actual request
+     * @return future that completes with the (shared) search response
+     */
+    public CompletableFuture<SearchResponse> execute(String key, Supplier<CompletableFuture<SearchResponse>> requestSupplier)
+    {
+        mRequests.incrementAndGet();
+
+        final CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        final CompletableFuture<SearchResponse> pending = mInFlight.putIfAbsent(key, future);
+        if (null != pending) {
+            mCoalesced.incrementAndGet();
+            return pending.thenApply(response -> response);
+        }
+
+        try {
+            requestSupplier.get().whenComplete((response, throwable) -> {
+                mInFlight.remove(key, future);
+                if (null != throwable) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(response);
+                }
+            });
+        } catch (RuntimeException e) {
+            mInFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+
+        return future.thenApply(response -> response);
+    }
+
+    /**
+     * Get coalescing statistics.
+     *
+     * @return map of statistics counters
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long requests = mRequests.get();
+        long coalesced = mCoalesced.get();
+        stats.put("in_flight", mInFlight.size());
+        stats.put("requests", requests);
+        stats.put("coalesced", coalesced);
+        stats.put("coalesced_ratio", requests > 0 ? (double) coalesced / requests : 0.0);
+        return stats;
+    }
+}
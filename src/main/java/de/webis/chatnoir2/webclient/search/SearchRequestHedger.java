@@ -0,0 +1,283 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedged execution of search requests to cut tail latency.
+ *
+ * If a search request has not been answered after a configured percentile of recent
+ * request latencies, a duplicate request with a different routing preference is sent,
+ * so that it is likely served by other shard copies. The first response wins.
+ * The extra load caused by hedging is capped by a token bucket which is refilled
+ * by a fixed fraction of each regular request.
+ */
+public class SearchRequestHedger extends Configured
+{
+    private static SearchRequestHedger sInstance = null;
+
+    private volatile boolean mEnabled;
+    private volatile double mPercentile;
+    private volatile long mMinDelay;
+    private volatile double mMaxExtraLoad;
+    private volatile double mMaxTokens;
+
+    /**
+     * Ring buffer of recent request latencies in milliseconds.
+     */
+    private final long[] mLatencies;
+    private long mLatencyCount = 0;
+    private volatile long mHedgeDelay = -1;
+    private double mTokens = 0.0;
+
+    private final ScheduledExecutorService mScheduler;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mHedged = new AtomicLong();
+    private final AtomicLong mHedgeWins = new AtomicLong();
+    private final AtomicLong mThrottled = new AtomicLong();
+
+    private SearchRequestHedger()
+    {
+        loadConfig(getConf());
+        addConfigListener(this::loadConfig);
+        mLatencies = new long[Math.max(10, getConf().getInteger("hedging.window", 1000))];
+
+        mScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatnoir2-search-hedger");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Read hedging limits from the configuration.
+     * The size of the latency window is fixed at construction time.
+     *
+     * @param conf configuration
+     */
+    private void loadConfig(ConfigLoader.Config conf)
+    {
+        mEnabled      = conf.getBoolean("hedging.enabled", false);
+        mPercentile   = Math.min(100.0, Math.max(1.0, conf.getDouble("hedging.percentile", 95.0)));
+        mMinDelay     = conf.getLong("hedging.min_delay", 20L);
+        mMaxExtraLoad = Math.max(0.0, conf.getDouble("hedging.max_extra_load", 0.05));
+        mMaxTokens    = Math.max(1.0, conf.getDouble("hedging.max_burst", 10.0));
+    }
+
+    /**
+     * @return singleton hedger instance
+     */
+    public static synchronized SearchRequestHedger getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new SearchRequestHedger();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return whether hedging is enabled in the configuration
+     */
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+    /**
+     * Send a search request and hedge it with a duplicate request if it is slow.
+     * The Elasticsearch transport client cannot abort a running search on the
+     * cluster, so the slower request is abandoned and its response discarded.
+     *
+     * @param request search request
+     * @return future that completes with the first response
+     */
+    public CompletableFuture<SearchResponse> execute(SearchRequest request)
+    {
+        mRequests.incrementAndGet();
+        addTokens();
+
+        final CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        getClient().search(request, new HedgeListener(future, pending, false));
+
+        final long delay = mHedgeDelay;
+        if (delay < 0) {
+            return future;
+        }
+
+        final ScheduledFuture<?> timer = mScheduler.schedule(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            if (!takeToken()) {
+                mThrottled.incrementAndGet();
+                return;
+            }
+            // do not hedge a request which has already failed
+            if (pending.getAndUpdate(p -> p > 0 ? p + 1 : p) == 0) {
+                return;
+            }
+
+            mHedged.incrementAndGet();
+            getClient().search(copyRequest(request), new HedgeListener(future, pending, true));
+        }, delay, TimeUnit.MILLISECONDS);
+        future.whenComplete((response, e) -> timer.cancel(false));
+
+        return future;
+    }
+
+    /**
+     * Create a duplicate of a search request with a different routing preference.
+     *
+     * @param request original request
+     * @return duplicate request
+     */
+    private static SearchRequest copyRequest(SearchRequest request)
+    {
+        String preference = null != request.preference() ? request.preference() : "";
+        // special preferences such as _prefer_nodes cannot be varied, use random copies instead
+        return new SearchRequest(request.indices(), request.source())
+                .types(request.types())
+                .routing(request.routing())
+                .preference(preference.startsWith("_") ? null : preference + "-hedge")
+                .searchType(request.searchType())
+                .requestCache(request.requestCache())
+                .indicesOptions(request.indicesOptions());
+    }
+
+    /**
+     * Record the latency of a successful request and update the hedging delay.
+     *
+     * @param latency request latency in milliseconds
+     */
+    private synchronized void recordLatency(long latency)
+    {
+        mLatencies[(int) (mLatencyCount % mLatencies.length)] = latency;
+        ++mLatencyCount;
+
+        // recompute percentile only every few requests and only with enough samples
+        if (mLatencyCount < mLatencies.length / 10 || mLatencyCount % 20 != 0) {
+            return;
+        }
+        long[] sorted = Arrays.copyOf(mLatencies, (int) Math.min(mLatencyCount, mLatencies.length));
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(mPercentile / 100.0 * sorted.length) - 1;
+        mHedgeDelay = Math.max(mMinDelay, sorted[Math.max(0, index)]);
+    }
+
+    /**
+     * Refill the hedging budget by the fraction of one request that may be hedged.
+     */
+    private synchronized void addTokens()
+    {
+        mTokens = Math.min(mMaxTokens, mTokens + mMaxExtraLoad);
+    }
+
+    /**
+     * @return true if the hedging budget allows another duplicate request
+     */
+    private synchronized boolean takeToken()
+    {
+        if (mTokens < 1.0) {
+            return false;
+        }
+        mTokens -= 1.0;
+        return true;
+    }
+
+    /**
+     * Get hedging statistics.
+     *
+     * @return map of statistics counters
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long requests = mRequests.get();
+        stats.put("enabled", mEnabled);
+        stats.put("delay", mHedgeDelay);
+        stats.put("requests", requests);
+        stats.put("hedged", mHedged.get());
+        stats.put("hedge_wins", mHedgeWins.get());
+        stats.put("throttled", mThrottled.get());
+        stats.put("extra_load", requests > 0 ? (double) mHedged.get() / requests : 0.0);
+        return stats;
+    }
+
+    /**
+     * Listener which completes the shared future with the first response
+     * or with a failure once all requests have failed.
+     */
+    private class HedgeListener implements ActionListener<SearchResponse>
+    {
+        private final CompletableFuture<SearchResponse> mFuture;
+        private final AtomicInteger mPending;
+        private final boolean mHedge;
+        private final long mStartTime = System.currentTimeMillis();
+
+        HedgeListener(CompletableFuture<SearchResponse> future, AtomicInteger pending, boolean hedge)
+        {
+            mFuture = future;
+            mPending = pending;
+            mHedge = hedge;
+        }
+
+        @Override
+        public void onResponse(SearchResponse response)
+        {
+            recordLatency(System.currentTimeMillis() - mStartTime);
+            if (mFuture.complete(response) && mHedge) {
+                mHedgeWins.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e)
+        {
+            if (mPending.decrementAndGet() == 0) {
+                mFuture.completeExceptionally(e);
+            }
+        }
+    }
+}
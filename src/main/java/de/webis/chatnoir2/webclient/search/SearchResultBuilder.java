@@ -25,8 +25,6 @@
 
 package de.webis.chatnoir2.webclient.search;
 
-import de.webis.chatnoir2.webclient.resources.ConfigLoader;
-import de.webis.chatnoir2.webclient.util.Configured;
 import org.apache.lucene.search.Explanation;
 import org.elasticsearch.common.xcontent.ToXContent;
 
@@ -35,6 +33,7 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.function.Supplier;
 
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
@@ -71,22 +70,21 @@ public class SearchResultBuilder
 
     public SearchResultBuilder index(String index)
     {
-        String displayIndex = index;
-        ConfigLoader.Config[] conf = Configured.getConf().getArray("cluster.index_aliases");
-        if (conf.length != 0) {
-            for (ConfigLoader.Config c : conf) {
-                if (c.getString("index", "").equals(index)) {
-                    index = c.getString("alias", "");
-                    if (c.contains("display_name")) {
-                        displayIndex = c.getString("display_name");
-                    }
-
-                    break;
-                }
-            }
-        }
-        mSearchResult.mIndex = index;
-        mSearchResult.mDisplayIndex = displayIndex;
+        return index(index, IndexRegistry.getInstance().getSnapshot());
+    }
+
+    /**
+     * Set result index and replace concrete index names with their aliases and display names.
+     *
+     * @param index index name
+     * @param indices index registry snapshot to use for alias lookups
+     */
+    public SearchResultBuilder index(String index, IndexRegistry.Snapshot indices)
+    {
+        String alias = indices.getAlias(index);
+        String displayIndex = indices.getDisplayName(index);
+        mSearchResult.mIndex = null != alias ? alias : index;
+        mSearchResult.mDisplayIndex = null != displayIndex ? displayIndex : index;
         return this;
     }
 
@@ -150,6 +148,15 @@ public class SearchResultBuilder
         return this;
     }
 
+    /**
+     * Set a supplier for retrieving the full body lazily on first access.
+     */
+    public SearchResultBuilder fullBody(Supplier<String> fullBodySupplier)
+    {
+        mSearchResult.setFullBody(fullBodySupplier);
+        return this;
+    }
+
     /**
      * Whether displaying a "more like this" or "more from this host" link is suggested
      */
@@ -193,6 +200,7 @@ public class SearchResultBuilder
         private String mTargetUri = "";
         private String mSnippet = "";
         private String mFullBody = null;
+        private Supplier<String> mFullBodySupplier = null;
         private boolean mMoreSuggested = false;
         private boolean mGroupingSuggested = false;
         private Explanation mExplanation = null;
@@ -363,14 +371,30 @@ public class SearchResultBuilder
         }
 
         @CheckForNull
-        public String fullBody()
+        public synchronized String fullBody()
         {
+            if (null != mFullBodySupplier) {
+                mFullBody = mFullBodySupplier.get();
+                mFullBodySupplier = null;
+            }
             return mFullBody;
         }
 
-        public void setFullBody(@Nullable String fullBody)
+        public synchronized void setFullBody(@Nullable String fullBody)
         {
             mFullBody = fullBody;
+            mFullBodySupplier = null;
+        }
+
+        /**
+         * Set a supplier for retrieving the full body lazily on first access.
+         *
+         * @param fullBodySupplier full body supplier
+         */
+        public synchronized void setFullBody(Supplier<String> fullBodySupplier)
+        {
+            mFullBody = null;
+            mFullBodySupplier = fullBodySupplier;
         }
 
         /**
@@ -0,0 +1,266 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.CacheManager;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.apache.shiro.cache.Cache;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local cache for search responses.
+ *
+ * Responses are keyed by the canonical form of the search request, which
+ * contains the effective indices and the fully assembled query (including language,
+ * from / size and explain settings). Responses without any hits are cached separately
+ * for a shorter time. Entries are no longer served as soon as one of the searched indices changes,
+ * except as a fallback while the cluster is unavailable.
+ * Cache sizes and TTLs are configured in <code>ehcache.xml</code>.
+ */
+public class SearchResultCache extends Configured
+{
+    /**
+     * Name of EH cache for search responses.
+     */
+    private static final String CACHE_NAME = SearchResultCache.class.getName() + "-0-results";
+
+    /**
+     * Name of EH cache for search responses without hits.
+     */
+    private static final String NEGATIVE_CACHE_NAME = SearchResultCache.class.getName() + "-0-empty";
+
+    private static SearchResultCache sInstance = null;
+
+    private final Cache<String, Entry> mCache;
+    private final Cache<String, Entry> mNegativeCache;
+    private volatile boolean mEnabled;
+
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mNegativeHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mInvalidations = new AtomicLong();
+    private final AtomicLong mStaleHits = new AtomicLong();
+
+    private SearchResultCache()
+    {
+        CacheManager cacheManager = new CacheManager();
+        mCache = cacheManager.getCache(CACHE_NAME);
+        mNegativeCache = cacheManager.getCache(NEGATIVE_CACHE_NAME);
+        mEnabled = getConf().getBoolean("result_cache.enabled", true);
+        addConfigListener(conf -> {
+            // cached results may have been ranked with outdated search profiles
+            mEnabled = conf.getBoolean("result_cache.enabled", true);
+            clear();
+        });
+    }
+
+    /**
+     * @return singleton cache instance
+     */
+    public static synchronized SearchResultCache getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new SearchResultCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return whether result caching is enabled
+     */
+    public boolean isEnabled()
+    {
+        return mEnabled;
+    }
+
+    /**
+     * Generate canonical cache key for a search request.
+     *
+     * @param request search request
+     * @return cache key
+     */
+    public static String getKey(SearchRequest request)
+    {
+        return String.join(",", request.indices()) + "|" + request.source();
+    }
+
+    /**
+     * Look up cached response for a search request.
+     *
+     * @param key canonical request key
+     * @param indices searched indices
+     * @return cached response or null if there is no valid cached response
+     */
+    public SearchResponse get(String key, String[] indices)
+    {
+        return get(key, IndexVersionTracker.getInstance().getVersion(indices));
+    }
+
+    /**
+     * Look up cached response for a search request.
+     * Responses cached for a different index version are treated as misses, but kept until
+     * they expire, so they can still be served by {@link #getStale(String)} while the cluster
+     * is unavailable. They are replaced as soon as a fresh response is cached.
+     *
+     * @param key canonical request key
+     * @param indexVersion current version token of the searched indices
+     * @return cached response or null if there is no valid cached response
+     */
+    public SearchResponse get(String key, String indexVersion)
+    {
+        Entry entry = mCache.get(key);
+        boolean negative = false;
+        if (null == entry) {
+            entry = mNegativeCache.get(key);
+            negative = true;
+        }
+
+        if (null == entry) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        if (!entry.mIndexVersion.equals(indexVersion)) {
+            // indices have changed
+            mInvalidations.incrementAndGet();
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        (negative ? mNegativeHits : mHits).incrementAndGet();
+        return entry.mResponse;
+    }
+
+    /**
+     * Look up a cached response for a search request, even if the searched indices have changed
+     * since it was cached. Used as a fallback when the cluster is unavailable.
+     *
+     * @param key canonical request key
+     * @return cached response or null if there is none
+     */
+    public SearchResponse getStale(String key)
+    {
+        Entry entry = mCache.get(key);
+        if (null == entry) {
+            entry = mNegativeCache.get(key);
+        }
+        if (null == entry) {
+            return null;
+        }
+
+        mStaleHits.incrementAndGet();
+        return entry.mResponse;
+    }
+
+    /**
+     * Add a search response to the cache.
+     * Timed out or partial responses will not be cached.
+     *
+     * @param key canonical request key
+     * @param indices searched indices
+     * @param response search response
+     */
+    public void put(String key, String[] indices, SearchResponse response)
+    {
+        put(key, IndexVersionTracker.getInstance().getVersion(indices), response);
+    }
+
+    /**
+     * Add a search response to the cache.
+     * Timed out or partial responses will not be cached.
+     *
+     * @param key canonical request key
+     * @param indexVersion current version token of the searched indices
+     * @param response search response
+     */
+    public void put(String key, String indexVersion, SearchResponse response)
+    {
+        if (response.isTimedOut() || response.getFailedShards() > 0) {
+            return;
+        }
+
+        Entry entry = new Entry(response, indexVersion);
+        // replace outdated entries which may still be kept in the other cache
+        if (0 == response.getHits().getTotalHits()) {
+            mNegativeCache.put(key, entry);
+            mCache.remove(key);
+        } else {
+            mCache.put(key, entry);
+            mNegativeCache.remove(key);
+        }
+    }
+
+    /**
+     * Remove all cached responses.
+     */
+    public void clear()
+    {
+        mCache.clear();
+        mNegativeCache.clear();
+    }
+
+    /**
+     * Get cache statistics.
+     *
+     * @return map of statistics counters
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = mHits.get() + mNegativeHits.get();
+        long misses = mMisses.get();
+        stats.put("enabled", mEnabled);
+        stats.put("size", mCache.size());
+        stats.put("negative_size", mNegativeCache.size());
+        stats.put("hits", mHits.get());
+        stats.put("negative_hits", mNegativeHits.get());
+        stats.put("misses", misses);
+        stats.put("invalidations", mInvalidations.get());
+        stats.put("stale_hits", mStaleHits.get());
+        stats.put("hit_ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        return stats;
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static class Entry
+    {
+        private final SearchResponse mResponse;
+        private final String mIndexVersion;
+
+        Entry(SearchResponse response, String indexVersion)
+        {
+            mResponse = response;
+            mIndexVersion = indexVersion;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.search;
+
+import de.webis.chatnoir2.webclient.util.ClientManager;
+import de.webis.chatnoir2.webclient.util.Configured;
+import org.elasticsearch.action.admin.indices.stats.CommonStats;
+import org.elasticsearch.index.cache.query.QueryCacheStats;
+import org.elasticsearch.index.cache.request.RequestCacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reports hit ratios of the Elasticsearch shard request cache and query (filter) cache
+ * for the searched indices.
+ *
+ * Besides the cluster-wide totals, which include all hits since the shards were started,
+ * the hit ratio since the previous call is reported, so that the effect of changes
+ * in query shape or routing preference becomes visible immediately.
+ */
+public class ShardCacheMonitor extends Configured
+{
+    private static ShardCacheMonitor sInstance = null;
+
+    private long mRequestCacheHits = -1;
+    private long mRequestCacheMisses = -1;
+    private long mQueryCacheHits = -1;
+    private long mQueryCacheMisses = -1;
+
+    private ShardCacheMonitor()
+    {
+    }
+
+    /**
+     * @return singleton monitor instance
+     */
+    public static synchronized ShardCacheMonitor getInstance()
+    {
+        if (null == sInstance) {
+            sInstance = new ShardCacheMonitor();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Retrieve current cache statistics from the cluster.
+     *
+     * @return map of statistics counters
+     */
+    public synchronized Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        CommonStats total;
+        try {
+            total = getClient(ClientManager.Workload.BULK).admin().indices()
+                    .prepareStats(getConf().getStringArray("cluster.indices"))
+                    .clear()
+                    .setRequestCache(true)
+                    .setQueryCache(true)
+                    .get().getTotal();
+        } catch (Exception e) {
+            getLogger().warn("Failed to retrieve shard cache statistics: " + e.getMessage());
+            stats.put("error", e.getMessage());
+            return stats;
+        }
+
+        RequestCacheStats requestCache = total.getRequestCache();
+        Map<String, Object> requestCacheStats = new LinkedHashMap<>();
+        requestCacheStats.put("memory_size_in_bytes", requestCache.getMemorySizeInBytes());
+        requestCacheStats.put("evictions", requestCache.getEvictions());
+        addHitRatios(requestCacheStats, requestCache.getHitCount(), requestCache.getMissCount(),
+                mRequestCacheHits, mRequestCacheMisses);
+        mRequestCacheHits = requestCache.getHitCount();
+        mRequestCacheMisses = requestCache.getMissCount();
+        stats.put("request_cache", requestCacheStats);
+
+        QueryCacheStats queryCache = total.getQueryCache();
+        Map<String, Object> queryCacheStats = new LinkedHashMap<>();
+        queryCacheStats.put("memory_size_in_bytes", queryCache.getMemorySizeInBytes());
+        queryCacheStats.put("cache_size", queryCache.getCacheSize());
+        queryCacheStats.put("evictions", queryCache.getEvictions());
+        addHitRatios(queryCacheStats, queryCache.getHitCount(), queryCache.getMissCount(),
+                mQueryCacheHits, mQueryCacheMisses);
+        mQueryCacheHits = queryCache.getHitCount();
+        mQueryCacheMisses = queryCache.getMissCount();
+        stats.put("query_cache", queryCacheStats);
+
+        return stats;
+    }
+
+    /**
+     * Add total hit ratio and hit ratio since the last snapshot to a statistics map.
+     *
+     * @param stats statistics map
+     * @param hits current total hit count
+     * @param misses current total miss count
+     * @param lastHits hit count of the last snapshot (negative if there is none)
+     * @param lastMisses miss count of the last snapshot (negative if there is none)
+     */
+    private static void addHitRatios(Map<String, Object> stats, long hits, long misses, long lastHits, long lastMisses)
+    {
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hit_ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+
+        if (lastHits < 0 || hits < lastHits || misses < lastMisses) {
+            // no previous snapshot or shards were restarted
+            stats.put("recent_hit_ratio", null);
+            return;
+        }
+        long recentHits = hits - lastHits;
+        long recentMisses = misses - lastMisses;
+        stats.put("recent_hit_ratio", recentHits + recentMisses > 0 ?
+                (double) recentHits / (recentHits + recentMisses) : 0.0);
+    }
+}
@@ -25,21 +25,45 @@
 
 package de.webis.chatnoir2.webclient.search;
 
-import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import de.webis.chatnoir2.webclient.search.query.ParsedQuery;
+import de.webis.chatnoir2.webclient.search.query.QueryNode;
+import de.webis.chatnoir2.webclient.search.query.QueryParser;
+import de.webis.chatnoir2.webclient.util.LangDetector;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.common.lucene.search.function.FieldValueFactorFunction;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.elasticsearch.common.unit.Fuzziness;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.index.query.*;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.index.query.functionscore.FieldValueFactorFunctionBuilder;;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.SearchHits;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.collapse.CollapseBuilder;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
 import org.elasticsearch.search.fetch.subphase.highlight.HighlightBuilder;
+import org.elasticsearch.search.internal.InternalSearchResponse;
 import org.elasticsearch.search.rescore.QueryRescoreMode;
 import org.elasticsearch.search.rescore.QueryRescorerBuilder;
 import org.elasticsearch.search.rescore.RescoreBuilder;
+import org.elasticsearch.search.suggest.Suggest;
+import org.elasticsearch.search.suggest.SuggestBuilder;
+import org.elasticsearch.search.suggest.SuggestBuilders;
+import org.elasticsearch.search.suggest.phrase.DirectCandidateGeneratorBuilder;
+import org.elasticsearch.search.suggest.phrase.PhraseSuggestion;
+import org.elasticsearch.search.suggest.phrase.PhraseSuggestionBuilder;
 
 import javax.management.Query;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 
 
 /**
@@ -52,7 +76,7 @@ public class SimpleSearch extends SearchProvider
     /**
      * Elasticsearch response object of the last search.
      */
-    private SearchResponse mResponse = new SearchResponse();
+    private volatile SearchResponse mResponse = new SearchResponse();
 
     /**
      * Whether to add explanation to search results.
@@ -60,14 +84,49 @@ public class SimpleSearch extends SearchProvider
     private boolean mExplain = false;
 
     /**
-     * Config object shortcut.
+     * Parsed user query of the last search.
      */
-    private final ConfigLoader.Config mSimpleSearchConfig;
+    private ParsedQuery mParsedQuery = null;
+
+    /**
+     * Whether results of the last search have been collapsed by host name.
+     */
+    private volatile boolean mHostCollapsed = false;
+
+    /**
+     * Host names of the last collapsed search which have more results than shown.
+     */
+    private volatile Set<String> mHostsWithMoreResults = Collections.emptySet();
+
+    /**
+     * Degradation level of ranking features for the current search.
+     */
+    private DegradationController.Level mDegradationLevel = DegradationController.Level.NONE;
+
+    /**
+     * Known host name the current query navigates to (null if query is not navigational).
+     */
+    private String mNavigationalHost = null;
+
+    /**
+     * Name of the spelling suggestion in search requests.
+     */
+    private static final String SPELLING_SUGGESTION = "spelling";
+
+    /**
+     * Highlighting tags for corrected terms in spelling suggestions (replaced after escaping).
+     */
+    private static final String SPELLING_PRE_TAG = "\u0002";
+    private static final String SPELLING_POST_TAG = "\u0003";
+
+    /**
+     * Pattern for queries which look like host names.
+     */
+    private static final Pattern HOSTNAME_PATTERN = Pattern.compile("^[a-z0-9][a-z0-9-]*(\\.[a-z0-9-]+)*\\.[a-z]{2,}$");
 
     public SimpleSearch(final String[] indices)
     {
         super(indices);
-        mSimpleSearchConfig = getConf().get("search.default_simple");
     }
 
     public SimpleSearch()
@@ -94,27 +153,415 @@ public class SimpleSearch extends SearchProvider
     }
 
     @Override
-    public void doSearch(String query, int from, int size)
+    public CompletableFuture<SearchResponse> doSearchAsync(String query, int from, int size)
     {
         // Elasticsearch pagination limits
         from = Math.min(from, 10000);
         size = from + size <= 10000 ? size : 0;
 
-        mResponse = buildSearchRequest(new StringBuffer(query), from, size).get();
+        mDegradationLevel = DegradationController.getInstance().getLevel();
+        final String normalizedQuery = normalizeQuery(query);
+        SearchRequestBuilder requestBuilder = buildSearchRequest(new StringBuffer(normalizedQuery), from, size);
+        requestBuilder.setPreference(getPreference(normalizedQuery));
+        final SearchRequest request = requestBuilder.request();
+
+        mHostsWithMoreResults = Collections.emptySet();
+        mHostCollapsed = isCollapseByHostname() && isGroupByHostname() && null == request.source().collapse()
+                && !isNavigational();
+        if (mHostCollapsed) {
+            if (isRankedListApplicable(request, 0, size)) {
+                return executeCollapsedRankedListSearch(requestBuilder, from, size)
+                        .thenApply(response -> mResponse = response);
+            }
+            return executeCollapsedSearch(requestBuilder)
+                    .thenApply(response -> mResponse = response);
+        }
+
+        if (isRankedListApplicable(request, from, size)) {
+            return executeRankedListSearch(request, from, size)
+                    .thenApply(response -> mResponse = response);
+        }
+
+        return executeSearchRequest(requestBuilder)
+                .thenApply(response -> mResponse = response);
+    }
+
+    /**
+     * Check whether the given search request can be served from a ranked document list.
+     * This is the case for rescored searches whose requested results lie within the rescore window.
+     *
+     * @param request search request
+     * @param from first result to return
+     * @param size number of results to return
+     * @return true if a ranked list can be used
+     */
+    protected boolean isRankedListApplicable(SearchRequest request, int from, int size)
+    {
+        SearchSourceBuilder source = request.source();
+        return RankedListCache.getInstance().isEnabled()
+                && !isExplain()
+                && size > 0
+                && from + size <= getRescoreWindow()
+                && null != source.rescores() && !source.rescores().isEmpty()
+                && null == source.collapse();
+    }
+
+    /**
+     * Execute a search request in two phases: retrieve (or reuse) the ranked list of document IDs
+     * within the rescore window and then fetch only the documents of the requested page by ID.
+     *
+     * @param request fully configured search request
+     * @param from first result to return
+     * @param size number of results to return
+     * @return future that completes with the assembled search response
+     */
+    protected CompletableFuture<SearchResponse> executeRankedListSearch(SearchRequest request, int from, int size)
+    {
+        return getRankedList(request).thenCompose(ranking -> {
+            int end = Math.min(from + size, ranking.mList.size());
+            int[] ranks = new int[Math.max(0, end - from)];
+            for (int i = 0; i < ranks.length; ++i) {
+                ranks[i] = from + i;
+            }
+            return fetchRankedDocuments(request, ranking.mList, ranks, ranking.mTookInMillis);
+        });
+    }
+
+    /**
+     * Execute a search request with results collapsed by host name in rescored order.
+     * Groups are formed from the ranked document list of the rescore window, so that each page
+     * contains <code>size</code> different hosts with up to {@link #getHostGroupSize()} results each.
+     * Falls back to {@link #executeCollapsedSearch(SearchRequestBuilder)} if the requested page lies
+     * beyond the groups available within the rescore window.
+     *
+     * @param requestBuilder fully configured search request
+     * @param from first host group to return
+     * @param size number of host groups to return
+     * @return future that completes with the assembled search response
+     */
+    protected CompletableFuture<SearchResponse> executeCollapsedRankedListSearch(SearchRequestBuilder requestBuilder,
+                                                                                 int from, int size)
+    {
+        final SearchRequest request = requestBuilder.request();
+        return getRankedList(request).thenCompose(ranking -> {
+            final RankedListCache.RankedList list = ranking.mList;
+
+            // bucket ranked documents by host, preserving rescored order
+            LinkedHashMap<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < list.size(); ++i) {
+                String host = null != list.getHostname(i) ? list.getHostname(i) : "#" + i;
+                groups.computeIfAbsent(host, k -> new ArrayList<>()).add(i);
+            }
+
+            boolean listComplete = list.size() < getRescoreWindow() || list.size() >= list.getTotalHits();
+            if (from + size > groups.size() && !listComplete) {
+                return executeCollapsedSearch(requestBuilder);
+            }
+
+            List<Integer> ranks = new ArrayList<>();
+            Set<String> hostsWithMore = new HashSet<>();
+            int groupNum = 0;
+            for (Map.Entry<String, List<Integer>> group : groups.entrySet()) {
+                if (groupNum++ < from) {
+                    continue;
+                }
+                if (groupNum > from + size) {
+                    break;
+                }
+
+                List<Integer> groupRanks = group.getValue();
+                ranks.addAll(groupRanks.subList(0, Math.min(getHostGroupSize(), groupRanks.size())));
+                if (groupRanks.size() > getHostGroupSize()) {
+                    hostsWithMore.add(group.getKey());
+                }
+            }
+            mHostsWithMoreResults = hostsWithMore;
+
+            int[] rankArray = new int[ranks.size()];
+            for (int i = 0; i < rankArray.length; ++i) {
+                rankArray[i] = ranks.get(i);
+            }
+            return fetchRankedDocuments(request, list, rankArray, ranking.mTookInMillis);
+        });
+    }
+
+    /**
+     * Execute a search request with results collapsed by host name using Elasticsearch field
+     * collapsing with inner hits. Rescoring is not supported together with field collapsing,
+     * hence results are ranked by the pre-query only.
+     *
+     * @param requestBuilder fully configured search request
+     * @return future that completes with the flattened search response
+     */
+    protected CompletableFuture<SearchResponse> executeCollapsedSearch(SearchRequestBuilder requestBuilder)
+    {
+        final String innerHitsName = "host_group";
+        requestBuilder.request().source().clearRescorers();
+        requestBuilder.setCollapse(new CollapseBuilder("warc_target_hostname.raw")
+                .setInnerHits(new InnerHitBuilder()
+                        .setName(innerHitsName)
+                        .setSize(getHostGroupSize())
+                        .setFetchSourceContext(new FetchSourceContext(true, getSourceFields(), null))
+                        .setHighlightBuilder(buildFieldHighlighter())));
+
+        return executeSearchRequest(requestBuilder).thenApply(response -> {
+            List<SearchHit> hits = new ArrayList<>();
+            Set<String> hostsWithMore = new HashSet<>();
+            for (SearchHit hit : response.getHits()) {
+                SearchHits innerHits = null != hit.getInnerHits() ? hit.getInnerHits().get(innerHitsName) : null;
+                if (null == innerHits || innerHits.getHits().length == 0) {
+                    hits.add(hit);
+                    continue;
+                }
+
+                // inner hits include the collapsed top hit
+                for (SearchHit innerHit : innerHits) {
+                    if (null == innerHit.getShard()) {
+                        innerHit.shard(hit.getShard());
+                    }
+                    hits.add(innerHit);
+                }
+                SearchHitField hostField = hit.getField("warc_target_hostname.raw");
+                if (null != hostField && innerHits.getTotalHits() > innerHits.getHits().length) {
+                    final Object host = hostField.getValue();
+                    hostsWithMore.add(String.valueOf(host));
+                }
+            }
+            mHostsWithMoreResults = hostsWithMore;
+
+            InternalSearchResponse internalResponse = new InternalSearchResponse(
+                    new SearchHits(hits.toArray(new SearchHit[hits.size()]),
+                            response.getHits().getTotalHits(), response.getHits().getMaxScore()),
+                    null, response.getSuggest(), null, response.isTimedOut(), response.isTerminatedEarly(), 1);
+            return new SearchResponse(internalResponse, null,
+                    response.getTotalShards(),
+                    response.getSuccessfulShards(),
+                    response.getSkippedShards(),
+                    response.getTookInMillis(),
+                    response.getShardFailures());
+        });
+    }
+
+    /**
+     * Retrieve the ranked document list of the rescore window for a search request,
+     * either from the {@link RankedListCache} or by sending an ID-only ranking request.
+     *
+     * @param request fully configured search request
+     * @return future that completes with the ranked list
+     */
+    private CompletableFuture<Ranking> getRankedList(SearchRequest request)
+    {
+        final SearchSourceBuilder source = request.source();
+        final SearchRequestBuilder rankingRequest = getClient()
+                .prepareSearch(request.indices())
+                .setQuery(source.query())
+                .setFrom(0)
+                .setSize(getRescoreWindow())
+                .setFetchSource(false)
+                .addDocValueField("warc_target_hostname.raw")
+                .setTerminateAfter(source.terminateAfter())
+                .setTimeout(source.timeout())
+                .setPreference(request.preference())
+                .setRequestCache(getConf().getBoolean("cluster.request_cache", true))
+                .setProfile(false);
+        source.rescores().forEach(rankingRequest::addRescorer);
+
+        // the spelling suggester (first page only) is not part of the key, so all pages share one ranked list
+        final RankedListCache cache = RankedListCache.getInstance();
+        final String key = SearchResultCache.getKey(rankingRequest.request());
+        if (null != source.suggest()) {
+            rankingRequest.suggest(source.suggest());
+        }
+        final RankedListCache.RankedList cachedList = cache.get(key, request.indices());
+        if (null != cachedList) {
+            return CompletableFuture.completedFuture(new Ranking(cachedList, 0));
+        }
+
+        return SearchRequestCoalescer.getInstance()
+                .execute(key, () -> sendSearchRequest(rankingRequest))
+                .thenApply(response -> new Ranking(cache.put(key, request.indices(), response),
+                        response.getTookInMillis()));
+    }
+
+    /**
+     * Fetch documents and highlights for selected ranks of a ranked document list.
+     *
+     * @param request original search request (used for query, highlighting and routing)
+     * @param rankedList ranked document list
+     * @param ranks ranks of the documents to fetch in output order
+     * @param rankingTime time in milliseconds spent on ranking the query
+     * @return future that completes with the assembled search response
+     */
+    private CompletableFuture<SearchResponse> fetchRankedDocuments(SearchRequest request,
+                                                                   RankedListCache.RankedList rankedList,
+                                                                   int[] ranks, long rankingTime)
+    {
+        if (0 == ranks.length) {
+            return CompletableFuture.completedFuture(
+                    buildRankedResponse(rankedList, new SearchHit[0], null, rankingTime));
+        }
+
+        final SearchSourceBuilder source = request.source();
+        Set<String> indices = new HashSet<>();
+        IdsQueryBuilder idsQuery = QueryBuilders.idsQuery();
+        for (int rank : ranks) {
+            indices.add(rankedList.getIndex(rank));
+            idsQuery.addIds(rankedList.getId(rank));
+        }
+
+        // keep original query for highlighting, all ranked documents match it
+        SearchRequestBuilder fetchRequest = getClient()
+                .prepareSearch(indices.toArray(new String[indices.size()]))
+                .setQuery(QueryBuilders.boolQuery().must(source.query()).filter(idsQuery))
+                .setFrom(0)
+                .setSize(ranks.length)
+                .setTimeout(source.timeout())
+                .setPreference(request.preference())
+                .setFetchSource(getSourceFields(), null)
+                .setProfile(false);
+        if (null != source.highlighter()) {
+            fetchRequest.highlighter(source.highlighter());
+        }
+
+        return executeSearchRequest(fetchRequest).thenApply(response -> {
+            Map<String, SearchHit> hitMap = new HashMap<>();
+            for (SearchHit hit : response.getHits()) {
+                hitMap.put(hit.getIndex() + "/" + hit.getId(), hit);
+            }
+
+            // restore ranking order and final scores, skip documents which vanished in the meantime
+            // (hits are copied, since the fetch response may be shared via the result cache)
+            List<SearchHit> orderedHits = new ArrayList<>(ranks.length);
+            for (int rank : ranks) {
+                SearchHit hit = hitMap.get(rankedList.getIndex(rank) + "/" + rankedList.getId(rank));
+                if (null != hit) {
+                    hit = copyHit(hit);
+                    hit.score(rankedList.getScore(rank));
+                    orderedHits.add(hit);
+                }
+            }
+
+            return buildRankedResponse(rankedList, orderedHits.toArray(new SearchHit[orderedHits.size()]),
+                    response, rankingTime);
+        });
+    }
+
+    /**
+     * Create a deep copy of a search hit.
+     *
+     * @param hit search hit
+     * @return copied hit
+     */
+    private static SearchHit copyHit(SearchHit hit)
+    {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            hit.writeTo(out);
+            return SearchHit.readSearchHit(out.bytes().streamInput());
+        } catch (IOException e) {
+            throw new ElasticsearchException("Failed to copy search hit", e);
+        }
+    }
+
+    /**
+     * Assemble a search response from a ranked list and fetched hits.
+     *
+     * @param rankedList ranked document list
+     * @param hits fetched hits in ranking order
+     * @param fetchResponse response of the fetch request (may be null if nothing was fetched)
+     * @param rankingTime time in milliseconds spent on ranking the query
+     * @return assembled search response
+     */
+    private SearchResponse buildRankedResponse(RankedListCache.RankedList rankedList, SearchHit[] hits,
+                                               SearchResponse fetchResponse, long rankingTime)
+    {
+        InternalSearchResponse internalResponse = new InternalSearchResponse(
+                new SearchHits(hits, rankedList.getTotalHits(), rankedList.getMaxScore()),
+                null, rankedList.getSuggest(), null,
+                rankedList.isTimedOut() || (null != fetchResponse && fetchResponse.isTimedOut()),
+                rankedList.isTerminatedEarly(),
+                1);
+
+        if (null == fetchResponse) {
+            return new SearchResponse(internalResponse, null, 0, 0, 0, rankingTime, rankedList.getShardFailures());
+        }
+
+        // report failures of both phases
+        ShardSearchFailure[] shardFailures = rankedList.getShardFailures();
+        if (fetchResponse.getShardFailures().length > 0) {
+            shardFailures = Arrays.copyOf(shardFailures, shardFailures.length + fetchResponse.getShardFailures().length);
+            System.arraycopy(fetchResponse.getShardFailures(), 0, shardFailures,
+                    rankedList.getShardFailures().length, fetchResponse.getShardFailures().length);
+        }
+        return new SearchResponse(internalResponse, null,
+                fetchResponse.getTotalShards(),
+                fetchResponse.getSuccessfulShards(),
+                fetchResponse.getSkippedShards(),
+                rankingTime + fetchResponse.getTookInMillis(),
+                shardFailures);
     }
 
     @Override
     public List<SearchResultBuilder.SearchResult> getResults()
     {
+        if (mHostCollapsed) {
+            return markHostGroups(super.getResults());
+        }
         return groupResults(super.getResults());
     }
 
+    /**
+     * Mark host groups in a list of results collapsed by host name.
+     * Subsequent results of the same host are marked for grouping and the last
+     * result of a group suggests "more from this host" if the host has more results.
+     *
+     * @param results results collapsed by host name
+     * @return marked results
+     */
+    private List<SearchResultBuilder.SearchResult> markHostGroups(List<SearchResultBuilder.SearchResult> results)
+    {
+        for (int i = 0; i < results.size(); ++i) {
+            SearchResultBuilder.SearchResult result = results.get(i);
+            String host = result.targetHostname();
+            boolean sameAsPrevious = i > 0 && Objects.equals(results.get(i - 1).targetHostname(), host);
+            boolean sameAsNext = i < results.size() - 1 && Objects.equals(results.get(i + 1).targetHostname(), host);
+
+            result.setGroupingSuggested(sameAsPrevious);
+            result.setMoreSuggested(!sameAsNext && mHostsWithMoreResults.contains(host));
+        }
+        return results;
+    }
+
+    /**
+     * Ranked list together with the time spent on retrieving it.
+     */
+    private static class Ranking
+    {
+        private final RankedListCache.RankedList mList;
+        private final long mTookInMillis;
+
+        Ranking(RankedListCache.RankedList list, long tookInMillis)
+        {
+            mList = list;
+            mTookInMillis = tookInMillis;
+        }
+    }
+
     @Override
     protected SearchResponse getResponse()
     {
         return mResponse;
     }
 
+    /**
+     * Get the compiled search profile for the current search language.
+     *
+     * @return search profile
+     */
+    protected SearchProfile getSearchProfile()
+    {
+        return SearchProfile.get(SearchProfile.SIMPLE_SEARCH, getSearchLanguage());
+    }
+
     /**
      * Build search request including pre-query, rescorer, node limit, highlighters etc..
      *
@@ -125,6 +572,7 @@ public class SimpleSearch extends SearchProvider
      */
     protected SearchRequestBuilder buildSearchRequest(StringBuffer queryString, int from, int size)
     {
+        mNavigationalHost = null;
         SearchRequestBuilder requestBuilder = getClient()
                 .prepareSearch(getEffectiveIndices())
                 .setQuery(buildPreQuery(queryString))
@@ -132,9 +580,16 @@ public class SimpleSearch extends SearchProvider
                 .setSize(size)
                 .setExplain(isExplain())
                 .setTerminateAfter(getNodeLimit())
+                .setFetchSource(getSourceFields(), null)
                 .setProfile(false);
 
-        QueryRescorerBuilder rescorer = buildRescorer(buildRescoreQuery(queryString));
+        long timeout = getSearchTimeout();
+        if (timeout > 0) {
+            requestBuilder.setTimeout(TimeValue.timeValueMillis(timeout));
+        }
+
+        // navigational queries are fully ranked by the pre-query
+        QueryRescorerBuilder rescorer = isNavigational() ? null : buildRescorer(buildRescoreQuery(queryString));
         if (null != rescorer) {
             requestBuilder.setRescorer(rescorer, getRescoreWindow());
         }
@@ -144,9 +599,133 @@ public class SimpleSearch extends SearchProvider
             requestBuilder.highlighter(highlightBuilder);
         }
 
+        // spelling suggestions are only shown on the first page
+        SuggestBuilder spellingSuggester = 0 == from ? buildSpellingSuggester() : null;
+        if (null != spellingSuggester) {
+            requestBuilder.suggest(spellingSuggester);
+        }
+
         return requestBuilder;
     }
 
+    /**
+     * Build spelling suggester which is sent along with the search request.
+     * Suggestions are only requested for short plain keyword queries which look like they might
+     * be misspelled, i.e., which are not frequent queries known from the query log. Unless
+     * <tt>spelling.require_query_log</tt> is disabled, no suggestions are requested as long as
+     * no query log is available to tell frequent queries apart.
+     * If you override this method, you can return null to disable spelling suggestions.
+     *
+     * @return spelling suggester or null if no suggestion is needed
+     */
+    protected SuggestBuilder buildSpellingSuggester()
+    {
+        if (!getConf().getBoolean("spelling.enabled", true) || null == mParsedQuery || isNavigational()) {
+            return null;
+        }
+        final QuerySuggester querySuggester = QuerySuggester.getInstance();
+        if (!querySuggester.isReady() && getConf().getBoolean("spelling.require_query_log", true)) {
+            return null;
+        }
+
+        int numTerms = 0;
+        for (QueryNode node : mParsedQuery.getNodes()) {
+            if (node.getType() == QueryNode.Type.TERM) {
+                ++numTerms;
+            } else if (node.getType() != QueryNode.Type.FILTER) {
+                return null;
+            }
+        }
+        final String text = mParsedQuery.toQueryString();
+        if (0 == numTerms || numTerms > getConf().getInteger("spelling.max_terms", 4)
+                || querySuggester.isFrequentQuery(text)) {
+            return null;
+        }
+
+        final String field = getConf().getString("spelling.field", "title_lang.%lang%")
+                .replace("%lang%", getSearchLanguage());
+        PhraseSuggestionBuilder suggestion = SuggestBuilders.phraseSuggestion(field)
+                .text(text)
+                .size(1)
+                .maxErrors(getConf().getFloat("spelling.max_errors", 2.0f))
+                .confidence(getConf().getFloat("spelling.confidence", 1.0f))
+                .highlight(SPELLING_PRE_TAG, SPELLING_POST_TAG)
+                .addCandidateGenerator(new DirectCandidateGeneratorBuilder(field)
+                        .suggestMode(getConf().getString("spelling.suggest_mode", "popular")));
+        return new SuggestBuilder().addSuggestion(SPELLING_SUGGESTION, suggestion);
+    }
+
+    /**
+     * @return best spelling suggestion for the last search or null if there is none
+     */
+    private Suggest.Suggestion.Entry.Option getSpellingOption()
+    {
+        Suggest suggest = mResponse.getSuggest();
+        if (null == suggest) {
+            return null;
+        }
+        PhraseSuggestion suggestion = suggest.getSuggestion(SPELLING_SUGGESTION);
+        if (null == suggestion) {
+            return null;
+        }
+        for (PhraseSuggestion.Entry entry : suggestion.getEntries()) {
+            for (Suggest.Suggestion.Entry.Option option : entry.getOptions()) {
+                return option;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get corrected query for the last search ("did you mean"). Query filters
+     * of the original query are retained.
+     *
+     * @return suggested query or null if there is no suggestion
+     */
+    public String getSpellingSuggestion()
+    {
+        Suggest.Suggestion.Entry.Option option = getSpellingOption();
+        if (null == option || null == mParsedQuery) {
+            return null;
+        }
+        return appendQueryFilters(option.getText().string());
+    }
+
+    /**
+     * Get corrected query for the last search as HTML with corrected terms
+     * emphasized by <code>&lt;em&gt;</code> tags.
+     *
+     * @return HTML-escaped suggested query or null if there is no suggestion
+     */
+    public String getSpellingSuggestionHtml()
+    {
+        Suggest.Suggestion.Entry.Option option = getSpellingOption();
+        if (null == option || null == mParsedQuery) {
+            return null;
+        }
+        String text = null != option.getHighlighted() ? option.getHighlighted().string() : option.getText().string();
+        return StringEscapeUtils.escapeHtml(appendQueryFilters(text))
+                .replace(SPELLING_PRE_TAG, "<em>")
+                .replace(SPELLING_POST_TAG, "</em>");
+    }
+
+    /**
+     * Append field filters of the parsed query to a query string.
+     *
+     * @param queryString query string
+     * @return query string with field filters
+     */
+    private String appendQueryFilters(String queryString)
+    {
+        StringBuilder sb = new StringBuilder(queryString);
+        for (QueryNode node : mParsedQuery.getNodes()) {
+            if (node.getType() == QueryNode.Type.FILTER) {
+                sb.append(' ').append(node.toQueryString());
+            }
+        }
+        return sb.toString();
+    }
+
     /**
      * Build highlighter for highlighting search result snippets.
      * If you override this method, you can return null to disable highlighting.
@@ -157,7 +736,10 @@ public class SimpleSearch extends SearchProvider
     {
         return new HighlightBuilder()
                 .field("title_lang." + getSearchLanguage(), getTitleLength(), 1)
-                .field("body_lang." + getSearchLanguage(), getSnippetLength(), 1)
+                .field(new HighlightBuilder.Field("body_lang." + getSearchLanguage())
+                        .fragmentSize(getSnippetLength())
+                        .numOfFragments(1)
+                        .noMatchSize(getSnippetLength()))
                 .encoder("html");
     }
 
@@ -168,7 +750,19 @@ public class SimpleSearch extends SearchProvider
      */
     protected int getNodeLimit()
     {
-        return mSimpleSearchConfig.getInteger("node_limit", 200000);
+        return DegradationController.getInstance().getNodeLimit(mDegradationLevel, getSearchProfile().getNodeLimit());
+    }
+
+    /**
+     * Get latency budget for the search request. The budget configured in the search profile
+     * can only be narrowed by {@link #setTimeout(long)}.
+     *
+     * @return timeout in milliseconds (0 or less for no timeout)
+     */
+    @Override
+    protected long getSearchTimeout()
+    {
+        return narrowTimeout(getSearchProfile().getTimeout(), getTimeout());
     }
 
     /**
@@ -178,7 +772,24 @@ public class SimpleSearch extends SearchProvider
      */
     protected int getRescoreWindow()
     {
-        return mSimpleSearchConfig.getInteger("rescore_window", 400);
+        return DegradationController.getInstance().getRescoreWindow(mDegradationLevel,
+                getSearchProfile().getRescoreWindow());
+    }
+
+    /**
+     * @return degradation level of ranking features used for the current search
+     */
+    public DegradationController.Level getDegradationLevel()
+    {
+        return mDegradationLevel;
+    }
+
+    /**
+     * @return whether the current query has been answered by the navigational fast path
+     */
+    public boolean isNavigational()
+    {
+        return null != mNavigationalHost;
     }
 
     /**
@@ -196,7 +807,12 @@ public class SimpleSearch extends SearchProvider
             mainQuery.filter(queryStringFilter);
         }
 
-        mainQuery.filter(QueryBuilders.termQuery("lang", getSearchLanguage()));
+        mNavigationalHost = resolveNavigationalHost();
+        if (null != mNavigationalHost) {
+            return buildNavigationalQuery(mNavigationalHost);
+        }
+
+        mainQuery.filter(buildStaticFilter());
 
         if (!queryString.toString().trim().isEmpty()) {
             final SimpleQueryStringBuilder searchQuery = QueryBuilders.simpleQueryStringQuery(queryString.toString());
@@ -207,9 +823,8 @@ public class SimpleSearch extends SearchProvider
                             SimpleQueryStringFlag.NOT,
                             SimpleQueryStringFlag.WHITESPACE);
 
-            final ConfigLoader.Config[] mainFields = mSimpleSearchConfig.getArray("main_fields");
-            for (final ConfigLoader.Config field : mainFields) {
-                searchQuery.field(replaceLocalePlaceholders(field.getString("name", "")));
+            for (final String fieldName : getSearchProfile().getMainFieldNames()) {
+                searchQuery.field(fieldName);
             }
             mainQuery.must(searchQuery);
         } else {
@@ -217,12 +832,99 @@ public class SimpleSearch extends SearchProvider
             mainQuery.must(searchQuery);
         }
 
-        addFilters(mainQuery);
         addBoosts(mainQuery, true);
 
         return mainQuery;
     }
 
+    /**
+     * Build static filters (search language and configured range filters).
+     * Static filters are kept in one clause of stable shape, so they can be cached as a whole.
+     *
+     * @return static filter query
+     */
+    protected BoolQueryBuilder buildStaticFilter()
+    {
+        BoolQueryBuilder staticFilter = QueryBuilders.boolQuery().filter(QueryBuilders.termQuery("lang", getSearchLanguage()));
+        addFilters(staticFilter);
+        return staticFilter;
+    }
+
+    /**
+     * Resolve the parsed user query to a known host name if it is an obvious navigational query,
+     * i.e., a single term without filters which looks like and is known as a host name.
+     *
+     * @return host name or null if the query is not navigational
+     */
+    protected String resolveNavigationalHost()
+    {
+        if (null == mParsedQuery || !getConf().getBoolean("hostname_index.navigational_fast_path", true)
+                || !mParsedQuery.getFilters().isEmpty() || mParsedQuery.getNodes().size() != 1
+                || !(mParsedQuery.getNodes().get(0) instanceof QueryNode.Term)) {
+            return null;
+        }
+
+        String term = ((QueryNode.Term) mParsedQuery.getNodes().get(0)).getText().toLowerCase();
+        if (!HOSTNAME_PATTERN.matcher(term).matches()) {
+            return null;
+        }
+
+        HostnameIndex.Dictionary dictionary = HostnameIndex.getInstance().getDictionary();
+        return null != dictionary ? dictionary.resolve(term) : null;
+    }
+
+    /**
+     * Build cheap query for a navigational query, which retrieves pages of the requested host
+     * and ranks its front page first.
+     *
+     * @param host requested host name
+     * @return navigational query
+     */
+    protected QueryBuilder buildNavigationalQuery(String host)
+    {
+        BoolQueryBuilder query = QueryBuilders.boolQuery()
+                .filter(QueryBuilders.termQuery(HostnameIndex.FIELD, host))
+                .filter(buildStaticFilter())
+                .should(QueryBuilders.termQuery("warc_target_path.raw", "/").boost(100.0f));
+        return decorateFieldValueFactors(query);
+    }
+
+    /**
+     * Build fuzzy query for a main field. Fuzzy host name matches are resolved locally against
+     * the host name index into a terms query if the index is available.
+     *
+     * @param fieldName field name
+     * @param term query term
+     * @return fuzzy query or null if there is no matching term
+     */
+    protected QueryBuilder buildFuzzyQuery(String fieldName, String term)
+    {
+        HostnameIndex.Dictionary dictionary = HostnameIndex.FIELD.equals(fieldName) ?
+                HostnameIndex.getInstance().getDictionary() : null;
+        if (null == dictionary) {
+            return QueryBuilders.fuzzyQuery(fieldName, term).fuzziness(Fuzziness.AUTO);
+        }
+
+        int maxEdits = Fuzziness.AUTO.asDistance(term);
+        List<HostnameIndex.Candidate> candidates = dictionary.findFuzzy(term.toLowerCase(), maxEdits,
+                getConf().getInteger("hostname_index.max_fuzzy_candidates", 50));
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        // group candidates by edit distance and score them similar to a fuzzy query
+        BoolQueryBuilder fuzzyQuery = QueryBuilders.boolQuery();
+        Map<Integer, List<String>> hostsByDistance = new TreeMap<>();
+        for (HostnameIndex.Candidate c : candidates) {
+            hostsByDistance.computeIfAbsent(c.getDistance(), d -> new ArrayList<>()).add(c.getHost());
+        }
+        for (Map.Entry<Integer, List<String>> e : hostsByDistance.entrySet()) {
+            float boost = Math.max(0.1f, 1.0f - (float) e.getKey() / term.length());
+            fuzzyQuery.should(QueryBuilders.termsQuery(fieldName, e.getValue()).boost(boost));
+        }
+        return fuzzyQuery;
+    }
+
     /**
      * Build query rescorer used to run more expensive query on pre-query results.
      * If you override this method, you can return null to disable rescoring.
@@ -251,57 +953,45 @@ public class SimpleSearch extends SearchProvider
         final SimpleQueryStringBuilder simpleQuery = QueryBuilders.simpleQueryStringQuery(queryString.toString());
         simpleQuery.minimumShouldMatch("30%");
 
-        final ConfigLoader.Config[] mainFields = mSimpleSearchConfig.getArray("main_fields");
-
-        final List<Object[]> proximityFields = new ArrayList<>();
-        final List<String> fuzzyFields = new ArrayList<>();
-
-        for (final ConfigLoader.Config field : mainFields) {
-            simpleQuery.field(
-                    replaceLocalePlaceholders(field.getString("name", "")),
-                    field.getFloat("boost", 1.0f)).
-                    defaultOperator(Operator.AND).
-                    flags(SimpleQueryStringFlag.AND,
-                            SimpleQueryStringFlag.OR,
-                            SimpleQueryStringFlag.NOT,
-                            SimpleQueryStringFlag.PHRASE,
-                            SimpleQueryStringFlag.PREFIX,
-                            SimpleQueryStringFlag.WHITESPACE);
-
-            // add field to list of proximity-aware fields for later processing
-            if (field.getBoolean("proximity_matching", false)) {
-                proximityFields.add(new Object[]{
-                        replaceLocalePlaceholders(field.getString("name")),
-                        field.getInteger("proximity_slop", 1),
-                        field.getFloat("proximity_boost", 1.0f)
-                });
-            }
-
-            if (field.getBoolean("fuzzy_matching", false)) {
-                fuzzyFields.add(field.getString("name"));
-            }
+        final List<SearchProfile.Field> mainFields = getSearchProfile().getMainFields();
+        simpleQuery.defaultOperator(Operator.AND).
+                flags(SimpleQueryStringFlag.AND,
+                        SimpleQueryStringFlag.OR,
+                        SimpleQueryStringFlag.NOT,
+                        SimpleQueryStringFlag.PHRASE,
+                        SimpleQueryStringFlag.PREFIX,
+                        SimpleQueryStringFlag.WHITESPACE);
+        for (final SearchProfile.Field field : mainFields) {
+            simpleQuery.field(field.getName(), field.getBoost());
         }
 
         // assemble main query
         BoolQueryBuilder mainQuery = QueryBuilders.boolQuery();
 
         // proximity matching
-        for (Object[] o : proximityFields) {
+        for (final SearchProfile.Field field : mainFields) {
+            if (!field.isProximityMatching() || mDegradationLevel.includes(DegradationController.Level.NO_PROXIMITY)) {
+                continue;
+            }
             final MatchPhraseQueryBuilder proximityQuery = QueryBuilders.matchPhraseQuery(
-                    replaceLocalePlaceholders((String) o[0]),
+                    field.getName(),
                     queryString.toString()
             );
             proximityQuery
-                    .slop((Integer) o[1])
-                    .boost((Float) o[2] / 2.0f);
+                    .slop(field.getProximitySlop())
+                    .boost(field.getProximityBoost() / 2.0f);
             mainQuery.should(proximityQuery);
         }
 
         // fuzzy fields
-        for (String f : fuzzyFields) {
-            final FuzzyQueryBuilder fuzzyQuery = QueryBuilders.fuzzyQuery(f, queryString.toString());
-            fuzzyQuery.fuzziness(Fuzziness.AUTO);
-            mainQuery.should(fuzzyQuery);
+        for (final SearchProfile.Field field : mainFields) {
+            if (!field.isFuzzyMatching() || mDegradationLevel.includes(DegradationController.Level.NO_FUZZY)) {
+                continue;
+            }
+            final QueryBuilder fuzzyQuery = buildFuzzyQuery(field.getName(), queryString.toString());
+            if (null != fuzzyQuery) {
+                mainQuery.should(fuzzyQuery);
+            }
         }
 
         mainQuery.must(simpleQuery);
@@ -324,27 +1014,26 @@ public class SimpleSearch extends SearchProvider
      */
     protected void addFilters(BoolQueryBuilder query)
     {
-        final ConfigLoader.Config[] rangeFilters = mSimpleSearchConfig.getArray("range_filters");
-        for (final ConfigLoader.Config filterConfig : rangeFilters) {
-            final String fieldName = replaceLocalePlaceholders(filterConfig.getString("name", ""));
+        for (final SearchProfile.RangeFilter filterConfig : getSearchProfile().getRangeFilters()) {
+            final String fieldName = filterConfig.getField();
 
             final RangeQueryBuilder rangeFilter = QueryBuilders.rangeQuery(fieldName);
 
-            if (null != filterConfig.getDouble("gt")) {
-                rangeFilter.gt(filterConfig.getDouble("gt"));
+            if (null != filterConfig.getGt()) {
+                rangeFilter.gt(filterConfig.getGt());
             }
-            if (null != filterConfig.getDouble("gte")) {
-                rangeFilter.gte(filterConfig.getDouble("gte"));
+            if (null != filterConfig.getGte()) {
+                rangeFilter.gte(filterConfig.getGte());
             }
-            if (null != filterConfig.getDouble("lt")) {
-                rangeFilter.lt(filterConfig.getDouble("lt"));
+            if (null != filterConfig.getLt()) {
+                rangeFilter.lt(filterConfig.getLt());
             }
-            if (null != filterConfig.getDouble("lte")) {
-                rangeFilter.lte(filterConfig.getDouble("lte"));
+            if (null != filterConfig.getLte()) {
+                rangeFilter.lte(filterConfig.getLte());
             }
 
             QueryBuilder filterQuery = rangeFilter;
-            if (filterConfig.contains("include_unset") && filterConfig.getBoolean("include_unset")) {
+            if (filterConfig.isIncludeUnset()) {
                 BoolQueryBuilder mustNotExistQuery = QueryBuilders.boolQuery();
                 mustNotExistQuery.mustNot(QueryBuilders.existsQuery(fieldName));
 
@@ -354,8 +1043,7 @@ public class SimpleSearch extends SearchProvider
                 filterQuery = wrapperQuery;
             }
 
-            final Boolean negate = filterConfig.getBoolean("negate", false);
-            if (negate)
+            if (filterConfig.isNegate())
                 query.mustNot(filterQuery);
             else
                 query.filter(filterQuery);
@@ -371,16 +1059,11 @@ public class SimpleSearch extends SearchProvider
     protected void addBoosts(BoolQueryBuilder query, boolean match)
     {
         // field value boosts
-        final ConfigLoader.Config[] boosts = mSimpleSearchConfig.getArray("boosts");
-        for (ConfigLoader.Config c: boosts) {
-            if (match && !c.getBoolean("match")) {
+        for (SearchProfile.Boost b: getSearchProfile().getBoosts()) {
+            if (match && !b.isMatch()) {
                 continue;
             }
-            RegexpQueryBuilder regExpQuery = QueryBuilders.regexpQuery(
-                    replaceLocalePlaceholders(c.getString("name")),
-                    replaceLocalePlaceholders(c.getString("value")));
-            regExpQuery.boost(c.getFloat("match_boost", 1.0f));
-            query.should(regExpQuery);
+            query.should(b.getCompiledPattern().toQuery(b.getField(), b.getMatchBoost()));
         }
     }
 
@@ -392,13 +1075,12 @@ public class SimpleSearch extends SearchProvider
      */
     protected QueryBuilder decorateFieldValueFactors(QueryBuilder query)
     {
-        ConfigLoader.Config[] funcScoreCfgs = mSimpleSearchConfig.getArray("field_value_factors");
-        for (ConfigLoader.Config c : funcScoreCfgs) {
-            FieldValueFactorFunctionBuilder valueFactor = new FieldValueFactorFunctionBuilder(c.getString("name"));
+        for (SearchProfile.FieldValueFactor f : getSearchProfile().getFieldValueFactors()) {
+            FieldValueFactorFunctionBuilder valueFactor = new FieldValueFactorFunctionBuilder(f.getField());
             valueFactor
-                    .factor(c.getFloat("factor", 1.0f))
-                    .modifier(FieldValueFactorFunction.Modifier.fromString(c.getString("modifier", "")))
-                    .missing(c.getFloat("missing", 1.0f));
+                    .factor(f.getFactor())
+                    .modifier(f.getModifier())
+                    .missing(f.getMissing());
             query = QueryBuilders.functionScoreQuery(query, valueFactor);
         }
 
@@ -413,27 +1095,19 @@ public class SimpleSearch extends SearchProvider
      */
     protected QueryBuilder decorateNegativeBoost(QueryBuilder query)
     {
-        final ConfigLoader.Config penalties = mSimpleSearchConfig.get("penalties");
-        final ConfigLoader.Config[] penaltyFields = penalties.getArray("fields");
-        if (penaltyFields.length > 0) {
+        final SearchProfile profile = getSearchProfile();
+        if (!profile.getPenalties().isEmpty()) {
             BoolQueryBuilder penaltyQuery = QueryBuilders.boolQuery();
-            for (ConfigLoader.Config c: penaltyFields) {
-                QueryBuilder penaltyInnerQuery;
-                if (c.contains("regexp")) {
-                    penaltyInnerQuery = QueryBuilders.regexpQuery(
-                            replaceLocalePlaceholders(c.getString("name")),
-                            replaceLocalePlaceholders(c.getString("regexp")));
+            for (SearchProfile.Penalty p: profile.getPenalties()) {
+                if (p.isRegexp()) {
+                    penaltyQuery.should(p.getCompiledPattern().toQuery(p.getField(), p.getBoost()));
                 } else {
-                    penaltyInnerQuery = QueryBuilders.matchQuery(
-                            replaceLocalePlaceholders(c.getString("name")),
-                            replaceLocalePlaceholders(c.getString("value")));
+                    penaltyQuery.should(QueryBuilders.matchQuery(p.getField(), p.getValue()).boost(p.getBoost()));
                 }
-                penaltyInnerQuery.boost(c.getFloat("boost", 2.0f));
-                penaltyQuery.should(penaltyInnerQuery);
             }
 
             BoostingQueryBuilder boostingQuery = QueryBuilders.boostingQuery(query, penaltyQuery);
-            boostingQuery.negativeBoost(penalties.getFloat("penalty_factor", 0.2f));
+            boostingQuery.negativeBoost(profile.getPenaltyFactor());
             query = boostingQuery;
         }
 
@@ -442,31 +1116,30 @@ public class SimpleSearch extends SearchProvider
 
     /**
      * Parse (non-standard) operators and configured filters from the query string such as site:example.com
-     * and delete the filters from the given query StringBuffer.
+     * and delete the filters from the given query StringBuffer. <code>AND</code> and <code>OR</code> operators
+     * are translated to <code>+</code> and <code>|</code>.
      *
      * @param queryString user query string
      * @return filter query
      */
     protected QueryBuilder parseQueryStringOperators(StringBuffer queryString)
     {
-        // replace AND and OR with + and |
-        queryString.replace(0, queryString.length(),
-                queryString.toString().replaceAll("(?!\\B\"[^\"]*) AND (?![^\"]*\"\\B)", " +"));
-        queryString.replace(0, queryString.length(),
-                queryString.toString().replaceAll("(?!\\B\"[^\"]*) OR (?![^\"]*\"\\B)", " | "));
+        final SearchProfile profile = getSearchProfile();
+        mParsedQuery = QueryParser.parse(queryString, profile.getQueryFilterKeywords());
+        queryString.replace(0, queryString.length(), mParsedQuery.toQueryString());
 
-        ConfigLoader.Config[] filterConf = mSimpleSearchConfig.getArray("query_filters");
-        if (filterConf.length == 0) {
+        final List<SearchProfile.QueryFilter> filterConf = profile.getQueryFilters();
+        if (filterConf.isEmpty()) {
+            detectSearchLanguage();
             return null;
         }
 
+        boolean languageFiltered = false;
         BoolQueryBuilder filterQuery = QueryBuilders.boolQuery();
-        for (ConfigLoader.Config c: filterConf) {
-            String filterKey = c.getString("keyword");
-            String filterField = c.getString("field");
-
-            int pos = queryString.indexOf(filterKey + ":");
-            if (-1 == pos) {
+        for (SearchProfile.QueryFilter c: filterConf) {
+            String filterField = c.getField();
+            String filterValue = mParsedQuery.getFilter(c.getKeyword());
+            if (null == filterValue) {
                 continue;
             }
 
@@ -475,46 +1148,13 @@ public class SimpleSearch extends SearchProvider
                 setGroupByHostname(false);
             }
 
-            int filterStartPos = pos;
-            pos +=  filterKey.length() + 1;
-            int valueStartPos = pos;
-            while (Character.isWhitespace(queryString.charAt(pos))) {
-                // skip initial white space
-                ++pos;
-            }
-            while (pos < queryString.length() && !Character.isWhitespace(queryString.charAt(pos))) {
-                // walk up to the next white space or string end
-                ++pos;
-            }
-            String filterValue = queryString.substring(valueStartPos, pos).trim();
-
-            // strip filter from query string
-            queryString.replace(filterStartPos, pos, "");
-
-            // trim whitespace
-            int trimEnd = 0;
-            for (int i = 0; i < queryString.length(); ++i) {
-                if (!Character.isWhitespace(queryString.charAt(i))) {
-                    break;
-                }
-                ++trimEnd;
-            }
-            queryString.replace(0, trimEnd, "");
-            int trimStart = queryString.length();
-            for (int i = queryString.length(); i > 0; --i) {
-                if (!Character.isWhitespace(queryString.charAt(i - 1))) {
-                    break;
-                }
-                --trimStart;
-            }
-            queryString.replace(trimStart, queryString.length(), "");
-
             // apply filters
             if (!filterField.isEmpty() && !filterField.startsWith("#")) {
                 TermQueryBuilder termQuery = QueryBuilders.termQuery(filterField, filterValue);
 
                 if (filterField.equals("lang")) {
                     setSearchLanguage(filterValue);
+                    languageFiltered = true;
                 }
 
                 filterQuery.filter(termQuery);
@@ -525,6 +1165,43 @@ public class SimpleSearch extends SearchProvider
             }
         }
 
+        if (!languageFiltered) {
+            detectSearchLanguage();
+        }
+
         return filterQuery;
     }
+
+    /**
+     * Detect the search language from the terms and phrases of the parsed user query.
+     * The current search language is kept if the language cannot be detected reliably
+     * or if the indices have no language-specific fields for the detected language.
+     */
+    protected void detectSearchLanguage()
+    {
+        if (!getConf().getBoolean("lang_detection.enabled", true)) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (QueryNode node : mParsedQuery.getNodes()) {
+            if (node instanceof QueryNode.Term) {
+                text.append(((QueryNode.Term) node).getText()).append(' ');
+            } else if (node instanceof QueryNode.Phrase) {
+                text.append(((QueryNode.Phrase) node).getText()).append(' ');
+            }
+        }
+        final String language = LangDetector.detect(text.toString(), getSearchLanguage());
+        if (SearchProfile.isSupportedLanguage(language)) {
+            setSearchLanguage(language);
+        }
+    }
+
+    /**
+     * @return parsed user query of the last search or null if no query has been parsed yet
+     */
+    public ParsedQuery getParsedQuery()
+    {
+        return mParsedQuery;
+    }
 }
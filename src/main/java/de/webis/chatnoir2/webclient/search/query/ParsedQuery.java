@@ -0,0 +1,131 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.search.query;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parsed user query as produced by {@link QueryParser}.
+ */
+public class ParsedQuery
+{
+    private final List<QueryNode> mNodes;
+    private final Map<String, String> mFilters;
+    private String mQueryString = null;
+
+    ParsedQuery(List<QueryNode> nodes)
+    {
+        mNodes = Collections.unmodifiableList(nodes);
+
+        // the first occurrence of a filter keyword wins
+        Map<String, String> filters = new LinkedHashMap<>();
+        for (QueryNode node : nodes) {
+            if (node instanceof QueryNode.FieldFilter) {
+                QueryNode.FieldFilter f = (QueryNode.FieldFilter) node;
+                filters.putIfAbsent(f.getKeyword(), f.getValue());
+            }
+        }
+        mFilters = Collections.unmodifiableMap(filters);
+    }
+
+    /**
+     * @return all parsed nodes in query order
+     */
+    public List<QueryNode> getNodes()
+    {
+        return mNodes;
+    }
+
+    /**
+     * @return field filter values by keyword
+     */
+    public Map<String, String> getFilters()
+    {
+        return mFilters;
+    }
+
+    /**
+     * @param keyword filter keyword
+     * @return filter value or null if the query has no such filter
+     */
+    public String getFilter(String keyword)
+    {
+        return mFilters.get(keyword);
+    }
+
+    /**
+     * Serialize the query without field filters in Elasticsearch simple query string syntax.
+     * <code>AND</code> and <code>OR</code> operators are translated to <code>+</code> and <code>|</code>.
+     *
+     * @return query string
+     */
+    public String toQueryString()
+    {
+        if (null != mQueryString) {
+            return mQueryString;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        boolean glueNext = false;
+        for (QueryNode node : mNodes) {
+            if (node.getType() == QueryNode.Type.FILTER) {
+                continue;
+            }
+
+            if (!glueNext && sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(node.toQueryString());
+
+            // AND is a prefix of the following term
+            glueNext = node instanceof QueryNode.Operator
+                    && ((QueryNode.Operator) node).getKind() == QueryNode.Operator.Kind.AND;
+        }
+        mQueryString = sb.toString();
+        return mQueryString;
+    }
+
+    /**
+     * @return true if the query contains no terms or phrases
+     */
+    public boolean isEmpty()
+    {
+        for (QueryNode node : mNodes) {
+            if (node.getType() == QueryNode.Type.TERM || node.getType() == QueryNode.Type.PHRASE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString()
+    {
+        return mNodes.toString();
+    }
+}
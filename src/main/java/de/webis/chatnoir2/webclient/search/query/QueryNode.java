@@ -0,0 +1,228 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.search.query;
+
+/**
+ * Node of a parsed user query.
+ */
+public abstract class QueryNode
+{
+    /**
+     * Node types.
+     */
+    public enum Type
+    {
+        TERM,
+        PHRASE,
+        OPERATOR,
+        FILTER
+    }
+
+    /**
+     * @return node type
+     */
+    public abstract Type getType();
+
+    /**
+     * Serialize this node in Elasticsearch simple query string syntax.
+     *
+     * @return serialized node
+     */
+    public abstract String toQueryString();
+
+    @Override
+    public String toString()
+    {
+        return getType() + "(" + toQueryString() + ")";
+    }
+
+    /**
+     * Single search term including modifiers such as <code>-</code> or <code>*</code>.
+     */
+    public static final class Term extends QueryNode
+    {
+        private final String mText;
+
+        public Term(String text)
+        {
+            mText = text;
+        }
+
+        /**
+         * @return term text (including modifiers)
+         */
+        public String getText()
+        {
+            return mText;
+        }
+
+        @Override
+        public Type getType()
+        {
+            return Type.TERM;
+        }
+
+        @Override
+        public String toQueryString()
+        {
+            return mText;
+        }
+    }
+
+    /**
+     * Quoted phrase with optional prefix (e.g. <code>-</code>) and suffix (e.g. <code>~2</code>).
+     */
+    public static final class Phrase extends QueryNode
+    {
+        private final String mPrefix;
+        private final String mText;
+        private final String mSuffix;
+
+        public Phrase(String prefix, String text, String suffix)
+        {
+            mPrefix = prefix;
+            mText = text;
+            mSuffix = suffix;
+        }
+
+        /**
+         * @return phrase text without quotes
+         */
+        public String getText()
+        {
+            return mText;
+        }
+
+        /**
+         * @return modifiers before the opening quote
+         */
+        public String getPrefix()
+        {
+            return mPrefix;
+        }
+
+        /**
+         * @return modifiers after the closing quote
+         */
+        public String getSuffix()
+        {
+            return mSuffix;
+        }
+
+        @Override
+        public Type getType()
+        {
+            return Type.PHRASE;
+        }
+
+        @Override
+        public String toQueryString()
+        {
+            return mPrefix + "\"" + mText + "\"" + mSuffix;
+        }
+    }
+
+    /**
+     * Boolean operator between two terms or phrases.
+     */
+    public static final class Operator extends QueryNode
+    {
+        public enum Kind
+        {
+            AND,
+            OR
+        }
+
+        private final Kind mKind;
+
+        public Operator(Kind kind)
+        {
+            mKind = kind;
+        }
+
+        /**
+         * @return operator kind
+         */
+        public Kind getKind()
+        {
+            return mKind;
+        }
+
+        @Override
+        public Type getType()
+        {
+            return Type.OPERATOR;
+        }
+
+        @Override
+        public String toQueryString()
+        {
+            return mKind == Kind.AND ? "+" : "|";
+        }
+    }
+
+    /**
+     * Field filter such as <code>site:example.com</code>.
+     */
+    public static final class FieldFilter extends QueryNode
+    {
+        private final String mKeyword;
+        private final String mValue;
+
+        public FieldFilter(String keyword, String value)
+        {
+            mKeyword = keyword;
+            mValue = value;
+        }
+
+        /**
+         * @return filter keyword
+         */
+        public String getKeyword()
+        {
+            return mKeyword;
+        }
+
+        /**
+         * @return filter value
+         */
+        public String getValue()
+        {
+            return mValue;
+        }
+
+        @Override
+        public Type getType()
+        {
+            return Type.FILTER;
+        }
+
+        @Override
+        public String toQueryString()
+        {
+            return mKeyword + ":" + mValue;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.search.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Single-pass lexer and parser for user query strings.
+ *
+ * Splits a query into terms, quoted phrases, <code>AND</code> / <code>OR</code> operators
+ * and field filters (<code>keyword:value</code>) for a given set of filter keywords.
+ * The input is scanned exactly once from left to right.
+ */
+public final class QueryParser
+{
+    private QueryParser()
+    {
+    }
+
+    /**
+     * Parse a user query string.
+     *
+     * @param query user query string
+     * @param filterKeywords keywords of field filters to recognize
+     * @return parsed query
+     */
+    public static ParsedQuery parse(CharSequence query, Collection<String> filterKeywords)
+    {
+        final List<QueryNode> nodes = new ArrayList<>();
+        final int length = query.length();
+        int pos = 0;
+        boolean hasOperand = false;
+
+        while (pos < length) {
+            if (Character.isWhitespace(query.charAt(pos))) {
+                ++pos;
+                continue;
+            }
+
+            // prefix modifiers
+            int start = pos;
+            while (pos < length && isPrefixModifier(query.charAt(pos))) {
+                ++pos;
+            }
+
+            // quoted phrase (an unterminated phrase extends to the end of the query)
+            if (pos < length && query.charAt(pos) == '"') {
+                String prefix = query.subSequence(start, pos).toString();
+                int textStart = ++pos;
+                while (pos < length && query.charAt(pos) != '"') {
+                    ++pos;
+                }
+                String text = query.subSequence(textStart, pos).toString();
+                if (pos < length) {
+                    ++pos;
+                }
+                int suffixStart = pos;
+                pos = skipWord(query, pos);
+                nodes.add(new QueryNode.Phrase(prefix, text, query.subSequence(suffixStart, pos).toString()));
+                hasOperand = true;
+                continue;
+            }
+
+            pos = skipWord(query, pos);
+            final String word = query.subSequence(start, pos).toString();
+
+            // boolean operators need operands on both sides
+            if ((word.equals("AND") || word.equals("OR")) && hasOperand && hasMoreInput(query, pos)) {
+                nodes.add(new QueryNode.Operator(word.equals("AND") ?
+                        QueryNode.Operator.Kind.AND : QueryNode.Operator.Kind.OR));
+                hasOperand = false;
+                continue;
+            }
+
+            // field filters
+            int colon = word.indexOf(':');
+            if (colon > 0 && filterKeywords.contains(word.substring(0, colon))) {
+                String value = word.substring(colon + 1);
+                if (value.isEmpty()) {
+                    // value is separated from keyword by white space
+                    while (pos < length && Character.isWhitespace(query.charAt(pos))) {
+                        ++pos;
+                    }
+                    int valueStart = pos;
+                    pos = skipWord(query, pos);
+                    value = query.subSequence(valueStart, pos).toString();
+                }
+                nodes.add(new QueryNode.FieldFilter(word.substring(0, colon), value));
+                continue;
+            }
+
+            nodes.add(new QueryNode.Term(word));
+            hasOperand = true;
+        }
+
+        return new ParsedQuery(nodes);
+    }
+
+    /**
+     * Advance to the end of the current word. Quoted sections within a word
+     * (e.g. <code>site:"example.com"</code>) may contain white space.
+     *
+     * @param query query string
+     * @param pos start position
+     * @return position after the word
+     */
+    private static int skipWord(CharSequence query, int pos)
+    {
+        boolean quoted = false;
+        while (pos < query.length()) {
+            char c = query.charAt(pos);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                break;
+            }
+            ++pos;
+        }
+        return pos;
+    }
+
+    /**
+     * @return true if there are non-white-space characters at or after the given position
+     */
+    private static boolean hasMoreInput(CharSequence query, int pos)
+    {
+        for (int i = pos; i < query.length(); ++i) {
+            if (!Character.isWhitespace(query.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if character is a term modifier which may precede a phrase
+     */
+    private static boolean isPrefixModifier(char c)
+    {
+        return c == '-' || c == '+' || c == '|';
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.util;
+
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import org.elasticsearch.ElasticsearchException;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for a backend service (such as an Elasticsearch index or an HDFS MapFile).
+ *
+ * After a configured number of consecutive backend failures, the breaker opens and all
+ * further requests fail fast with an {@link OpenException} instead of waiting for the
+ * unresponsive backend. While the breaker is open, a probe is run in the background after
+ * each open interval (half-open state). Requests are let through again as soon as a probe succeeds.
+ */
+public class CircuitBreaker extends Configured
+{
+    /**
+     * Circuit breaker states.
+     */
+    public enum State
+    {
+        /**
+         * Backend is healthy, requests are let through.
+         */
+        CLOSED("closed"),
+
+        /**
+         * Backend is failing, requests are rejected.
+         */
+        OPEN("open"),
+
+        /**
+         * Backend is being probed, requests are still rejected.
+         */
+        HALF_OPEN("half_open");
+
+        private final String mName;
+
+        State(String name)
+        {
+            mName = name;
+        }
+
+        /**
+         * @return external name of this state
+         */
+        public String getName()
+        {
+            return mName;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, CircuitBreaker> sBreakers = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService sProber = null;
+
+    private static volatile boolean sEnabled;
+    private static volatile int sFailureThreshold;
+    private static volatile long sOpenDuration;
+
+    static {
+        loadConfig(getConf());
+        addConfigListener(CircuitBreaker::loadConfig);
+    }
+
+    private final String mName;
+    private final Callable<Boolean> mProbe;
+
+    private volatile State mState = State.CLOSED;
+    private volatile long mOpenedAt = 0;
+    private final AtomicInteger mFailures = new AtomicInteger();
+    private final AtomicLong mTrips = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+
+    private CircuitBreaker(String name, Callable<Boolean> probe)
+    {
+        mName  = name;
+        mProbe = probe;
+    }
+
+    /**
+     * Read breaker settings from the configuration. The settings are shared by all breakers.
+     *
+     * @param conf configuration
+     */
+    private static void loadConfig(ConfigLoader.Config conf)
+    {
+        sEnabled          = conf.getBoolean("circuit_breaker.enabled", true);
+        sFailureThreshold = Math.max(1, conf.getInteger("circuit_breaker.failure_threshold", 5));
+        sOpenDuration     = Math.max(1L, conf.getLong("circuit_breaker.open_duration", 30L)) * 1000L;
+    }
+
+    /**
+     * Get the circuit breaker for a backend, creating it if it does not exist yet.
+     *
+     * @param name backend name
+     * @param probe health check of the backend, returning true if the backend is available again
+     * @return circuit breaker
+     */
+    public static CircuitBreaker get(String name, Callable<Boolean> probe)
+    {
+        return sBreakers.computeIfAbsent(name, k -> new CircuitBreaker(k, probe));
+    }
+
+    /**
+     * Stop all background probes and discard all circuit breakers.
+     */
+    public static synchronized void shutdown()
+    {
+        if (null != sProber) {
+            sProber.shutdownNow();
+            sProber = null;
+        }
+        sBreakers.clear();
+    }
+
+    /**
+     * @return shared scheduler for background probes
+     */
+    private static synchronized ScheduledExecutorService getProber()
+    {
+        if (null == sProber) {
+            sProber = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "chatnoir2-circuit-breaker");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return sProber;
+    }
+
+    /**
+     * @return backend name
+     */
+    public String getName()
+    {
+        return mName;
+    }
+
+    /**
+     * @return current state
+     */
+    public State getState()
+    {
+        return mState;
+    }
+
+    /**
+     * Check whether a request to the backend may be sent.
+     *
+     * @return true if the breaker is closed
+     */
+    public boolean allowRequest()
+    {
+        if (!sEnabled || State.CLOSED == mState) {
+            return true;
+        }
+        mRejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record a successful request (the backend answered).
+     */
+    public void recordSuccess()
+    {
+        mFailures.set(0);
+    }
+
+    /**
+     * Record a failed request. Opens the breaker if the failure threshold is reached.
+     */
+    public void recordFailure()
+    {
+        if (sEnabled && mFailures.incrementAndGet() >= sFailureThreshold) {
+            trip();
+        }
+    }
+
+    /**
+     * Record the outcome of a request.
+     *
+     * @param error exception the request failed with or null if it succeeded
+     */
+    public void record(Throwable error)
+    {
+        if (null != error && isBackendFailure(error) && !(unwrap(error) instanceof OpenException)) {
+            recordFailure();
+        } else {
+            recordSuccess();
+        }
+    }
+
+    /**
+     * Run a synchronous backend request through this breaker.
+     *
+     * @param request backend request
+     * @param <T> result type
+     * @return request result
+     * @throws OpenException if the breaker is open
+     */
+    public <T> T call(Supplier<T> request)
+    {
+        if (!allowRequest()) {
+            throw new OpenException(mName);
+        }
+
+        try {
+            T result = request.get();
+            recordSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            record(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Open the breaker and schedule a background probe.
+     */
+    private synchronized void trip()
+    {
+        if (State.CLOSED != mState) {
+            return;
+        }
+        mState = State.OPEN;
+        mOpenedAt = System.currentTimeMillis();
+        mTrips.incrementAndGet();
+        getLogger().warn(String.format("Circuit breaker for '%s' opened after %d failures", mName, mFailures.get()));
+        scheduleProbe();
+    }
+
+    /**
+     * Schedule a background probe after the open interval.
+     */
+    private void scheduleProbe()
+    {
+        try {
+            getProber().schedule(this::probe, sOpenDuration, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    /**
+     * Probe the backend and close the breaker if it is available again.
+     */
+    private void probe()
+    {
+        mState = State.HALF_OPEN;
+        boolean available;
+        try {
+            available = mProbe.call();
+        } catch (Exception e) {
+            available = false;
+        }
+
+        synchronized (this) {
+            if (available) {
+                mFailures.set(0);
+                mState = State.CLOSED;
+                getLogger().info(String.format("Circuit breaker for '%s' closed", mName));
+                return;
+            }
+            mState = State.OPEN;
+        }
+        scheduleProbe();
+    }
+
+    /**
+     * Check whether an exception indicates that a backend is unavailable or overloaded,
+     * as opposed to a bad request.
+     *
+     * @param error exception
+     * @return true for backend failures
+     */
+    public static boolean isBackendFailure(Throwable error)
+    {
+        error = unwrap(error);
+        if (error instanceof OpenException || error instanceof IOException || error instanceof TimeoutException) {
+            return true;
+        }
+        if (error instanceof ElasticsearchException) {
+            return ((ElasticsearchException) error).status().getStatus() >= 500;
+        }
+        return false;
+    }
+
+    /**
+     * @param error exception
+     * @return cause of a {@link CompletionException} or the exception itself
+     */
+    private static Throwable unwrap(Throwable error)
+    {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && null != error.getCause()) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Get statistics of all circuit breakers.
+     *
+     * @return map of statistics by backend name
+     */
+    public static Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new TreeMap<>();
+        for (CircuitBreaker breaker : sBreakers.values()) {
+            Map<String, Object> breakerStats = new LinkedHashMap<>();
+            breakerStats.put("state", breaker.mState.getName());
+            breakerStats.put("failures", breaker.mFailures.get());
+            breakerStats.put("trips", breaker.mTrips.get());
+            breakerStats.put("rejected", breaker.mRejected.get());
+            breakerStats.put("opened_at", breaker.mOpenedAt);
+            stats.put(breaker.mName, breakerStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Exception thrown when a request is rejected by an open circuit breaker.
+     */
+    public static class OpenException extends RuntimeException
+    {
+        public OpenException(String name)
+        {
+            super(String.format("Backend '%s' is temporarily unavailable", name));
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.util;
+
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.admin.cluster.node.stats.NodeStats;
+import org.elasticsearch.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.elasticsearch.action.admin.indices.stats.CommonStatsFlags;
+import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.search.stats.SearchStats;
+import org.elasticsearch.transport.client.PreBuiltTransportClient;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Manager for Elasticsearch {@link TransportClient}s.
+ *
+ * Each {@link Workload} class gets its own transport client with its own connections
+ * and thread pools, so that slow bulk requests cannot starve interactive searches.
+ * Clients are created lazily, after which they are returned without any locking.
+ *
+ * A background health check tracks the cluster health and an exponentially weighted moving
+ * average of the query latency of each data node (derived from the node search statistics).
+ * Nodes which are considerably slower than the median are reported as slow and
+ * {@link #getNodePreference()} provides a routing preference which avoids them.
+ */
+public class ClientManager extends Configured
+{
+    /**
+     * Workload classes with separate transport clients.
+     */
+    public enum Workload
+    {
+        /**
+         * Interactive search requests.
+         */
+        SEARCH("search"),
+
+        /**
+         * Single document and key lookups.
+         */
+        LOOKUP("lookup"),
+
+        /**
+         * Long-running bulk requests (exports, index scans) and cluster maintenance requests.
+         */
+        BULK("bulk");
+
+        private final String mName;
+
+        Workload(String name)
+        {
+            mName = name;
+        }
+
+        /**
+         * @return external name of this workload class
+         */
+        public String getName()
+        {
+            return mName;
+        }
+    }
+
+    private static volatile ClientManager sInstance = null;
+
+    private final AtomicReferenceArray<TransportClient> mClients =
+            new AtomicReferenceArray<>(Workload.values().length);
+    private final boolean mDedicatedClients;
+
+    private final double mAlpha;
+    private final double mSlowNodeFactor;
+    private final double mSlowNodeMinLatency;
+    private final ScheduledExecutorService mHealthChecker;
+
+    private final Map<String, NodeLatency> mNodes = new HashMap<>();
+    private volatile String mNodePreference = null;
+    private volatile String mClusterStatus = null;
+    private volatile long mLastHealthCheck = 0;
+    private volatile long mHealthCheckLatency = -1;
+
+    private final LongAdder mFastPathGets = new LongAdder();
+    private final AtomicLong mSlowPathGets = new AtomicLong();
+    private final AtomicLong mFailedHealthChecks = new AtomicLong();
+
+    private ClientManager()
+    {
+        mDedicatedClients   = getConf().getBoolean("cluster.dedicated_clients", true);
+        mAlpha              = Math.min(1.0, Math.max(0.01, getConf().getDouble("cluster.node_latency_smoothing", 0.3)));
+        mSlowNodeFactor     = Math.max(1.0, getConf().getDouble("cluster.slow_node_factor", 2.0));
+        mSlowNodeMinLatency = getConf().getLong("cluster.slow_node_min_latency", 50L);
+
+        mHealthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chatnoir2-client-health");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = getConf().getLong("cluster.health_check_interval", 10L);
+        if (interval > 0) {
+            mHealthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return singleton client manager
+     */
+    public static ClientManager getInstance()
+    {
+        ClientManager instance = sInstance;
+        if (null != instance) {
+            return instance;
+        }
+
+        synchronized (ClientManager.class) {
+            if (null == sInstance) {
+                sInstance = new ClientManager();
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Close all transport clients and stop health checks. The next call to
+     * {@link #getInstance()} will create a new client manager.
+     */
+    public static synchronized void shutdown()
+    {
+        if (null == sInstance) {
+            return;
+        }
+
+        sInstance.mHealthChecker.shutdownNow();
+        synchronized (sInstance) {
+            for (int i = 0; i < sInstance.mClients.length(); ++i) {
+                TransportClient client = sInstance.mClients.getAndSet(i, null);
+                if (null != client) {
+                    client.close();
+                }
+            }
+        }
+        sInstance = null;
+    }
+
+    /**
+     * Get the transport client for a workload class.
+     *
+     * @param workload workload class
+     * @return connected transport client
+     */
+    public TransportClient getTransportClient(Workload workload)
+    {
+        final int slot = mDedicatedClients ? workload.ordinal() : 0;
+        TransportClient client = mClients.get(slot);
+        if (null != client) {
+            mFastPathGets.increment();
+            return client;
+        }
+
+        mSlowPathGets.incrementAndGet();
+        synchronized (this) {
+            client = mClients.get(slot);
+            if (null == client) {
+                client = createClient(getConf());
+                mClients.set(slot, client);
+            }
+            return client;
+        }
+    }
+
+    /**
+     * Create a new transport client.
+     *
+     * @param cfg configuration
+     * @return connected transport client
+     */
+    private static TransportClient createClient(ConfigLoader.Config cfg)
+    {
+        final String clusterName = cfg.getString("cluster.cluster_name", "");
+        final String[] hosts = cfg.getStringArray("cluster.hosts");
+        final int port = cfg.getInteger("cluster.port", 9300);
+
+        final Settings settings = Settings.builder()
+                .put("cluster.name", clusterName)
+                .put("client.transport.sniff", cfg.getBoolean("cluster.sniff", true))
+                .build();
+
+        TransportClient client = new PreBuiltTransportClient(settings);
+        for (String host : hosts) {
+            client.addTransportAddress(new InetSocketTransportAddress(new InetSocketAddress(host, port)));
+        }
+        return client;
+    }
+
+    /**
+     * Get the circuit breaker for requests to an index. While the breaker is open,
+     * the index health is probed in the background.
+     *
+     * @param index index name
+     * @return circuit breaker
+     */
+    public static CircuitBreaker getIndexBreaker(String index)
+    {
+        return CircuitBreaker.get("elasticsearch:" + index, () -> {
+            ClusterHealthResponse health = getClient(Workload.BULK).admin().cluster().prepareHealth(index)
+                    .setTimeout(TimeValue.timeValueSeconds(5))
+                    .get(TimeValue.timeValueSeconds(10));
+            return !health.isTimedOut() && ClusterHealthStatus.RED != health.getStatus();
+        });
+    }
+
+    /**
+     * Get a shard routing preference which avoids slow nodes.
+     *
+     * @return <tt>_prefer_nodes</tt> preference or null if no node is currently considered slow
+     */
+    public String getNodePreference()
+    {
+        return mNodePreference;
+    }
+
+    /**
+     * Check cluster health and update node latencies.
+     */
+    private void checkHealth()
+    {
+        final TransportClient client = getTransportClient(Workload.BULK);
+        final long start = System.currentTimeMillis();
+        try {
+            ClusterHealthResponse health = client.admin().cluster().prepareHealth()
+                    .setTimeout(TimeValue.timeValueSeconds(5))
+                    .get(TimeValue.timeValueSeconds(10));
+            mHealthCheckLatency = System.currentTimeMillis() - start;
+            mClusterStatus = health.getStatus().name().toLowerCase();
+
+            NodesStatsResponse stats = client.admin().cluster().prepareNodesStats()
+                    .clear()
+                    .setIndices(new CommonStatsFlags(CommonStatsFlags.Flag.Search))
+                    .get(TimeValue.timeValueSeconds(10));
+            updateNodeLatencies(stats.getNodes());
+        } catch (Exception e) {
+            mFailedHealthChecks.incrementAndGet();
+            mClusterStatus = null;
+            getLogger().warn("Cluster health check failed: " + e.getMessage());
+        }
+        mLastHealthCheck = System.currentTimeMillis();
+    }
+
+    /**
+     * Update latency averages from node search statistics and recompute the set of slow nodes.
+     *
+     * @param nodeStats current node statistics
+     */
+    private synchronized void updateNodeLatencies(List<NodeStats> nodeStats)
+    {
+        Set<String> seen = new HashSet<>();
+        for (NodeStats node : nodeStats) {
+            if (!node.getNode().isDataNode() || null == node.getIndices()) {
+                continue;
+            }
+            SearchStats.Stats search = node.getIndices().getSearch().getTotal();
+            String id = node.getNode().getId();
+            seen.add(id);
+            mNodes.computeIfAbsent(id, k -> new NodeLatency(node.getNode().getName()))
+                    .update(search.getQueryCount(), search.getQueryTimeInMillis(), mAlpha);
+        }
+        mNodes.keySet().retainAll(seen);
+
+        Map<String, Double> latencies = new HashMap<>();
+        for (Map.Entry<String, NodeLatency> e : mNodes.entrySet()) {
+            if (e.getValue().mAverage >= 0.0) {
+                latencies.put(e.getKey(), e.getValue().mAverage);
+            }
+        }
+        Set<String> slow = findSlowNodes(latencies, mSlowNodeFactor, mSlowNodeMinLatency);
+        for (Map.Entry<String, NodeLatency> e : mNodes.entrySet()) {
+            e.getValue().mSlow = slow.contains(e.getKey());
+        }
+
+        if (slow.isEmpty()) {
+            mNodePreference = null;
+            return;
+        }
+        List<String> fast = new ArrayList<>(mNodes.keySet());
+        fast.removeAll(slow);
+        Collections.sort(fast);
+        mNodePreference = "_prefer_nodes:" + String.join(",", fast);
+    }
+
+    /**
+     * Determine slow nodes. A node is slow if its average latency exceeds both a multiple of
+     * the median latency of all nodes and an absolute minimum. At most a minority of nodes
+     * is considered slow, since a slow majority indicates cluster-wide load.
+     *
+     * @param latencies average query latency by node ID
+     * @param factor latency factor relative to the median
+     * @param minLatency minimum latency in milliseconds
+     * @return IDs of slow nodes
+     */
+    public static Set<String> findSlowNodes(Map<String, Double> latencies, double factor, double minLatency)
+    {
+        if (latencies.size() < 2) {
+            return Collections.emptySet();
+        }
+
+        List<Double> sorted = new ArrayList<>(latencies.values());
+        Collections.sort(sorted);
+        int n = sorted.size();
+        double median = n % 2 == 1 ? sorted.get(n / 2) : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2.0;
+        double threshold = Math.max(median * factor, minLatency);
+
+        Set<String> slow = new HashSet<>();
+        for (Map.Entry<String, Double> e : latencies.entrySet()) {
+            if (e.getValue() > threshold) {
+                slow.add(e.getKey());
+            }
+        }
+        if (slow.size() * 2 >= n) {
+            return Collections.emptySet();
+        }
+        return slow;
+    }
+
+    /**
+     * Get client and node health statistics.
+     *
+     * @return map of statistics counters
+     */
+    public synchronized Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dedicated_clients", mDedicatedClients);
+
+        Map<String, Object> clients = new LinkedHashMap<>();
+        for (Workload workload : Workload.values()) {
+            TransportClient client = mClients.get(mDedicatedClients ? workload.ordinal() : 0);
+            clients.put(workload.getName(), null != client ? client.connectedNodes().size() : null);
+        }
+        stats.put("connected_nodes", clients);
+        stats.put("fast_path_gets", mFastPathGets.sum());
+        stats.put("slow_path_gets", mSlowPathGets.get());
+
+        Map<String, Object> health = new LinkedHashMap<>();
+        health.put("cluster_status", mClusterStatus);
+        health.put("last_check", mLastHealthCheck);
+        health.put("check_latency", mHealthCheckLatency);
+        health.put("failed_checks", mFailedHealthChecks.get());
+        stats.put("health", health);
+
+        Map<String, Object> nodes = new TreeMap<>();
+        for (NodeLatency node : mNodes.values()) {
+            Map<String, Object> nodeStats = new LinkedHashMap<>();
+            nodeStats.put("query_latency", node.mAverage >= 0.0 ? node.mAverage : null);
+            nodeStats.put("slow", node.mSlow);
+            nodes.put(node.mName, nodeStats);
+        }
+        stats.put("nodes", nodes);
+        stats.put("avoiding_slow_nodes", null != mNodePreference);
+        return stats;
+    }
+
+    /**
+     * Query latency average of a data node.
+     */
+    private static class NodeLatency
+    {
+        private final String mName;
+        private long mQueryCount = -1;
+        private long mQueryTime = -1;
+        private double mAverage = -1.0;
+        private boolean mSlow = false;
+
+        private NodeLatency(String name)
+        {
+            mName = name;
+        }
+
+        /**
+         * Update the moving average with the queries executed since the last update.
+         *
+         * @param queryCount total number of queries executed on the node
+         * @param queryTime total query time in milliseconds
+         * @param alpha smoothing factor
+         */
+        private void update(long queryCount, long queryTime, double alpha)
+        {
+            if (mQueryCount >= 0 && queryCount > mQueryCount && queryTime >= mQueryTime) {
+                double latency = (double) (queryTime - mQueryTime) / (queryCount - mQueryCount);
+                mAverage = mAverage < 0.0 ? latency : alpha * latency + (1.0 - alpha) * mAverage;
+            }
+            mQueryCount = queryCount;
+            mQueryTime = queryTime;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.util;
+
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watcher for the system configuration file, which reloads the configuration on changes.
+ *
+ * Only a configuration in the system configuration directory is watched. Changes are debounced,
+ * so that partial writes of the file do not trigger reloads. A changed file is parsed and validated
+ * in the background and activated with {@link Configured#reloadConf(ConfigLoader.Config)}.
+ * If it is invalid, the current configuration stays active.
+ */
+public class ConfigWatcher extends Configured
+{
+    private static ConfigWatcher sInstance = null;
+
+    private static final AtomicLong sReloads = new AtomicLong();
+    private static final AtomicLong sFailedReloads = new AtomicLong();
+    private static volatile long sLastReload = 0;
+
+    private final Path mConfigFile;
+    private final long mDebounce;
+    private final WatchService mWatchService;
+    private final Thread mThread;
+
+    private ConfigWatcher(final Path configFile) throws IOException
+    {
+        mConfigFile = configFile;
+        mDebounce = Math.max(0L, getConf().getLong("config_reload.debounce", 2000L));
+        mWatchService = FileSystems.getDefault().newWatchService();
+        configFile.getParent().register(mWatchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        mThread = new Thread(this::watch, "chatnoir2-config-watcher");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Start watching the system configuration file if it exists and reloading is enabled.
+     */
+    public static synchronized void start()
+    {
+        if (null != sInstance || !getConf().getBoolean("config_reload.enabled", true)) {
+            return;
+        }
+
+        final Path configFile = Paths.get(ConfigLoader.SYSTEM_CONFIG_DIR + ConfigLoader.DEFAULT_FILE_NAME);
+        if (!Files.exists(configFile)) {
+            return;
+        }
+
+        try {
+            sInstance = new ConfigWatcher(configFile);
+        } catch (IOException e) {
+            getSysLogger().warn(String.format("Cannot watch config file '%s': %s", configFile, e.getMessage()));
+        }
+    }
+
+    /**
+     * Stop watching the configuration file (if a watcher is running).
+     */
+    public static synchronized void shutdown()
+    {
+        if (null != sInstance) {
+            sInstance.mThread.interrupt();
+            try {
+                sInstance.mWatchService.close();
+            } catch (IOException ignored) {
+            }
+            sInstance = null;
+        }
+    }
+
+    /**
+     * Watch loop.
+     */
+    private void watch()
+    {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!pollChanges(mWatchService.take())) {
+                    continue;
+                }
+
+                // wait until the file has not been touched for the debounce interval
+                WatchKey key;
+                while (null != (key = mWatchService.poll(mDebounce, TimeUnit.MILLISECONDS))) {
+                    pollChanges(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    /**
+     * Consume the events of a watch key.
+     *
+     * @param key signalled watch key
+     * @return whether any event concerned the configuration file
+     */
+    private boolean pollChanges(final WatchKey key)
+    {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (mConfigFile.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Parse, validate and activate the changed configuration.
+     */
+    private void reload()
+    {
+        try {
+            reloadConf(ConfigLoader.getInstance().loadConfig(ConfigLoader.DEFAULT_FILE_NAME));
+            sReloads.incrementAndGet();
+            sLastReload = System.currentTimeMillis();
+            getLogger().info(String.format("Reloaded configuration from '%s'", mConfigFile));
+        } catch (IOException | ConfigLoader.ParseException | IllegalArgumentException e) {
+            sFailedReloads.incrementAndGet();
+            getLogger().error(String.format("Rejected changed configuration '%s', keeping current configuration: %s",
+                    mConfigFile, e.getMessage()));
+        }
+    }
+
+    /**
+     * Get configuration reload statistics.
+     *
+     * @return map of statistics counters
+     */
+    public static synchronized Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("watching", null != sInstance);
+        stats.put("reloads", sReloads.get());
+        stats.put("failed_reloads", sFailedReloads.get());
+        stats.put("last_reload", sLastReload);
+        return stats;
+    }
+}
@@ -28,12 +28,10 @@ package de.webis.chatnoir2.webclient.util;
 import de.webis.chatnoir2.webclient.resources.ConfigLoader;
 import org.apache.log4j.Logger;
 import org.elasticsearch.client.transport.TransportClient;
-import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.transport.InetSocketTransportAddress;
-import org.elasticsearch.transport.client.PreBuiltTransportClient;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Base interface for classes which depend on the application configuration
@@ -41,9 +39,9 @@ import java.net.InetSocketAddress;
  */
 public class Configured
 {
-    private static ConfigLoader.Config sConf = null;
-    private static TransportClient sClient = null;
-    private static final Object sClientMutex = new Object();
+    private static volatile ConfigLoader.Config sConf = null;
+    private static final Object sConfMutex = new Object();
+    private static final List<ConfigListener> sConfigListeners = new CopyOnWriteArrayList<>();
 
     protected Configured()
     {
@@ -51,63 +49,110 @@ public class Configured
 
     /**
      * Get system configuration.
+     * The returned configuration is an immutable snapshot. Reading it does not
+     * require any locking, so request threads are never blocked by a configuration reload.
      *
      * @return loaded configuration
      */
-    public static synchronized ConfigLoader.Config getConf()
+    public static ConfigLoader.Config getConf()
     {
-        if (null == sConf) {
-            try {
-                sConf = ConfigLoader.getInstance().getConfig();
-            } catch (IOException | ConfigLoader.ParseException e) {
-                e.printStackTrace();
-                sConf = new ConfigLoader.Config();
-            }
+        ConfigLoader.Config conf = sConf;
+        if (null != conf) {
+            return conf;
         }
 
-        return sConf;
+        synchronized (sConfMutex) {
+            if (null == sConf) {
+                try {
+                    sConf = ConfigLoader.getInstance().getConfig();
+                } catch (IOException | ConfigLoader.ParseException e) {
+                    e.printStackTrace();
+                    sConf = new ConfigLoader.Config();
+                }
+            }
+            return sConf;
+        }
     }
 
     /**
-     * Get a connected Elasticsearch {@link TransportClient} instance.
+     * Replace the system configuration with a new snapshot.
+     * The new configuration is validated by all registered {@link ConfigListener}s first.
+     * If any of them rejects it, the current configuration stays active. Otherwise, the new
+     * snapshot is swapped in atomically and all listeners are notified to rebuild their derived state.
      *
-     * @return configured TransportClient
+     * @param conf new configuration
+     * @throws IllegalArgumentException if the configuration is invalid
      */
-    public static TransportClient getClient()
+    public static void reloadConf(final ConfigLoader.Config conf)
     {
-        synchronized (sClientMutex) {
-            if (null == sClient) {
-                final ConfigLoader.Config cfg = getConf();
-                final String clusterName = cfg.getString("cluster.cluster_name", "");
-                final String[] hosts = cfg.getStringArray("cluster.hosts");
-                final int port = cfg.getInteger("cluster.port", 9300);
-
-                final Settings settings = Settings.builder()
-                        .put("cluster.name", clusterName)
-                        .put("client.transport.sniff", cfg.getBoolean("cluster.sniff", true))
-                        .build();
-
-                sClient = new PreBuiltTransportClient(settings);
-                for (String host : hosts) {
-                    sClient.addTransportAddress(new InetSocketTransportAddress(new InetSocketAddress(host, port)));
+        synchronized (sConfMutex) {
+            if (0 == conf.getStringArray("cluster.hosts").length) {
+                throw new IllegalArgumentException("No cluster hosts configured");
+            }
+            for (ConfigListener listener : sConfigListeners) {
+                listener.validateConfig(conf);
+            }
+
+            sConf = conf;
+
+            for (ConfigListener listener : sConfigListeners) {
+                try {
+                    listener.configReloaded(conf);
+                } catch (RuntimeException e) {
+                    getSysLogger().error("Failed to apply reloaded configuration", e);
                 }
             }
-            return sClient;
         }
     }
 
     /**
-     * Cleanly shut down and reset the Elasticsearch {@link TransportClient}.
+     * Register a listener to be notified of configuration reloads.
+     *
+     * @param listener listener to add
+     */
+    public static void addConfigListener(final ConfigListener listener)
+    {
+        sConfigListeners.add(listener);
+    }
+
+    /**
+     * Remove a previously registered configuration listener.
+     *
+     * @param listener listener to remove
+     */
+    public static void removeConfigListener(final ConfigListener listener)
+    {
+        sConfigListeners.remove(listener);
+    }
+
+    /**
+     * Get a connected Elasticsearch {@link TransportClient} instance for interactive searches.
+     *
+     * @return configured TransportClient
+     */
+    public static TransportClient getClient()
+    {
+        return getClient(ClientManager.Workload.SEARCH);
+    }
+
+    /**
+     * Get a connected Elasticsearch {@link TransportClient} instance for a given workload class.
+     *
+     * @param workload workload class
+     * @return configured TransportClient
+     */
+    public static TransportClient getClient(ClientManager.Workload workload)
+    {
+        return ClientManager.getInstance().getTransportClient(workload);
+    }
+
+    /**
+     * Cleanly shut down and reset all Elasticsearch {@link TransportClient}s.
      * The next call to {@link #getClient()} will create a new transport client.
      */
     public static void shutdownClient()
     {
-        synchronized (sClientMutex) {
-            if (null != sClient) {
-                sClient.close();
-            }
-            sClient = null;
-        }
+        ClientManager.shutdown();
     }
 
     /**
@@ -140,4 +185,27 @@ public class Configured
     {
         return Logger.getLogger("de.webis.chatnoir2.webclient");
     }
+
+    /**
+     * Listener for configuration reloads.
+     */
+    public interface ConfigListener
+    {
+        /**
+         * Check whether a new configuration can be applied before it is activated.
+         *
+         * @param conf new configuration
+         * @throws IllegalArgumentException if the configuration is invalid
+         */
+        default void validateConfig(ConfigLoader.Config conf)
+        {
+        }
+
+        /**
+         * Rebuild derived state after a new configuration has been activated.
+         *
+         * @param conf new configuration
+         */
+        void configReloaded(ConfigLoader.Config conf);
+    }
 }
@@ -25,12 +25,113 @@
 
 package de.webis.chatnoir2.webclient.util;
 
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.DetectorFactory;
+import com.cybozu.labs.langdetect.LangDetectException;
+import com.cybozu.labs.langdetect.Language;
+import de.webis.chatnoir2.webclient.resources.ConfigLoader;
+import org.apache.shiro.cache.Cache;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
 /**
- * Stub language detector wrapper class.
+ * Language detector for short texts such as search queries.
+ *
+ * Language profiles are loaded once by {@link #init()} and shared by all detections.
+ * Detection results for short texts are cached, since queries tend to repeat.
  */
 public class LangDetector
 {
-    private static boolean mInitialized = false;
+    /**
+     * Name of EH cache for detected languages.
+     */
+    private static final String CACHE_NAME = LangDetector.class.getName() + "-0-languages";
+
+    /**
+     * Fixed seed for reproducible detection results.
+     */
+    private static final long SEED = 0L;
+
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    private static volatile boolean mInitialized = false;
+
+    private static boolean mEnabled = false;
+    private static HashMap<String, Double> mPriorMap = null;
+    private static double mMinProbability;
+    private static int mMinLength;
+    private static int mMinWords;
+    private static int mMaxCachedLength;
+    private static Cache<String, String> mCache = null;
+
+    private static final AtomicLong mCacheHits = new AtomicLong();
+    private static final AtomicLong mCacheMisses = new AtomicLong();
+    private static final AtomicLong mUndetected = new AtomicLong();
+
+    /**
+     * Load language profiles and configuration.
+     * Detection will be disabled if profiles cannot be loaded.
+     */
+    public static synchronized void init()
+    {
+        if (mInitialized) {
+            return;
+        }
+
+        ConfigLoader.Config conf = Configured.getConf();
+        mMinProbability = conf.getDouble("lang_detection.min_probability", 0.9);
+        mMinLength = conf.getInteger("lang_detection.min_length", 3);
+        mMinWords = conf.getInteger("lang_detection.min_words", 2);
+        mMaxCachedLength = conf.getInteger("lang_detection.max_cached_length", 100);
+        mEnabled = conf.getBoolean("lang_detection.enabled", true);
+
+        if (mEnabled) {
+            String profileDir = conf.getString("lang_detection.profiles", "profiles.sm");
+            try {
+                DetectorFactory.clear();
+                DetectorFactory.loadProfile(readProfiles(profileDir));
+                DetectorFactory.setSeed(SEED);
+
+                List<String> languages = Arrays.asList(conf.getStringArray("lang_detection.languages"));
+                if (languages.isEmpty()) {
+                    languages = Arrays.asList(conf.getStringArray("search.languages"));
+                }
+                if (!languages.isEmpty()) {
+                    mPriorMap = new HashMap<>();
+                    for (String lang : DetectorFactory.getLangList()) {
+                        mPriorMap.put(lang, languages.contains(lang) ? 1.0 : 0.0);
+                    }
+                }
+
+                mCache = new CacheManager().getCache(CACHE_NAME);
+                Configured.getSysLogger().info(String.format("Loaded %d language profiles from '%s'",
+                        DetectorFactory.getLangList().size(), profileDir));
+            } catch (IOException | LangDetectException e) {
+                Configured.getSysLogger().error(String.format(
+                        "Failed to load language profiles from '%s', language detection disabled: %s",
+                        profileDir, e.getMessage()));
+                mEnabled = false;
+            }
+        }
+
+        mInitialized = true;
+    }
+
+    /**
+     * @return whether language profiles have been loaded
+     */
+    public static boolean isInitialized()
+    {
+        return mInitialized;
+    }
 
     /**
      * Detect language of given string and return language code.
@@ -53,6 +154,169 @@ public class LangDetector
      */
     public static String detect(final String string, final String defaultLang)
     {
-        return defaultLang;
+        return detect(string, defaultLang, true);
+    }
+
+    /**
+     * Detect language of given string and return language code.
+     *
+     * @param string string to detect
+     * @param defaultLang default language to return if language detection fails
+     * @param useCache whether to use cached detection results
+     * @return language code
+     */
+    public static String detect(final String string, final String defaultLang, final boolean useCache)
+    {
+        if (!mInitialized) {
+            init();
+        }
+        if (!mEnabled) {
+            return defaultLang;
+        }
+
+        final String text = WHITESPACE_PATTERN.matcher(string.trim()).replaceAll(" ").toLowerCase();
+        int letters = 0;
+        int words = text.isEmpty() ? 0 : 1;
+        for (int i = 0; i < text.length(); ++i) {
+            if (Character.isLetter(text.charAt(i))) {
+                ++letters;
+            } else if (text.charAt(i) == ' ') {
+                ++words;
+            }
+        }
+        if (letters < mMinLength || words < mMinWords) {
+            return defaultLang;
+        }
+
+        final boolean cacheable = useCache && text.length() <= mMaxCachedLength;
+        if (cacheable) {
+            String lang = mCache.get(text);
+            if (null != lang) {
+                mCacheHits.incrementAndGet();
+                return lang.isEmpty() ? defaultLang : lang;
+            }
+            mCacheMisses.incrementAndGet();
+        }
+
+        String lang = detectLanguage(text);
+        if (cacheable) {
+            mCache.put(text, lang);
+        }
+        if (lang.isEmpty()) {
+            mUndetected.incrementAndGet();
+            return defaultLang;
+        }
+        return lang;
+    }
+
+    /**
+     * Get language detection statistics.
+     *
+     * @return map of statistics counters
+     */
+    public static Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = mCacheHits.get();
+        long misses = mCacheMisses.get();
+        stats.put("enabled", mEnabled);
+        stats.put("languages", mEnabled ? DetectorFactory.getLangList().size() : 0);
+        stats.put("cache_size", null != mCache ? mCache.size() : 0);
+        stats.put("cache_hits", hits);
+        stats.put("cache_misses", misses);
+        stats.put("cache_hit_ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0.0);
+        stats.put("undetected", mUndetected.get());
+        return stats;
+    }
+
+    /**
+     * Detect language of a normalized string without caching.
+     *
+     * @param text text to detect
+     * @return two-character language code or an empty string if no language is probable enough
+     */
+    private static String detectLanguage(final String text)
+    {
+        try {
+            // detectors keep their input text and cannot be reused, but creating one is cheap,
+            // since all detectors share the loaded profiles
+            Detector detector = DetectorFactory.create();
+            if (null != mPriorMap) {
+                detector.setPriorMap(mPriorMap);
+            }
+            detector.append(text);
+
+            List<Language> probabilities = detector.getProbabilities();
+            if (probabilities.isEmpty() || probabilities.get(0).prob < mMinProbability) {
+                return "";
+            }
+
+            // strip region suffixes such as zh-cn
+            String lang = probabilities.get(0).lang;
+            return lang.length() > 2 ? lang.substring(0, 2) : lang;
+        } catch (LangDetectException e) {
+            // no detectable features in text
+            return "";
+        }
+    }
+
+    /**
+     * Read all language profiles from a classpath directory.
+     *
+     * @param dir classpath directory
+     * @return list of JSON profiles
+     */
+    private static List<String> readProfiles(final String dir) throws IOException
+    {
+        final URL url = LangDetector.class.getClassLoader().getResource(dir);
+        if (null == url) {
+            throw new FileNotFoundException("No such classpath directory: " + dir);
+        }
+
+        final List<String> profiles = new ArrayList<>();
+        if (url.getProtocol().equals("jar")) {
+            final JarURLConnection connection = (JarURLConnection) url.openConnection();
+            connection.setUseCaches(false);
+            try (JarFile jar = connection.getJarFile()) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().startsWith(dir + "/")) {
+                        profiles.add(readProfile(jar.getInputStream(entry)));
+                    }
+                }
+            }
+        } else {
+            final File[] files = new File(url.getPath()).listFiles();
+            if (null != files) {
+                for (File file : files) {
+                    profiles.add(readProfile(new FileInputStream(file)));
+                }
+            }
+        }
+
+        if (profiles.isEmpty()) {
+            throw new FileNotFoundException("No language profiles found in " + dir);
+        }
+        return profiles;
+    }
+
+    /**
+     * Read a single JSON profile.
+     *
+     * @param stream profile input stream (will be closed)
+     * @return profile string
+     */
+    private static String readProfile(final InputStream stream) throws IOException
+    {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            StringBuilder builder = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            return builder.toString();
+        }
     }
 }
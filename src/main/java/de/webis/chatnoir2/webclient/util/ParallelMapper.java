@@ -0,0 +1,153 @@
+/*
+ * ChatNoir 2 Web Frontend.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package de.webis.chatnoir2.webclient.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Order-preserving parallel mapping of lists on a bounded shared fork-join pool.
+ *
+ * Lists below a configurable size threshold are mapped serially on the calling thread,
+ * since splitting small lists costs more than it saves.
+ */
+public class ParallelMapper
+{
+    private static ForkJoinPool sPool = null;
+
+    /**
+     * Map all items of a list. Lists at or above the configured size threshold
+     * (<code>serp.parallel_postprocessing.threshold</code>) are mapped in parallel.
+     *
+     * @param items items to map
+     * @param mapper mapping function (must be thread-safe)
+     * @param <T> item type
+     * @param <R> result type
+     * @return list of mapped items in input order
+     */
+    public static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> mapper)
+    {
+        return map(items, mapper, Configured.getConf().getInteger("serp.parallel_postprocessing.threshold", 40));
+    }
+
+    /**
+     * Map all items of a list.
+     *
+     * @param items items to map
+     * @param mapper mapping function (must be thread-safe)
+     * @param threshold minimum list size for parallel mapping (0 or less to disable parallel mapping)
+     * @param <T> item type
+     * @param <R> result type
+     * @return list of mapped items in input order
+     */
+    public static <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> mapper, int threshold)
+    {
+        ForkJoinPool pool = threshold > 0 && items.size() >= threshold ? getPool() : null;
+        if (null == pool || pool.getParallelism() < 2) {
+            List<R> results = new ArrayList<>(items.size());
+            for (T item : items) {
+                results.add(mapper.apply(item));
+            }
+            return results;
+        }
+
+        Object[] results = new Object[items.size()];
+        int chunkSize = Math.max(1, items.size() / (pool.getParallelism() * 2));
+        pool.invoke(new MapAction<>(items, mapper, results, 0, items.size(), chunkSize));
+
+        @SuppressWarnings("unchecked")
+        List<R> resultList = new ArrayList<>((List<R>) Arrays.asList(results));
+        return resultList;
+    }
+
+    /**
+     * Shut down the shared pool (if it exists).
+     */
+    public static synchronized void shutdown()
+    {
+        if (null != sPool) {
+            sPool.shutdownNow();
+            sPool = null;
+        }
+    }
+
+    /**
+     * @return shared pool with the configured parallelism (<code>serp.parallel_postprocessing.threads</code>)
+     */
+    private static synchronized ForkJoinPool getPool()
+    {
+        if (null == sPool) {
+            int threads = Configured.getConf().getInteger("serp.parallel_postprocessing.threads",
+                    Math.min(4, Runtime.getRuntime().availableProcessors()));
+            sPool = new ForkJoinPool(Math.max(1, threads));
+        }
+        return sPool;
+    }
+
+    /**
+     * Fork-join action mapping a range of items into a shared result array.
+     */
+    private static class MapAction<T, R> extends RecursiveAction
+    {
+        private final List<T> mItems;
+        private final Function<? super T, ? extends R> mMapper;
+        private final Object[] mResults;
+        private final int mFrom;
+        private final int mTo;
+        private final int mChunkSize;
+
+        MapAction(List<T> items, Function<? super T, ? extends R> mapper, Object[] results,
+                  int from, int to, int chunkSize)
+        {
+            mItems = items;
+            mMapper = mapper;
+            mResults = results;
+            mFrom = from;
+            mTo = to;
+            mChunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (mTo - mFrom <= mChunkSize) {
+                for (int i = mFrom; i < mTo; ++i) {
+                    mResults[i] = mMapper.apply(mItems.get(i));
+                }
+                return;
+            }
+
+            int mid = (mFrom + mTo) >>> 1;
+            invokeAll(new MapAction<>(mItems, mMapper, mResults, mFrom, mid, mChunkSize),
+                    new MapAction<>(mItems, mMapper, mResults, mid, mTo, mChunkSize));
+        }
+    }
+}
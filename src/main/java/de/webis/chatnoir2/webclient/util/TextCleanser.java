@@ -25,6 +25,9 @@
 
 package de.webis.chatnoir2.webclient.util;
 
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Text cleansing tools.
@@ -91,6 +94,20 @@ public class TextCleanser
             "Ã", "ÃẄ", "Å¶", "ÅṖ", "Åẁ", "Ãṡ", "ÅẄ", "Åẅ", "ÅẄ", "Åẅ", "Ã", "Ãẅ", "Âṁ"
     };
 
+    /**
+     * Automaton matching all broken character sequences in a single pass.
+     */
+    private static final BrokenCharsAutomaton BROKEN_CHARS = new BrokenCharsAutomaton();
+
+    private static final Pattern UNCLOSED_BRACKETS_PATTERN =
+            Pattern.compile("(\\(|\\[|<).{0,10}(?!(?:\\)|]|>))\\s*$");
+    private static final Pattern UNCLOSED_BRACKETS_HTML_PATTERN =
+            Pattern.compile("(\\(|\\[|&lt;).{0,10}(?!(?:\\)|]|&gt;))\\s*$");
+    private static final Pattern REPEATED_WORDS_PATTERN =
+            Pattern.compile("([^\\s]+?) \\1{2,}");
+    private static final Pattern REPEATED_WORDS_HTML_PATTERN =
+            Pattern.compile("((?:<(\\w+)>)?([^\\s])+?(?:</\\2>)?)(\\s+\\1){2,}");
+
     private boolean mIsHtml;
     private String mString;
 
@@ -117,9 +134,8 @@ public class TextCleanser
     public static String cleanseAll(String str, boolean html)
     {
         // order is important!
-        return new TextCleanser(str, html)
-                .encodingErrors()
-                .doubleHtmlEscape()
+        // encoding errors and double HTML escapes are repaired in one combined pass
+        return new TextCleanser(repair(str, true, true), html)
                 .unclosedBrackets()
                 .repeatedWords()
                 .whitespace()
@@ -152,20 +168,7 @@ public class TextCleanser
      */
     public TextCleanser encodingErrors()
     {
-        // repair western unicode characters which were interpreted as ISO 8859-1 or ISO 8859-15
-        for (int i = 0; i < WESTERN_UNICODE_CHARS.length; ++i) {
-            mString = mString.replace(BROKEN_ISO_8859_1_CHARS[i], WESTERN_UNICODE_CHARS[i]);
-            if (!BROKEN_ISO_8859_1_CHARS[i].equals(BROKEN_ISO_8859_15_CHARS[i])) {
-                mString = mString.replace(BROKEN_ISO_8859_15_CHARS[i], WESTERN_UNICODE_CHARS[i]);
-            }
-            if (!BROKEN_ISO_8859_1_CHARS[i].equals(BROKEN_ISO_8859_14_CHARS[i])) {
-                mString = mString.replace(BROKEN_ISO_8859_14_CHARS[i], WESTERN_UNICODE_CHARS[i]);
-            }
-        }
-
-        // strip unicode replacement characters
-        mString =  mString.replace("\ufffd", "");
-
+        mString = repair(mString, true, false);
         return this;
     }
 
@@ -174,7 +177,7 @@ public class TextCleanser
      */
     public TextCleanser doubleHtmlEscape()
     {
-        mString = mString.replaceAll("&amp;(\\w{1,8});", "&$1;");
+        mString = repair(mString, false, true);
         return this;
     }
 
@@ -184,11 +187,19 @@ public class TextCleanser
      */
     public TextCleanser unclosedBrackets()
     {
-        if (mIsHtml) {
-            mString = mString.replaceFirst("(\\(|\\[|&lt;).{0,10}(?!(?:\\)|]|&gt;))\\s*$", "").trim();
-        } else {
-            mString = mString.replaceFirst("(\\(|\\[|<).{0,10}(?!(?:\\)|]|>))\\s*$", "").trim();
+        // a match can only start within the last few characters before any trailing white space,
+        // so there is no need to let the regex engine try every position of the string
+        int regionStart = mString.length() - 16;
+        while (regionStart + 16 > 0 && isTrailingWhitespace(mString.charAt(regionStart + 15))) {
+            --regionStart;
+        }
+
+        Matcher matcher = (mIsHtml ? UNCLOSED_BRACKETS_HTML_PATTERN : UNCLOSED_BRACKETS_PATTERN).matcher(mString);
+        matcher.region(Math.max(0, regionStart), mString.length());
+        if (matcher.find()) {
+            mString = mString.substring(0, matcher.start()) + mString.substring(matcher.end());
         }
+        mString = mString.trim();
         return this;
     }
 
@@ -197,12 +208,42 @@ public class TextCleanser
      */
     public TextCleanser whitespace()
     {
-        if (!mIsHtml) {
-            mString = mString.replaceAll("[ \\s]+", " ");
-        } else {
-            mString = mString.replaceAll("(?:[ \\s]|&nbsp;)+", " ");
+        StringBuilder builder = null;
+        int i = 0;
+        int last = 0;
+        while (i < mString.length()) {
+            int runEnd = i;
+            int runLength = 0;
+            while (true) {
+                if (runEnd < mString.length() && isWhitespace(mString.charAt(runEnd))) {
+                    ++runEnd;
+                } else if (mIsHtml && mString.startsWith("&nbsp;", runEnd)) {
+                    runEnd += 6;
+                } else {
+                    break;
+                }
+                ++runLength;
+            }
+
+            if (0 == runLength) {
+                ++i;
+                continue;
+            }
+
+            // runs which already consist of a single space stay untouched
+            if (runLength > 1 || mString.charAt(i) != ' ') {
+                if (null == builder) {
+                    builder = new StringBuilder(mString.length());
+                }
+                builder.append(mString, last, i).append(' ');
+                last = runEnd;
+            }
+            i = runEnd;
         }
 
+        if (null != builder) {
+            mString = builder.append(mString, last, mString.length()).toString();
+        }
         return this;
     }
 
@@ -234,12 +275,417 @@ public class TextCleanser
      */
     public TextCleanser repeatedWords()
     {
-        if (!mIsHtml) {
-            mString = mString.replaceAll("([^\\s]+?) \\1{2,}", "").trim();
+        if (!mayContainRepeatedWords(mString, mIsHtml)) {
+            mString = mString.trim();
+        } else if (!mIsHtml) {
+            mString = REPEATED_WORDS_PATTERN.matcher(mString).replaceAll("").trim();
         } else {
-            mString = mString.replaceAll("((?:<(\\w+)>)?([^\\s])+?(?:</\\2>)?)(\\s+\\1){2,}", "$1 $1").trim();
+            mString = REPEATED_WORDS_HTML_PATTERN.matcher(mString).replaceAll("$1 $1").trim();
         }
 
         return this;
     }
+
+    /**
+     * Repair encoding errors and / or double HTML escapes in a single pass over the string.
+     * The result is identical to repairing all broken character sequences one after another
+     * in table order, stripping replacement characters and then replacing
+     * <code>&amp;amp;(\w{1,8});</code> with <code>&amp;$1;</code>.
+     *
+     * @param str input string
+     * @param encoding repair encoding errors
+     * @param escaping repair double HTML escapes
+     * @return repaired string
+     */
+    private static String repair(String str, boolean encoding, boolean escaping)
+    {
+        int[] matches = null;
+        if (encoding) {
+            matches = BROKEN_CHARS.findAll(str);
+            if (null != matches && BROKEN_CHARS.mayCascade(str, matches)) {
+                // replacing a sequence may form a new one together with its neighbours, which the
+                // table-ordered replacement would repair as well, so fall back to that
+                str = repairEncodingSequentially(str);
+                matches = null;
+                encoding = false;
+            }
+        }
+
+        if (null == matches && (!encoding || str.indexOf('\ufffd') == -1)
+                && (!escaping || !str.contains("&amp;"))) {
+            return str;
+        }
+
+        StringBuilder builder = new StringBuilder(str.length());
+        int nextMatch = 0;
+        int unescapeStart = 0;
+        int i = 0;
+        while (i < str.length()) {
+            if (null != matches && nextMatch < matches.length && matches[nextMatch] == i) {
+                builder.append(BROKEN_CHARS.getReplacement(matches[nextMatch + 2]));
+                i = matches[nextMatch + 1];
+                nextMatch += 3;
+                continue;
+            }
+
+            char c = str.charAt(i++);
+            if (encoding && c == '\ufffd') {
+                continue;
+            }
+
+            if (escaping && c == ';') {
+                int entityStart = findDoubleEscapedEntity(builder, unescapeStart);
+                if (entityStart != -1) {
+                    // remove "amp;"
+                    builder.delete(entityStart + 1, entityStart + 5).append(';');
+                    unescapeStart = builder.length();
+                    continue;
+                }
+            }
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Find the start of a double escaped HTML entity (<code>&amp;amp;\w{1,8}</code>)
+     * at the end of a builder whose terminating semicolon is about to be appended.
+     *
+     * @param builder builder
+     * @param minStart minimum start position (end of the previous repaired entity)
+     * @return start position or -1 if builder doesn't end with a double escaped entity
+     */
+    private static int findDoubleEscapedEntity(StringBuilder builder, int minStart)
+    {
+        int nameStart = builder.length();
+        while (nameStart > 0 && builder.length() - nameStart < 9 && isWordChar(builder.charAt(nameStart - 1))) {
+            --nameStart;
+        }
+
+        int nameLength = builder.length() - nameStart;
+        int start = nameStart - 5;
+        if (nameLength < 1 || nameLength > 8 || start < minStart) {
+            return -1;
+        }
+
+        if (builder.charAt(start) == '&' && builder.charAt(start + 1) == 'a' && builder.charAt(start + 2) == 'm'
+                && builder.charAt(start + 3) == 'p' && builder.charAt(start + 4) == ';') {
+            return start;
+        }
+        return -1;
+    }
+
+    /**
+     * Repair encoding errors by replacing broken character sequences one after another in table order.
+     *
+     * @param str input string
+     * @return repaired string
+     */
+    private static String repairEncodingSequentially(String str)
+    {
+        // repair western unicode characters which were interpreted as ISO 8859-1 or ISO 8859-15
+        for (int i = 0; i < WESTERN_UNICODE_CHARS.length; ++i) {
+            str = str.replace(BROKEN_ISO_8859_1_CHARS[i], WESTERN_UNICODE_CHARS[i]);
+            if (!BROKEN_ISO_8859_1_CHARS[i].equals(BROKEN_ISO_8859_15_CHARS[i])) {
+                str = str.replace(BROKEN_ISO_8859_15_CHARS[i], WESTERN_UNICODE_CHARS[i]);
+            }
+            if (!BROKEN_ISO_8859_1_CHARS[i].equals(BROKEN_ISO_8859_14_CHARS[i])) {
+                str = str.replace(BROKEN_ISO_8859_14_CHARS[i], WESTERN_UNICODE_CHARS[i]);
+            }
+        }
+
+        // strip unicode replacement characters
+        return str.replace("\ufffd", "");
+    }
+
+    /**
+     * Check a necessary condition for matches of the repeated words patterns, which is a lot cheaper
+     * than running the patterns (with their back references) on every position of the string.
+     *
+     * In HTML mode, a match consists of a word which is also a suffix of the preceding word
+     * and a prefix of the following word. Otherwise, a match consists of a word followed by
+     * a single space and another word starting with a suffix of the first word repeated twice.
+     *
+     * @param str string to check
+     * @param html whether string is HTML
+     * @return false if neither pattern can match
+     */
+    private static boolean mayContainRepeatedWords(String str, boolean html)
+    {
+        int prevStart = -1;
+        int prevEnd = -1;
+        int start = -1;
+        int end = -1;
+        int i = 0;
+        while (i < str.length()) {
+            if (isSpace(str.charAt(i))) {
+                ++i;
+                continue;
+            }
+
+            int nextStart = i;
+            while (i < str.length() && !isSpace(str.charAt(i))) {
+                ++i;
+            }
+            int nextEnd = i;
+
+            if (html && prevStart != -1) {
+                int len = end - start;
+                if (len <= prevEnd - prevStart && len <= nextEnd - nextStart
+                        && str.regionMatches(prevEnd - len, str, start, len)
+                        && str.regionMatches(nextStart, str, start, len)) {
+                    return true;
+                }
+            } else if (!html && start != -1 && nextStart == end + 1 && str.charAt(end) == ' ') {
+                for (int len = 1; len <= end - start && 2 * len <= nextEnd - nextStart; ++len) {
+                    if (str.regionMatches(nextStart, str, end - len, len)
+                            && str.regionMatches(nextStart + len, str, end - len, len)) {
+                        return true;
+                    }
+                }
+            }
+
+            prevStart = start;
+            prevEnd = end;
+            start = nextStart;
+            end = nextEnd;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether c is matched by <code>\w</code>
+     */
+    private static boolean isWordChar(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * @return whether c is matched by <code>\s</code>
+     */
+    private static boolean isSpace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000b' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * @return whether c is matched by <code>[\u00a0\s]</code>
+     */
+    private static boolean isWhitespace(char c)
+    {
+        return isSpace(c) || c == '\u00a0';
+    }
+
+    /**
+     * @return whether c is matched by <code>\s</code> or is a line terminator
+     */
+    private static boolean isTrailingWhitespace(char c)
+    {
+        return isSpace(c) || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * Aho-Corasick automaton over all broken character sequences.
+     *
+     * The broken sequences neither overlap nor contain each other, so every occurrence
+     * in a string is found independently of the table order.
+     */
+    private static class BrokenCharsAutomaton
+    {
+        /**
+         * Transitions of the root state, indexed by character.
+         */
+        private final int[] mRootTransitions = new int[Character.MAX_VALUE + 1];
+
+        private final char[][] mTransitionChars;
+        private final int[][] mTransitionTargets;
+        private final int[] mFailure;
+
+        /**
+         * Index of the sequence recognized by each state or -1.
+         */
+        private final int[] mOutput;
+
+        private final List<String> mSequences = new ArrayList<>();
+        private final List<String> mReplacements = new ArrayList<>();
+
+        /**
+         * Occurrences of characters in broken sequences as (sequence index, position) pairs.
+         */
+        private final Map<Character, List<int[]>> mOccurrences = new HashMap<>();
+
+        BrokenCharsAutomaton()
+        {
+            // sequences in table order, first replacement of a sequence wins
+            for (int i = 0; i < WESTERN_UNICODE_CHARS.length; ++i) {
+                for (String seq : new String[]{BROKEN_ISO_8859_1_CHARS[i], BROKEN_ISO_8859_15_CHARS[i],
+                        BROKEN_ISO_8859_14_CHARS[i]}) {
+                    if (!mSequences.contains(seq)) {
+                        mSequences.add(seq);
+                        mReplacements.add(WESTERN_UNICODE_CHARS[i]);
+                    }
+                }
+            }
+
+            // build trie
+            List<Map<Character, Integer>> transitions = new ArrayList<>();
+            List<Integer> output = new ArrayList<>();
+            transitions.add(new LinkedHashMap<>());
+            output.add(-1);
+            for (int i = 0; i < mSequences.size(); ++i) {
+                String seq = mSequences.get(i);
+                int state = 0;
+                for (int j = 0; j < seq.length(); ++j) {
+                    Integer next = transitions.get(state).get(seq.charAt(j));
+                    if (null == next) {
+                        next = transitions.size();
+                        transitions.add(new LinkedHashMap<>());
+                        output.add(-1);
+                        transitions.get(state).put(seq.charAt(j), next);
+                    }
+                    state = next;
+
+                    mOccurrences.computeIfAbsent(seq.charAt(j), k -> new ArrayList<>()).add(new int[]{i, j});
+                }
+                output.set(state, i);
+            }
+
+            int numStates = transitions.size();
+            mTransitionChars = new char[numStates][];
+            mTransitionTargets = new int[numStates][];
+            mFailure = new int[numStates];
+            mOutput = new int[numStates];
+            for (int s = 0; s < numStates; ++s) {
+                Map<Character, Integer> t = transitions.get(s);
+                mTransitionChars[s] = new char[t.size()];
+                mTransitionTargets[s] = new int[t.size()];
+                int k = 0;
+                for (Map.Entry<Character, Integer> e : t.entrySet()) {
+                    mTransitionChars[s][k] = e.getKey();
+                    mTransitionTargets[s][k] = e.getValue();
+                    ++k;
+                }
+                mOutput[s] = output.get(s);
+            }
+            for (Map.Entry<Character, Integer> e : transitions.get(0).entrySet()) {
+                mRootTransitions[e.getKey()] = e.getValue();
+            }
+
+            // compute failure links breadth-first
+            Deque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                for (int k = 0; k < mTransitionChars[s].length; ++k) {
+                    int target = mTransitionTargets[s][k];
+                    mFailure[target] = next(mFailure[s], mTransitionChars[s][k]);
+                    queue.add(target);
+                }
+            }
+        }
+
+        /**
+         * Follow the transition for a character, falling back along failure links.
+         */
+        private int next(int state, char c)
+        {
+            while (0 != state) {
+                char[] chars = mTransitionChars[state];
+                for (int k = 0; k < chars.length; ++k) {
+                    if (chars[k] == c) {
+                        return mTransitionTargets[state][k];
+                    }
+                }
+                state = mFailure[state];
+            }
+            return mRootTransitions[c];
+        }
+
+        /**
+         * Find all broken character sequences in a string.
+         *
+         * @param str input string
+         * @return flat array of (start, end, sequence index) triples or null if there are no matches
+         */
+        int[] findAll(String str)
+        {
+            int[] matches = null;
+            int numMatches = 0;
+            int state = 0;
+            for (int i = 0; i < str.length(); ++i) {
+                state = next(state, str.charAt(i));
+                int seq = mOutput[state];
+                if (-1 == seq) {
+                    continue;
+                }
+
+                if (null == matches) {
+                    matches = new int[12];
+                } else if (numMatches + 3 > matches.length) {
+                    matches = Arrays.copyOf(matches, matches.length * 2);
+                }
+                matches[numMatches++] = i + 1 - mSequences.get(seq).length();
+                matches[numMatches++] = i + 1;
+                matches[numMatches++] = seq;
+                state = 0;
+            }
+
+            return null == matches ? null : Arrays.copyOf(matches, numMatches);
+        }
+
+        /**
+         * Check whether the replacement of any match could form a new broken sequence
+         * together with its neighbouring characters (or neighbouring replacements).
+         *
+         * @param str input string
+         * @param matches matches as returned by {@link #findAll(String)}
+         * @return true if a new sequence may be formed
+         */
+        boolean mayCascade(String str, int[] matches)
+        {
+            for (int m = 0; m < matches.length; m += 3) {
+                List<int[]> occurrences = mOccurrences.get(mReplacements.get(matches[m + 2]).charAt(0));
+                if (null == occurrences) {
+                    continue;
+                }
+
+                int prevEnd = m > 0 ? matches[m - 2] : -1;
+                int nextStart = m + 3 < matches.length ? matches[m + 3] : Integer.MAX_VALUE;
+                for (int[] occurrence : occurrences) {
+                    String seq = mSequences.get(occurrence[0]);
+                    int pos = occurrence[1];
+
+                    boolean possible = true;
+                    for (int j = pos - 1, p = matches[m] - 1; possible && j >= 0; --j, --p) {
+                        if (p < prevEnd) {
+                            // neighbouring replacement, anything may happen from here
+                            break;
+                        }
+                        possible = p >= 0 && str.charAt(p) == seq.charAt(j);
+                    }
+                    for (int j = pos + 1, p = matches[m + 1]; possible && j < seq.length(); ++j, ++p) {
+                        if (p >= nextStart) {
+                            break;
+                        }
+                        possible = p < str.length() && str.charAt(p) == seq.charAt(j);
+                    }
+
+                    if (possible) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param seq sequence index
+         * @return replacement of the sequence
+         */
+        String getReplacement(int seq)
+        {
+            return mReplacements.get(seq);
+        }
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.api;
+
+import de.webis.chatnoir2.webclient.api.v1.BatchApiModule;
+import de.webis.chatnoir2.webclient.search.SearchRequestBatch;
+import org.elasticsearch.action.search.SearchResponse;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class BatchApiModuleTest
+{
+    /**
+     * Batch which completes its queued search without contacting a cluster.
+     */
+    private static class TestBatch extends SearchRequestBatch
+    {
+        final CompletableFuture<SearchResponse> mQueued = new CompletableFuture<>();
+        int mExecuted = 0;
+
+        @Override
+        public synchronized void execute()
+        {
+            ++mExecuted;
+            mQueued.complete(new SearchResponse());
+        }
+    }
+
+    @Test
+    public void testMalformedOperationAfterSearch()
+    {
+        final TestBatch batch = new TestBatch();
+        final List<CompletableFuture<SearchResponse>> results = BatchApiModule.startOperations(3, batch, i -> {
+            if (i == 0) {
+                return batch.mQueued;
+            }
+            // non-string index entry
+            new JSONArray("[1]").getString(0);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertEquals(1, batch.mExecuted);
+        assertEquals(3, results.size());
+        assertNotNull(results.get(0).join());
+        for (int i = 1; i < results.size(); ++i) {
+            assertTrue(results.get(i).isCompletedExceptionally());
+            try {
+                results.get(i).join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof JSONException);
+            }
+        }
+    }
+
+    @Test
+    public void testExecuteOnError()
+    {
+        final TestBatch batch = new TestBatch();
+        try {
+            BatchApiModule.startOperations(2, batch, i -> {
+                throw new OutOfMemoryError();
+            });
+            fail();
+        } catch (OutOfMemoryError ignored) {}
+        assertEquals(1, batch.mExecuted);
+        assertTrue(batch.mQueued.isDone());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.test.search;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import de.webis.chatnoir2.webclient.search.CompiledPattern;
+
+public class CompiledPatternTest
+{
+    @Test
+    public void testLiteral()
+    {
+        CompiledPattern p = CompiledPattern.compile("en\\.wikipedia\\.org");
+        assertEquals(Collections.singletonList("en.wikipedia.org"), p.getTerms());
+        assertTrue(p.getPrefixes().isEmpty());
+        assertNull(p.getRegexp());
+        assertFalse(p.isUnchanged());
+    }
+
+    @Test
+    public void testFinite()
+    {
+        CompiledPattern p = CompiledPattern.compile("(en|de)\\.wikipedia\\.org");
+        assertEquals(Arrays.asList("en.wikipedia.org", "de.wikipedia.org"), p.getTerms());
+        assertNull(p.getRegexp());
+
+        p = CompiledPattern.compile("https?://[ab]");
+        assertEquals(4, p.getTerms().size());
+        assertTrue(p.getTerms().contains("https://b"));
+        assertNull(p.getRegexp());
+    }
+
+    @Test
+    public void testPrefix()
+    {
+        CompiledPattern p = CompiledPattern.compile("/wiki/.*");
+        assertTrue(p.getTerms().isEmpty());
+        assertEquals(Collections.singletonList("/wiki/"), p.getPrefixes());
+        assertNull(p.getRegexp());
+
+        p = CompiledPattern.compile("/|/(blog|news)/.*");
+        assertEquals(Collections.singletonList("/"), p.getTerms());
+        assertEquals(Arrays.asList("/blog/", "/news/"), p.getPrefixes());
+        assertNull(p.getRegexp());
+    }
+
+    @Test
+    public void testPartial()
+    {
+        CompiledPattern p = CompiledPattern.compile("/(wiki/|index\\.[a-z]+)?");
+        assertEquals(Arrays.asList("/", "/wiki/"), p.getTerms());
+        assertTrue(p.getPrefixes().isEmpty());
+        assertEquals("/index\\.[a-z]+", p.getRegexp());
+        assertFalse(p.isUnchanged());
+    }
+
+    @Test
+    public void testUnchanged()
+    {
+        assertTrue(CompiledPattern.compile("[a-z]+\\.spam\\.com").isUnchanged());
+        assertTrue(CompiledPattern.compile("~(foo)").isUnchanged());
+        assertTrue(CompiledPattern.compile("(unbalanced").isUnchanged());
+    }
+}
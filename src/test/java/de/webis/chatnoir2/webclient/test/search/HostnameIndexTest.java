@@ -0,0 +1,90 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.test.search;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.TreeMap;
+
+import de.webis.chatnoir2.webclient.search.HostnameIndex;
+
+public class HostnameIndexTest
+{
+    private static HostnameIndex.Dictionary buildDictionary() throws Exception
+    {
+        TreeMap<String, Long> hosts = new TreeMap<>();
+        hosts.put("www.example.com", 120L);
+        hosts.put("example.org", 40L);
+        hosts.put("www.exemple.com", 3L);
+        hosts.put("www.example.co", 7L);
+        hosts.put("en.wikipedia.org", 5000L);
+        return new HostnameIndex.Dictionary(hosts);
+    }
+
+    @Test
+    public void testLookup() throws Exception
+    {
+        HostnameIndex.Dictionary dict = buildDictionary();
+        assertEquals(5, dict.size());
+        assertEquals(120L, dict.getDocCount("www.example.com"));
+        assertEquals(5000L, dict.getDocCount("en.wikipedia.org"));
+        assertEquals(-1L, dict.getDocCount("example.com"));
+        assertEquals(-1L, dict.getDocCount("www.example.c"));
+    }
+
+    @Test
+    public void testResolve() throws Exception
+    {
+        HostnameIndex.Dictionary dict = buildDictionary();
+        assertEquals("example.org", dict.resolve("Example.org"));
+        assertEquals("www.example.com", dict.resolve("example.com"));
+        assertEquals("www.example.com", dict.resolve("www.example.com"));
+        assertNull(dict.resolve("example.net"));
+    }
+
+    @Test
+    public void testFindFuzzy() throws Exception
+    {
+        HostnameIndex.Dictionary dict = buildDictionary();
+
+        List<HostnameIndex.Candidate> candidates = dict.findFuzzy("www.exampel.com", 2, 10);
+        assertEquals(1, candidates.size());
+        assertEquals("www.example.com", candidates.get(0).getHost());
+        assertEquals(2, candidates.get(0).getDistance());
+        assertEquals(120L, candidates.get(0).getDocCount());
+
+        // equal distance is ordered by document count
+        candidates = dict.findFuzzy("www.example.cm", 1, 10);
+        assertEquals(2, candidates.size());
+        assertEquals("www.example.com", candidates.get(0).getHost());
+        assertEquals("www.example.co", candidates.get(1).getHost());
+
+        assertEquals(1, dict.findFuzzy("www.example.com", 0, 10).size());
+        assertEquals(1, dict.findFuzzy("www.exampel.com", 2, 1).size());
+        assertTrue(dict.findFuzzy("nothing.like.this", 2, 10).isEmpty());
+    }
+}
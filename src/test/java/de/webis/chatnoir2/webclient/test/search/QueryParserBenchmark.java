@@ -0,0 +1,136 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.test.search;
+
+import java.util.Arrays;
+import java.util.List;
+
+import de.webis.chatnoir2.webclient.search.query.QueryParser;
+
+/**
+ * Micro benchmark comparing the single-pass {@link QueryParser} with the former
+ * regular expression based query string operator parsing.
+ *
+ * Run with: <code>java -cp ... de.webis.chatnoir2.webclient.test.search.QueryParserBenchmark</code>
+ */
+public class QueryParserBenchmark
+{
+    private static final List<String> KEYWORDS = Arrays.asList("site", "lang", "index");
+
+    public static void main(String[] args)
+    {
+        StringBuilder longQuery = new StringBuilder();
+        StringBuilder quoteQuery = new StringBuilder();
+        StringBuilder operatorQuery = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            longQuery.append("term").append(i).append(i % 5 == 0 ? " AND " : " ");
+            quoteQuery.append("\"phrase ").append(i).append(" AND more\" OR ");
+            operatorQuery.append("a AND b OR ");
+        }
+        longQuery.append("site:example.com lang:de index:cw12");
+        quoteQuery.append("end site:example.com");
+        operatorQuery.append("z");
+
+        String[][] queries = {
+                {"short", "hello world site:example.com"},
+                {"long", longQuery.toString()},
+                {"quotes", quoteQuery.toString()},
+                {"operators", operatorQuery.toString()}
+        };
+
+        for (String[] q : queries) {
+            int iterations = q[0].equals("short") ? 200000 : 5000;
+
+            // warm up
+            for (int i = 0; i < iterations; ++i) {
+                legacyParse(new StringBuffer(q[1]));
+                QueryParser.parse(q[1], KEYWORDS).toQueryString();
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                legacyParse(new StringBuffer(q[1]));
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                QueryParser.parse(q[1], KEYWORDS).toQueryString();
+            }
+            long parser = System.nanoTime() - start;
+
+            System.out.printf("%-10s (%5d chars): legacy %10.2f us/op, parser %8.2f us/op, speedup %6.1fx%n",
+                    q[0], q[1].length(), legacy / 1000.0 / iterations, parser / 1000.0 / iterations,
+                    (double) legacy / parser);
+        }
+    }
+
+    /**
+     * Former implementation of SimpleSearch.parseQueryStringOperators (without building filter queries).
+     */
+    private static void legacyParse(StringBuffer queryString)
+    {
+        queryString.replace(0, queryString.length(),
+                queryString.toString().replaceAll("(?!\\B\"[^\"]*) AND (?![^\"]*\"\\B)", " +"));
+        queryString.replace(0, queryString.length(),
+                queryString.toString().replaceAll("(?!\\B\"[^\"]*) OR (?![^\"]*\"\\B)", " | "));
+
+        for (String filterKey : KEYWORDS) {
+            int pos = queryString.indexOf(filterKey + ":");
+            if (-1 == pos) {
+                continue;
+            }
+
+            int filterStartPos = pos;
+            pos += filterKey.length() + 1;
+            int valueStartPos = pos;
+            while (pos < queryString.length() && Character.isWhitespace(queryString.charAt(pos))) {
+                ++pos;
+            }
+            while (pos < queryString.length() && !Character.isWhitespace(queryString.charAt(pos))) {
+                ++pos;
+            }
+            queryString.substring(valueStartPos, pos).trim();
+            queryString.replace(filterStartPos, pos, "");
+
+            int trimEnd = 0;
+            for (int i = 0; i < queryString.length(); ++i) {
+                if (!Character.isWhitespace(queryString.charAt(i))) {
+                    break;
+                }
+                ++trimEnd;
+            }
+            queryString.replace(0, trimEnd, "");
+            int trimStart = queryString.length();
+            for (int i = queryString.length(); i > 0; --i) {
+                if (!Character.isWhitespace(queryString.charAt(i - 1))) {
+                    break;
+                }
+                --trimStart;
+            }
+            queryString.replace(trimStart, queryString.length(), "");
+        }
+    }
+}
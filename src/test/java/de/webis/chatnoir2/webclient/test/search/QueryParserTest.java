@@ -0,0 +1,93 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.test.search;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import de.webis.chatnoir2.webclient.search.query.ParsedQuery;
+import de.webis.chatnoir2.webclient.search.query.QueryNode;
+import de.webis.chatnoir2.webclient.search.query.QueryParser;
+
+public class QueryParserTest
+{
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList("site", "lang", "index"));
+
+    @Test
+    public void testTermsAndPhrases()
+    {
+        ParsedQuery q = QueryParser.parse("hello \"big world\" -foo -\"bar baz\"~2", KEYWORDS);
+        assertEquals(4, q.getNodes().size());
+        assertEquals(QueryNode.Type.TERM, q.getNodes().get(0).getType());
+        assertEquals(QueryNode.Type.PHRASE, q.getNodes().get(1).getType());
+        assertEquals("big world", ((QueryNode.Phrase) q.getNodes().get(1)).getText());
+        assertEquals("-", ((QueryNode.Phrase) q.getNodes().get(3)).getPrefix());
+        assertEquals("~2", ((QueryNode.Phrase) q.getNodes().get(3)).getSuffix());
+        assertEquals("hello \"big world\" -foo -\"bar baz\"~2", q.toQueryString());
+        assertFalse(q.isEmpty());
+    }
+
+    @Test
+    public void testOperators()
+    {
+        assertEquals("a +b | c", QueryParser.parse("a AND b OR c", KEYWORDS).toQueryString());
+        assertEquals("\"a AND b\" | c", QueryParser.parse("\"a AND b\" OR c", KEYWORDS).toQueryString());
+
+        // operators without operands are plain terms
+        assertEquals("AND b", QueryParser.parse("AND b", KEYWORDS).toQueryString());
+        assertEquals("a OR", QueryParser.parse("a OR", KEYWORDS).toQueryString());
+    }
+
+    @Test
+    public void testFilters()
+    {
+        ParsedQuery q = QueryParser.parse("site:example.com hello lang: de world index:cw09,cw12", KEYWORDS);
+        assertEquals("hello world", q.toQueryString());
+        assertEquals("example.com", q.getFilter("site"));
+        assertEquals("de", q.getFilter("lang"));
+        assertEquals("cw09,cw12", q.getFilter("index"));
+
+        // first occurrence wins, unknown keywords and filters in phrases remain terms
+        q = QueryParser.parse("site:a.com site:b.com foo:bar \"site:c.com\"", KEYWORDS);
+        assertEquals("a.com", q.getFilter("site"));
+        assertEquals("foo:bar \"site:c.com\"", q.toQueryString());
+
+        q = QueryParser.parse("site:example.com", KEYWORDS);
+        assertTrue(q.isEmpty());
+        assertEquals("", q.toQueryString());
+    }
+
+    @Test
+    public void testUnterminatedPhrase()
+    {
+        ParsedQuery q = QueryParser.parse("hello \"big world", KEYWORDS);
+        assertEquals(2, q.getNodes().size());
+        assertEquals("big world", ((QueryNode.Phrase) q.getNodes().get(1)).getText());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.test.search;
+
+import org.apache.lucene.search.suggest.Lookup;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.webis.chatnoir2.webclient.search.QuerySuggester;
+
+public class QuerySuggesterTest
+{
+    @Test
+    public void testNormalize()
+    {
+        assertEquals("hello world", QuerySuggester.normalize("  Hello \t World "));
+        assertEquals("", QuerySuggester.normalize("   "));
+    }
+
+    @Test
+    public void testLookup() throws Exception
+    {
+        Map<String, Long> counts = new HashMap<>();
+        counts.put("hello world", 50L);
+        counts.put("hello wiki", 3L);
+        counts.put("hello world java", 20L);
+        counts.put("help", 100L);
+        Lookup lookup = QuerySuggester.build(counts);
+        assertEquals(4, lookup.getCount());
+
+        List<Lookup.LookupResult> results = lookup.lookup("hello w", false, 10);
+        assertEquals(3, results.size());
+        assertEquals("hello world", results.get(0).key.toString());
+        assertEquals("hello world java", results.get(1).key.toString());
+        assertEquals("hello wiki", results.get(2).key.toString());
+
+        assertEquals("help", lookup.lookup("hel", false, 1).get(0).key.toString());
+        assertTrue(lookup.lookup("xyz", false, 10).isEmpty());
+    }
+
+    @Test
+    public void testCountDistinctUsers() throws Exception
+    {
+        Path log = Files.createTempFile("query-log", ".log");
+        try {
+            Files.write(log, Arrays.asList(
+                    "2026-10-17 [INFO] IP: 10.0.0.1 USER-AGENT: Mozilla/5.0 QUERY: private query",
+                    "2026-10-17 [INFO] IP: 10.0.0.1 USER-AGENT: Mozilla/5.0 (IP: 10.0.0.9) QUERY: Private  Query",
+                    "2026-10-17 [INFO] IP: 10.0.0.1 USER-AGENT: Mozilla/5.0 QUERY: private query",
+                    "2026-10-17 [INFO] IP: 10.0.0.1 QUERY: popular query",
+                    "2026-10-17 [INFO] USER: alice IP: 10.0.0.1 QUERY: popular query",
+                    "2026-10-17 [INFO] IP: 10.0.0.2 USER-AGENT: curl QUERY: popular query",
+                    "2026-10-17 [INFO] IP: 10.0.0.2 USER-AGENT: curl QUERY: popular query"), StandardCharsets.UTF_8);
+
+            Map<String, Long> counts = QuerySuggester.countQueries(Collections.singletonList(log), 100, 3);
+            assertEquals(1, counts.size());
+            assertEquals(4L, (long) counts.get("popular query"));
+
+            counts = QuerySuggester.countQueries(Collections.singletonList(log), 100, 1);
+            assertEquals(3L, (long) counts.get("private query"));
+        } finally {
+            Files.delete(log);
+        }
+    }
+}
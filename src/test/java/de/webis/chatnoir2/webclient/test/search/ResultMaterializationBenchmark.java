@@ -0,0 +1,141 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+package de.webis.chatnoir2.webclient.test.search;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+import de.webis.chatnoir2.webclient.search.SearchProvider;
+import de.webis.chatnoir2.webclient.search.SearchResultBuilder;
+import de.webis.chatnoir2.webclient.util.ParallelMapper;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchShardTarget;
+import org.elasticsearch.search.fetch.subphase.highlight.HighlightField;
+
+/**
+ * Micro benchmark comparing serial and parallel materialization of search results
+ * for different result page sizes to find the crossover point for
+ * <code>serp.parallel_postprocessing.threshold</code>.
+ *
+ * Run with: <code>java -cp ... de.webis.chatnoir2.webclient.test.search.ResultMaterializationBenchmark</code>
+ */
+public class ResultMaterializationBenchmark
+{
+    private static final int[] PAGE_SIZES = {1, 5, 10, 20, 40, 80, 160, 320, 640};
+
+    public static void main(String[] args)
+    {
+        System.out.printf("Available processors: %d%n", Runtime.getRuntime().availableProcessors());
+
+        BenchmarkProvider provider = new BenchmarkProvider();
+        List<SearchHit> hits = new ArrayList<>();
+        for (int i = 0; i < PAGE_SIZES[PAGE_SIZES.length - 1]; ++i) {
+            hits.add(createHit(i));
+        }
+
+        for (int size : PAGE_SIZES) {
+            List<SearchHit> page = hits.subList(0, size);
+            int iterations = Math.max(20, 20000 / size);
+
+            // warm up
+            for (int i = 0; i < iterations; ++i) {
+                ParallelMapper.map(page, provider::build, 0);
+                ParallelMapper.map(page, provider::build, 1);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                ParallelMapper.map(page, provider::build, 0);
+            }
+            long serial = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                ParallelMapper.map(page, provider::build, 1);
+            }
+            long parallel = System.nanoTime() - start;
+
+            System.out.printf("%4d results: serial %10.2f us/page, parallel %10.2f us/page, speedup %5.2fx%n",
+                    size, serial / 1000.0 / iterations, parallel / 1000.0 / iterations, (double) serial / parallel);
+        }
+
+        ParallelMapper.shutdown();
+    }
+
+    private static SearchHit createHit(int i)
+    {
+        StringBuilder body = new StringBuilder();
+        for (int j = 0; j < 40; ++j) {
+            body.append("lorem ipsum &amp; dolor sit amet ").append(i).append(' ');
+        }
+        String source = String.format("{\"warc_trec_id\":\"clueweb12-%04d\",\"warc_target_hostname\":\"www.example%d.com\","
+                        + "\"warc_target_path\":\"/a/b/../c/./page%d.html\",\"warc_target_uri\":\"http://www.example%d.com/a/c/page%d.html\","
+                        + "\"page_rank\":1.5e-9,\"spam_rank\":%d,\"title_lang.en\":\"Title %d \\u00bb Example   page with a rather long title\","
+                        + "\"meta_desc_lang.en\":\"%s\"}",
+                i, i, i, i, i, i % 100, i, body);
+
+        SearchHit hit = new SearchHit(i, "doc-" + i, new Text("warcrecord"), Collections.emptyMap());
+        hit.sourceRef(new BytesArray(source));
+        hit.shard(new SearchShardTarget("node", new Index("cw12", "_na_"), 0, null));
+        hit.score(10.0f / (i + 1));
+
+        Map<String, HighlightField> highlights = new HashMap<>();
+        highlights.put("body_lang.en", new HighlightField("body_lang.en",
+                new Text[]{new Text("some <em>lorem</em> text  with odd   white space " + body.substring(0, 200))}));
+        hit.highlightFields(highlights);
+        return hit;
+    }
+
+    /**
+     * Search provider exposing result materialization of single hits.
+     */
+    private static class BenchmarkProvider extends SearchProvider
+    {
+        private static final List<String> SOURCE_FIELDS = Arrays.asList(
+                "warc_trec_id", "warc_target_hostname", "warc_target_path", "warc_target_uri",
+                "page_rank", "spam_rank", "title_lang.en", "meta_desc_lang.en");
+
+        SearchResultBuilder.SearchResult build(SearchHit hit)
+        {
+            return buildResult(hit, "en", SOURCE_FIELDS);
+        }
+
+        @Override
+        public CompletableFuture<SearchResponse> doSearchAsync(String query, int from, int size)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected SearchResponse getResponse()
+        {
+            return null;
+        }
+    }
+}
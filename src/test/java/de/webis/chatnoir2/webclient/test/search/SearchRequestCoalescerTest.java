@@ -0,0 +1,85 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.search;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.webis.chatnoir2.webclient.search.SearchRequestCoalescer;
+
+public class SearchRequestCoalescerTest
+{
+    @Test
+    public void testCoalesceConcurrentRequests()
+    {
+        SearchRequestCoalescer coalescer = SearchRequestCoalescer.getInstance();
+        AtomicInteger sent = new AtomicInteger();
+        CompletableFuture<SearchResponse> backend = new CompletableFuture<>();
+
+        CompletableFuture<SearchResponse> f1 = coalescer.execute("coalesce-test", () -> {
+            sent.incrementAndGet();
+            return backend;
+        });
+        CompletableFuture<SearchResponse> f2 = coalescer.execute("coalesce-test", () -> {
+            sent.incrementAndGet();
+            return backend;
+        });
+        assertEquals(1, sent.get());
+        assertFalse(f1.isDone());
+
+        // cancelling one waiter must not affect the others
+        f2.cancel(false);
+
+        SearchResponse response = new SearchResponse();
+        backend.complete(response);
+        assertSame(response, f1.join());
+
+        // key is released after completion
+        coalescer.execute("coalesce-test", () -> {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(response);
+        }).join();
+        assertEquals(2, sent.get());
+    }
+
+    @Test
+    public void testPropagateFailure()
+    {
+        SearchRequestCoalescer coalescer = SearchRequestCoalescer.getInstance();
+        CompletableFuture<SearchResponse> backend = new CompletableFuture<>();
+
+        CompletableFuture<SearchResponse> f1 = coalescer.execute("failure-test", () -> backend);
+        CompletableFuture<SearchResponse> f2 = coalescer.execute("failure-test", () -> backend);
+        backend.completeExceptionally(new IllegalStateException("node unavailable"));
+
+        assertTrue(f1.isCompletedExceptionally());
+        assertTrue(f2.isCompletedExceptionally());
+    }
+}
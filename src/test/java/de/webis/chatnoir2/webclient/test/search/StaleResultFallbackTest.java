@@ -0,0 +1,99 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.search;
+
+import de.webis.chatnoir2.webclient.search.SearchProvider;
+import de.webis.chatnoir2.webclient.search.SearchResultCache;
+import org.elasticsearch.action.search.SearchAction;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.ShardSearchFailure;
+import org.elasticsearch.client.ElasticsearchClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.internal.InternalSearchResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+
+public class StaleResultFallbackTest
+{
+    /**
+     * Search provider whose requests always fail with a backend error.
+     */
+    private static class UnavailableProvider extends SearchProvider
+    {
+        CompletableFuture<SearchResponse> execute(SearchRequestBuilder requestBuilder)
+        {
+            return executeSearchRequest(requestBuilder);
+        }
+
+        @Override
+        protected CompletableFuture<SearchResponse> sendSearchRequest(SearchRequestBuilder requestBuilder)
+        {
+            final CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("node unavailable"));
+            return future;
+        }
+
+        @Override
+        public CompletableFuture<SearchResponse> doSearchAsync(String query, int from, int size)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected SearchResponse getResponse()
+        {
+            return null;
+        }
+    }
+
+    @Test
+    public void testServeOutdatedResponse()
+    {
+        final SearchResultCache cache = SearchResultCache.getInstance();
+        // requests are never sent, so the client does not need to do anything
+        final ElasticsearchClient client = (ElasticsearchClient) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ElasticsearchClient.class}, (proxy, method, args) -> null);
+        final SearchRequestBuilder requestBuilder = new SearchRequestBuilder(client, SearchAction.INSTANCE)
+                .setIndices("stale-test")
+                .setQuery(QueryBuilders.termQuery("body", "stale"));
+        final String key = SearchResultCache.getKey(requestBuilder.request());
+        final SearchResponse response = new SearchResponse(InternalSearchResponse.empty(), null,
+                1, 1, 0, 1L, new ShardSearchFailure[0]);
+
+        // cached for an index version which has changed since
+        cache.put(key, "stale-test@outdated;", response);
+        assertNull(cache.get(key, "stale-test@current;"));
+
+        final UnavailableProvider provider = new UnavailableProvider();
+        assertSame(response, provider.execute(requestBuilder).join());
+        assertTrue(provider.isStale());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import de.webis.chatnoir2.webclient.util.CircuitBreaker;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.common.ParsingException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+public class CircuitBreakerTest
+{
+    @Test
+    public void testTrip()
+    {
+        CircuitBreaker breaker = CircuitBreaker.get("test:trip", () -> false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        for (int i = 0; i < 4; ++i) {
+            breaker.recordFailure();
+        }
+        breaker.recordSuccess();
+        for (int i = 0; i < 4; ++i) {
+            breaker.recordFailure();
+        }
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        try {
+            breaker.call(() -> "result");
+            fail("Request was not rejected");
+        } catch (CircuitBreaker.OpenException ignored) {
+        }
+    }
+
+    @Test
+    public void testCall()
+    {
+        CircuitBreaker breaker = CircuitBreaker.get("test:call", () -> true);
+        assertEquals("result", breaker.call(() -> "result"));
+
+        // bad requests do not count as backend failures
+        for (int i = 0; i < 10; ++i) {
+            try {
+                breaker.call(() -> {
+                    throw new ParsingException(0, 0, "bad query", null);
+                });
+            } catch (ParsingException ignored) {
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testBackendFailure()
+    {
+        assertTrue(CircuitBreaker.isBackendFailure(new NoNodeAvailableException("no nodes")));
+        assertTrue(CircuitBreaker.isBackendFailure(new ElasticsearchTimeoutException("timeout")));
+        assertTrue(CircuitBreaker.isBackendFailure(new CompletionException(new IOException("connection refused"))));
+        assertTrue(CircuitBreaker.isBackendFailure(new CircuitBreaker.OpenException("test")));
+        assertFalse(CircuitBreaker.isBackendFailure(new ParsingException(0, 0, "bad query", null)));
+        assertFalse(CircuitBreaker.isBackendFailure(new IllegalArgumentException()));
+    }
+}
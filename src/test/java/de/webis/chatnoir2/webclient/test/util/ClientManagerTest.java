@@ -0,0 +1,73 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import de.webis.chatnoir2.webclient.util.ClientManager;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ClientManagerTest
+{
+    @Test
+    public void testFindSlowNodes()
+    {
+        Map<String, Double> latencies = new HashMap<>();
+        latencies.put("a", 10.0);
+        latencies.put("b", 12.0);
+        latencies.put("c", 11.0);
+        latencies.put("d", 80.0);
+        assertEquals(Collections.singleton("d"), ClientManager.findSlowNodes(latencies, 2.0, 50.0));
+
+        // below absolute minimum
+        assertTrue(ClientManager.findSlowNodes(latencies, 2.0, 100.0).isEmpty());
+    }
+
+    @Test
+    public void testNoSlowMajority()
+    {
+        Map<String, Double> latencies = new HashMap<>();
+        latencies.put("a", 10.0);
+        assertTrue(ClientManager.findSlowNodes(latencies, 2.0, 0.0).isEmpty());
+
+        latencies.put("b", 100.0);
+        assertTrue(ClientManager.findSlowNodes(latencies, 2.0, 0.0).isEmpty());
+
+        latencies.put("c", 200.0);
+        latencies.put("d", 10.0);
+        assertEquals(Collections.singleton("c"), ClientManager.findSlowNodes(latencies, 2.0, 0.0));
+
+        // half of all nodes above threshold
+        latencies.put("b", 10.0);
+        latencies.put("c", 100.0);
+        latencies.put("d", 100.0);
+        assertTrue(ClientManager.findSlowNodes(latencies, 1.0, 0.0).isEmpty());
+    }
+}
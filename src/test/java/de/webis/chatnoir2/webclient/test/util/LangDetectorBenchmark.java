@@ -0,0 +1,90 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.util;
+
+import java.util.Arrays;
+
+import de.webis.chatnoir2.webclient.util.LangDetector;
+
+/**
+ * Micro benchmark measuring language detection latency for queries of one to ten words,
+ * with and without cached detection results.
+ *
+ * Run with: <code>java -cp ... de.webis.chatnoir2.webclient.test.util.LangDetectorBenchmark</code>
+ */
+public class LangDetectorBenchmark
+{
+    private static final String[][] SENTENCES = {
+            "how to repair a broken bicycle chain without any special tools".split(" "),
+            "wie repariere ich eine kaputte Fahrradkette ohne spezielles Werkzeug".split(" "),
+            "comment réparer une chaîne de vélo cassée sans outils spéciaux".split(" "),
+            "cómo reparar una cadena de bicicleta rota sin herramientas especiales".split(" ")
+    };
+
+    public static void main(String[] args)
+    {
+        long start = System.nanoTime();
+        LangDetector.init();
+        System.out.printf("Profiles loaded in %.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        for (int words = 1; words <= 10; ++words) {
+            String[] queries = new String[SENTENCES.length];
+            for (int i = 0; i < SENTENCES.length; ++i) {
+                queries[i] = String.join(" ", Arrays.copyOf(SENTENCES[i], words));
+            }
+            int iterations = 1000;
+
+            // warm up
+            for (int i = 0; i < iterations; ++i) {
+                LangDetector.detect(queries[i % queries.length], "en", false);
+                LangDetector.detect(queries[i % queries.length], "en", true);
+            }
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                LangDetector.detect(queries[i % queries.length], "en", false);
+            }
+            long uncached = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                LangDetector.detect(queries[i % queries.length], "en", true);
+            }
+            long cached = System.nanoTime() - start;
+
+            StringBuilder detected = new StringBuilder();
+            for (String query : queries) {
+                detected.append(LangDetector.detect(query, "--")).append(' ');
+            }
+
+            System.out.printf("%2d words: uncached %8.2f us/query, cached %6.2f us/query, detected: %s%n",
+                    words, uncached / 1000.0 / iterations, cached / 1000.0 / iterations, detected.toString().trim());
+        }
+
+        // stop cache threads
+        net.sf.ehcache.CacheManager.getInstance().shutdown();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import de.webis.chatnoir2.webclient.util.LangDetector;
+
+public class LangDetectorTest
+{
+    @Test
+    public void testDetect()
+    {
+        assertEquals("en", LangDetector.detect("how to repair a broken bicycle chain", "xx"));
+        assertEquals("de", LangDetector.detect("wie repariere ich eine kaputte fahrradkette", "xx"));
+        assertEquals("fr", LangDetector.detect("comment réparer une chaîne de vélo cassée", "xx"));
+    }
+
+    @Test
+    public void testDefault()
+    {
+        assertEquals("xx", LangDetector.detect("ab", "xx"));
+        assertEquals("xx", LangDetector.detect("fahrradkette", "xx"));
+        assertEquals("xx", LangDetector.detect("  12345 !!! ", "xx"));
+    }
+
+    @Test
+    public void testCached()
+    {
+        String detected = LangDetector.detect("wie repariere ich eine kaputte fahrradkette", "xx", false);
+        assertEquals(detected, LangDetector.detect("Wie  repariere ich eine kaputte Fahrradkette", "xx"));
+        assertEquals(detected, LangDetector.detect("wie repariere ich eine kaputte fahrradkette", "xx"));
+    }
+}
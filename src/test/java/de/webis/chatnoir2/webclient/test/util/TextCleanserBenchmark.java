@@ -0,0 +1,80 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.util;
+
+import de.webis.chatnoir2.webclient.util.TextCleanser;
+
+/**
+ * Micro benchmark comparing the single-pass {@link TextCleanser} with the former
+ * chain of replacement passes and regular expressions.
+ *
+ * Run with: <code>java -cp ... de.webis.chatnoir2.webclient.test.util.TextCleanserBenchmark</code>
+ */
+public class TextCleanserBenchmark
+{
+    public static void main(String[] args) throws Exception
+    {
+        String[] broken = TextCleanserTest.getTable("BROKEN_ISO_8859_1_CHARS");
+        String[] broken15 = TextCleanserTest.getTable("BROKEN_ISO_8859_15_CHARS");
+        String[] broken14 = TextCleanserTest.getTable("BROKEN_ISO_8859_14_CHARS");
+        String[] western = TextCleanserTest.getTable("WESTERN_UNICODE_CHARS");
+
+        String cleanSnippet = "The <em>quick</em> brown fox jumps over the lazy dog &amp; runs away &hellip; "
+                + "into the forest, where nobody (not even the hunter) can find it.";
+        String brokenSnippet = "Der Bäcker Müller verkauft Brötchen für 2 € – cafÃ© &amp;amp; crÃ¨me brÃ»lÃ©e "
+                + "sind auch dabei   &amp;quot;lecker&amp;quot; sagt er (immer";
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            body.append(i % 10 == 0 ? brokenSnippet : cleanSnippet).append("\n");
+        }
+
+        String[][] inputs = {{"clean snippet", cleanSnippet}, {"broken snippet", brokenSnippet}, {"document body", body.toString()}};
+        for (String[] input : inputs) {
+            int iterations = input[0].equals("document body") ? 500 : 20000;
+
+            // warm up
+            for (int i = 0; i < iterations; ++i) {
+                TextCleanserTest.legacyCleanseAll(input[1], true, broken, broken15, broken14, western);
+                TextCleanser.cleanseAll(input[1], true);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                TextCleanserTest.legacyCleanseAll(input[1], true, broken, broken15, broken14, western);
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                TextCleanser.cleanseAll(input[1], true);
+            }
+            long fused = System.nanoTime() - start;
+
+            System.out.printf("%-15s legacy %9.2f us/op, single pass %9.2f us/op, speedup %6.2fx%n",
+                    input[0], legacy / 1000.0 / iterations, fused / 1000.0 / iterations, (double) legacy / fused);
+        }
+    }
+}
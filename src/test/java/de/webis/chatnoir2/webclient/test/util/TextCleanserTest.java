@@ -0,0 +1,157 @@
+/*
+ * ChatNoir 2 Web Frontend Test Suite.
+ * Copyright (C) 2014-2017 Janek Bevendorff, Webis Group
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package de.webis.chatnoir2.webclient.test.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+import de.webis.chatnoir2.webclient.util.TextCleanser;
+
+public class TextCleanserTest
+{
+    private static final String[] FRAGMENTS = {
+            " ", "  ", "\u00a0", "\n", "\t", "&nbsp;", "word", "a", "aa", "the", "<em>", "</em>", "<em>x</em>",
+            "(", "[", "&lt;", ")", "]", "&gt;", "&", "&amp;", "amp;", "&amp;amp;", "lt;", "quot;", "x;", ";",
+            "\ufffd", "Ã", "Â", "Å", "â", "á", "Ä", "È", "©", "¢", "é", "ü", "\u0080", "\u0099", "\u0082",
+            "©", "¼", " ", "123456789", "_"
+    };
+
+    @Test
+    public void testEncodingErrors()
+    {
+        assertEquals("Müller – café ©", TextCleanser.cleanseAll("MÃ¼ller – cafÃ© Â©"));
+        assertEquals("naïve", new TextCleanser("naÃ¯\ufffdve", false).encodingErrors().get());
+    }
+
+    @Test
+    public void testDoubleHtmlEscape()
+    {
+        assertEquals("a &lt; b &amp;lt; c", new TextCleanser("a &amp;lt; b &amp;amp;lt; c", true).doubleHtmlEscape().get());
+        assertEquals("&amp;abcdefghi;", new TextCleanser("&amp;abcdefghi;", true).doubleHtmlEscape().get());
+    }
+
+    @Test
+    public void testWhitespace()
+    {
+        assertEquals(" a b c ", new TextCleanser(" a \u00a0 b\n\nc\t", false).whitespace().get());
+        assertEquals("a b &nbsp c", new TextCleanser("a&nbsp;&nbsp; b &nbsp c", true).whitespace().get());
+    }
+
+    @Test
+    public void testIdenticalToRegexChain() throws Exception
+    {
+        String[] broken = getTable("BROKEN_ISO_8859_1_CHARS");
+        String[] broken15 = getTable("BROKEN_ISO_8859_15_CHARS");
+        String[] broken14 = getTable("BROKEN_ISO_8859_14_CHARS");
+        String[] western = getTable("WESTERN_UNICODE_CHARS");
+
+        String[] examples = {
+                "foo foo foo bar", "a aa", "xa aaa b", "the <em>the</em> <em>the</em> end", "go go go",
+                "word (unclosed", "word (closed)", "text &lt;b  \n", "Ã¢Â\u0080Â\u0099", "ÃÂ©", "Â©Â©",
+                "&amp;amp;amp;lt;", "&amp;&amp;x;", "&amp;a\ufffdb;", " \u00a0&nbsp; &nbsp "
+        };
+        for (String str : examples) {
+            for (boolean html : new boolean[]{false, true}) {
+                assertEquals(str, legacyCleanseAll(str, html, broken, broken15, broken14, western),
+                        TextCleanser.cleanseAll(str, html));
+            }
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 50000; ++i) {
+            StringBuilder builder = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; ++j) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        builder.append(broken[random.nextInt(broken.length)]);
+                        break;
+                    case 1:
+                        builder.append(random.nextBoolean() ? broken15[random.nextInt(broken15.length)]
+                                : broken14[random.nextInt(broken14.length)]);
+                        break;
+                    case 2:
+                        builder.append(western[random.nextInt(western.length)]);
+                        break;
+                    default:
+                        builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+            }
+
+            String str = builder.toString();
+            boolean html = random.nextBoolean();
+            assertEquals(str, legacyCleanseAll(str, html, broken, broken15, broken14, western),
+                    TextCleanser.cleanseAll(str, html));
+            assertEquals(str, legacyEncodingErrors(str, broken, broken15, broken14, western),
+                    new TextCleanser(str, html).encodingErrors().get());
+        }
+    }
+
+    static String[] getTable(String name) throws Exception
+    {
+        Field field = TextCleanser.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return (String[]) field.get(null);
+    }
+
+    /**
+     * Former cleansing chain consisting of one replacement pass or regular expression per rule.
+     */
+    static String legacyCleanseAll(String str, boolean html, String[] broken, String[] broken15,
+                                   String[] broken14, String[] western)
+    {
+        str = legacyEncodingErrors(str, broken, broken15, broken14, western);
+        str = str.replaceAll("&amp;(\\w{1,8});", "&$1;");
+        if (html) {
+            str = str.replaceFirst("(\\(|\\[|&lt;).{0,10}(?!(?:\\)|]|&gt;))\\s*$", "").trim();
+            str = str.replaceAll("((?:<(\\w+)>)?([^\\s])+?(?:</\\2>)?)(\\s+\\1){2,}", "$1 $1").trim();
+            str = str.replaceAll("(?:[\u00a0\\s]|&nbsp;)+", " ");
+        } else {
+            str = str.replaceFirst("(\\(|\\[|<).{0,10}(?!(?:\\)|]|>))\\s*$", "").trim();
+            str = str.replaceAll("([^\\s]+?) \\1{2,}", "").trim();
+            str = str.replaceAll("[\u00a0\\s]+", " ");
+        }
+        return str;
+    }
+
+    static String legacyEncodingErrors(String str, String[] broken, String[] broken15,
+                                       String[] broken14, String[] western)
+    {
+        for (int i = 0; i < western.length; ++i) {
+            str = str.replace(broken[i], western[i]);
+            if (!broken[i].equals(broken15[i])) {
+                str = str.replace(broken15[i], western[i]);
+            }
+            if (!broken[i].equals(broken14[i])) {
+                str = str.replace(broken14[i], western[i]);
+            }
+        }
+        return str.replace("\ufffd", "");
+    }
+}